@@ -0,0 +1,177 @@
+package ir.razplayer;
+
+import ir.razplayer.library.Library;
+import ir.razplayer.model.MediaItem;
+import ir.razplayer.model.MediaType;
+import javafx.beans.property.SimpleIntegerProperty;
+import javafx.collections.FXCollections;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Precomputes the library caches of whole directories without starting the
+ * player, to pre-warm machines during provisioning. Every media file found
+ * is hashed, sniffed, tagged and timed, and PCM files are also measured for
+ * loudness and reduced to waveform peaks. The work is split over a
+ * work-stealing pool with one thread per core, and the results are written
+ * to the cache files the player loads at start-up.
+ * <p>
+ * Usage: {@code LibraryAnalyzer [--cache <dir>] <dir or file>...}. The
+ * player must not run at the same time, since it writes the same files on
+ * exit.
+ * </p>
+ */
+public final class LibraryAnalyzer {
+
+    /**
+     * The number of files after which progress is reported.
+     */
+    private static final int PROGRESS_INTERVAL = 100;
+
+    private LibraryAnalyzer() {
+    }
+
+    /**
+     * Runs the analysis.
+     *
+     * @param args an optional {@code --cache} directory, then the
+     *             directories and files to analyse.
+     */
+    public static void main(String[] args) {
+        Path cacheDir = Paths.get(System.getProperty("user.home"), ".razplayer", "cache");
+        List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheDir = Paths.get(args[++i]);
+            } else {
+                roots.add(Paths.get(args[i]).toAbsolutePath().normalize());
+            }
+        }
+        if (roots.isEmpty()) {
+            System.err.println("Usage: LibraryAnalyzer [--cache <dir>] <dir or file>...");
+            System.exit(2);
+        }
+
+        long start = System.nanoTime();
+        Library library = new Library(FXCollections.<MediaItem>observableArrayList(), new SimpleIntegerProperty(0),
+                cacheDir);
+        library.ready().join();
+        List<Path> files;
+        try {
+            files = findMediaFiles(library, roots);
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Cannot list files: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println("Analysing " + files.size() + " files into " + cacheDir);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(cores, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("razplayer-analyze-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        Batch batch = new Batch(library, files, 0, files.size(), new AtomicInteger(), new AtomicInteger());
+        pool.invoke(batch);
+        pool.shutdown();
+        // Closing saves every cache.
+        library.close();
+
+        System.out.printf("Analysed %d files (%d PCM, %d unreadable) on %d threads in %.1f s%n",
+                files.size(), batch.pcm.get(), files.size() - batch.done.get(), cores,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Lists the media files of the roots, recursing into directories. Files
+     * the library has to sniff are cached for the analysis.
+     */
+    private static List<Path> findMediaFiles(Library library, List<Path> roots) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> walk = Files.walk(root)) {
+                    files.addAll(walk.filter(path -> Files.isRegularFile(path) && library.isMediaFile(path))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else if (Files.isRegularFile(root)) {
+                files.add(root);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * A range of files, split in halves until single files are left, so the
+     * pool balances large and small files by stealing halves from busy
+     * threads while only a logarithmic number of tasks is ever pending.
+     */
+    private static final class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Library library;
+
+        private final List<Path> files;
+
+        private final int from;
+
+        private final int to;
+
+        /**
+         * The files analysed so far, and how many of them were PCM.
+         */
+        private final AtomicInteger done;
+
+        private final AtomicInteger pcm;
+
+        private Batch(Library library, List<Path> files, int from, int to, AtomicInteger done, AtomicInteger pcm) {
+            this.library = library;
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.done = done;
+            this.pcm = pcm;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(library, files, from, middle, done, pcm),
+                        new Batch(library, files, middle, to, done, pcm));
+                return;
+            }
+            if (from == to) {
+                return;
+            }
+            Path file = files.get(from);
+            MediaType type = library.analyze(file);
+            if (type == null) {
+                System.err.println("Cannot read " + file);
+                return;
+            }
+            if (type == MediaType.WAV || type == MediaType.AIFF) {
+                pcm.incrementAndGet();
+            }
+            int count = done.incrementAndGet();
+            if (count % PROGRESS_INTERVAL == 0) {
+                System.out.println(count + " / " + files.size());
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package ir.razplayer;
 
 import ir.razplayer.view.RazPlayerViewController;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.collections.FXCollections;
@@ -13,10 +14,31 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import ir.razplayer.cache.MediaCacheProxy;
+import ir.razplayer.jfr.ViewLoadEvent;
+import ir.razplayer.library.Library;
 import ir.razplayer.model.MediaItem;
+import ir.razplayer.player.EventBus;
+import ir.razplayer.player.PlayerEvent;
+import ir.razplayer.remote.ControlServer;
+import ir.razplayer.remote.SingleInstance;
+import ir.razplayer.util.ConversionUtils;
+import ir.razplayer.util.Log;
 import ir.razplayer.view.PlayListViewController;
+import ir.razplayer.view.VideoWallController;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
 
 
 /**
@@ -60,6 +82,49 @@ public class Main extends Application {
      */
     private final String versionNumber = "v1.0.7";
 
+    /**
+     * The command line switch that disables the hand-off to a running instance.
+     */
+    private static final String NEW_INSTANCE = "--new-instance";
+
+    /**
+     * The command line switch that opens the video wall. Each following
+     * argument is one tile's playlist: a directory, a single file, or a URL.
+     */
+    private static final String WALL = "--wall";
+
+    /**
+     * The controller of the media player view.
+     */
+    private RazPlayerViewController razPlayerViewController;
+
+    /**
+     * The listener for files handed over by later launches. <i>null</i> if
+     * single-instance mode is off.
+     */
+    private SingleInstance singleInstance;
+
+    /**
+     * The local control endpoint. Enabled by the system property
+     * {@code razplayer.control.port}, <i>null</i> otherwise.
+     */
+    private ControlServer controlServer;
+
+    /**
+     * The disk cache for remote media. Started on first use.
+     */
+    private MediaCacheProxy mediaCache;
+
+    /**
+     * The import pipeline and its caches.
+     */
+    private Library library;
+
+    /**
+     * The bus the player publishes its events on.
+     */
+    private final EventBus events = new EventBus();
+
     @Override
     public void start(Stage primaryStage) {
 
@@ -71,8 +136,204 @@ public class Main extends Application {
         Image icon = new Image(String.valueOf(Main.class.getResource("images/logo.png")));
         this.primaryStage.getIcons().add(icon);
 
+        this.library = new Library(playList, current, Paths.get(System.getProperty("user.home"), ".razplayer", "cache"));
+        this.library.setWatching(Boolean.getBoolean("razplayer.watch"));
+
         initRootLayout();
+
+        List<String> args = new ArrayList<>(getParameters().getUnnamed());
+        if (args.remove(WALL))
+        {
+            args.remove(NEW_INSTANCE);
+            showVideoWall(args);
+            return;
+        }
         showRazPlayerView();
+
+        if (!args.remove(NEW_INSTANCE)) {
+            singleInstance = SingleInstance.listen(paths -> Platform.runLater(() -> openFiles(paths)));
+        }
+        openFiles(args);
+
+        initControlServer();
+    }
+
+    @Override
+    public void stop() {
+        if (razPlayerViewController != null) {
+            razPlayerViewController.dispose();
+        }
+        if (singleInstance != null) {
+            singleInstance.close();
+        }
+        if (controlServer != null) {
+            controlServer.close();
+        }
+        events.close();
+        synchronized (this) {
+            if (mediaCache != null) {
+                mediaCache.close();
+            }
+        }
+        library.close();
+    }
+
+    /**
+     * Returns the source string to open a media item with. Remote HTTP(S)
+     * items are routed through the read-ahead disk cache; its size in MiB is
+     * set by the system property {@code razplayer.http.cache.mb}. May be
+     * called from any thread.
+     *
+     * @param uri the URI of the media item.
+     * @return the source for {@code new Media(...)}.
+     */
+    public synchronized String getMediaSource(URI uri)
+    {
+        String scheme = uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme))
+        {
+            return uri.toString();
+        }
+        if (mediaCache == null)
+        {
+            try
+            {
+                mediaCache = new MediaCacheProxy(
+                        Paths.get(System.getProperty("user.home"), ".razplayer", "cache", "http"),
+                        Long.getLong("razplayer.http.cache.mb", 1024L) << 20);
+            }
+            catch (IOException e)
+            {
+                Log.warn("Media cache unavailable, streaming " + uri + " directly", e);
+                return uri.toString();
+            }
+        }
+        return mediaCache.proxy(uri);
+    }
+
+    /**
+     * Opens the local control endpoint if a port is configured. Commands are
+     * forwarded to the media player view on the JavaFX application thread.
+     */
+    private void initControlServer()
+    {
+        Integer port = Integer.getInteger("razplayer.control.port");
+        if (port == null || razPlayerViewController == null)
+        {
+            return;
+        }
+        RazPlayerViewController controller = razPlayerViewController;
+        try
+        {
+            controlServer = new ControlServer(port, new ControlServer.Controls()
+            {
+                @Override
+                public void play()
+                {
+                    Platform.runLater(controller::play);
+                }
+
+                @Override
+                public void pause()
+                {
+                    Platform.runLater(controller::pause);
+                }
+
+                @Override
+                public void seek(double seconds)
+                {
+                    Platform.runLater(() -> controller.seek(seconds));
+                }
+
+                @Override
+                public void load(String path)
+                {
+                    File file = new File(path).getAbsoluteFile();
+                    Platform.runLater(() -> library.importFiles(Collections.singletonList(file)).thenAccept(items ->
+                    {
+                        // A file already in the playlist is not added again, so play the earlier copy.
+                        URI uri = items.isEmpty() ? file.toURI() : items.get(0).getURI();
+                        int index = -1;
+                        for (int i = 0; i < playList.size() && index == -1; i++)
+                        {
+                            if (uri.equals(playList.get(i).getURI()))
+                            {
+                                index = i;
+                            }
+                        }
+                        if (index == -1)
+                        {
+                            Log.info("Remote load of " + file + " added nothing");
+                        }
+                        else if (current.get() == index)
+                        {
+                            controller.play();
+                        }
+                        else
+                        {
+                            setCurrent(index);
+                        }
+                    }));
+                }
+            });
+            ControlServer server = controlServer;
+            events.subscribe(PlayerEvent.StateChanged.class, EventBus.Delivery.BACKGROUND, false,
+                    event -> server.publishState(event.getState().name()));
+            events.subscribe(PlayerEvent.TrackChanged.class, EventBus.Delivery.BACKGROUND, false,
+                    event -> server.publishTrack(event.getIndex(), event.getURI().toString()));
+            events.subscribe(PlayerEvent.PositionTick.class, EventBus.Delivery.BACKGROUND, true,
+                    event -> server.publishPosition(event.getSeconds(), event.getTotal()));
+        }
+        catch (IOException e)
+        {
+            Log.warn("Control endpoint could not be opened on port " + port, e);
+        }
+    }
+
+    /**
+     * Adds the files to the playlist of the media player view.
+     *
+     * @param paths the file paths to add.
+     */
+    private void openFiles(List<String> paths)
+    {
+        List<File> files = new ArrayList<>();
+        for (String path : paths)
+        {
+            File file = new File(path);
+            if (file.isFile())
+            {
+                files.add(file);
+            }
+        }
+        if (razPlayerViewController != null)
+        {
+            razPlayerViewController.enqueue(files);
+        }
+        if (!primaryStage.isFocused())
+        {
+            primaryStage.toFront();
+        }
+    }
+
+    /**
+     * Loads an FXML view next to this class and records the time it took.
+     *
+     * @param loader the loader, which keeps the controller.
+     * @param view   the name of the FXML file.
+     * @param <T>    the type of the root node.
+     * @return the root node of the view.
+     * @throws IOException if the view cannot be loaded.
+     */
+    private <T> T loadView(FXMLLoader loader, String view) throws IOException
+    {
+        ViewLoadEvent event = new ViewLoadEvent();
+        event.begin();
+        loader.setLocation(Main.class.getResource(view));
+        T root = loader.load();
+        event.view = view;
+        event.commit();
+        return root;
     }
 
     /**
@@ -84,8 +345,7 @@ public class Main extends Application {
         {
             // Load root layout from fxml file.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(Main.class.getResource("RootLayout.fxml"));
-            rootLayout = (BorderPane) loader.load();
+            rootLayout = loadView(loader, "RootLayout.fxml");
 
             // Show the scene containing the root layout.
             Scene scene = new Scene(rootLayout);
@@ -106,21 +366,111 @@ public class Main extends Application {
         try{
             // Load person overview.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(Main.class.getResource("RazPlayerView.fxml"));
-            AnchorPane personOverview = (AnchorPane) loader.load();
+            AnchorPane personOverview = loadView(loader, "RazPlayerView.fxml");
 
             // Set person overview into the center of root layout.
             rootLayout.setCenter(personOverview);
 
             // Give the controller access to the main app.
-            RazPlayerViewController controller = loader.getController();
-            controller.setMain(this);
+            razPlayerViewController = loader.getController();
+            razPlayerViewController.setMain(this);
         }
         catch (IOException e){
             e.printStackTrace();
         }
     }
 
+    /**
+     * Shows the video wall inside the root layout, one tile per source.
+     *
+     * @param sources the directories, files or URLs, one per tile.
+     */
+    public void showVideoWall(List<String> sources)
+    {
+        List<List<MediaItem>> playLists = new ArrayList<>();
+        for (String source : sources)
+        {
+            List<MediaItem> items = new ArrayList<>();
+            URI uri = toUri(source);
+            if (uri != null && !"file".equalsIgnoreCase(uri.getScheme()))
+            {
+                // A stream, such as an http URL, is a playlist of its own.
+                MediaItem item = new MediaItem(uri);
+                item.setTitle(ConversionUtils.convertToFileName(uri));
+                playLists.add(Collections.singletonList(item));
+                continue;
+            }
+            Path path = (uri != null ? Paths.get(uri) : Paths.get(source)).toAbsolutePath();
+            List<Path> files = new ArrayList<>();
+            if (Files.isDirectory(path))
+            {
+                try (Stream<Path> list = Files.list(path))
+                {
+                    list.filter(library::isMediaFile).sorted().forEach(files::add);
+                }
+                catch (IOException e)
+                {
+                    Log.warn("Cannot list " + path, e);
+                }
+            }
+            else if (Files.isRegularFile(path))
+            {
+                files.add(path);
+            }
+            for (Path file : files)
+            {
+                MediaItem item = new MediaItem(file.toUri());
+                item.setTitle(ConversionUtils.convertToFileName(file.toUri()));
+                items.add(item);
+            }
+            if (!items.isEmpty())
+            {
+                playLists.add(items);
+            }
+        }
+
+        try
+        {
+            FXMLLoader loader = new FXMLLoader();
+            AnchorPane wall = loadView(loader, "VideoWallView.fxml");
+            rootLayout.setCenter(wall);
+            primaryStage.setTitle(mediaPlayerName + " ::: Video Wall");
+            primaryStage.setMaximized(true);
+
+            VideoWallController controller = loader.getController();
+            controller.setPlayLists(playLists, this::getMediaSource);
+            primaryStage.setOnHidden(event -> controller.dispose());
+        }
+        catch (IOException e)
+        {
+            Log.warn("Video wall view could not be loaded", e);
+        }
+    }
+
+    /**
+     * Parses a command line source given as a URI.
+     *
+     * @param source a URI or a local path.
+     * @return the URI, or <i>null</i> if the source is a path.
+     */
+    private static URI toUri(String source)
+    {
+        try
+        {
+            URI uri = new URI(source);
+            // A one-letter scheme is a Windows drive.
+            if (uri.getScheme() != null && uri.getScheme().length() > 1)
+            {
+                return uri;
+            }
+        }
+        catch (URISyntaxException e)
+        {
+            // Paths may hold characters a URI cannot.
+        }
+        return null;
+    }
+
     /**
      * Opens the playlist view in a new modal popup window.
      */
@@ -130,8 +480,7 @@ public class Main extends Application {
         {
             // Load the fxml file and create a new stage for the playlist popup.
             FXMLLoader loader = new FXMLLoader();
-            loader.setLocation(Main.class.getResource("PlayListView.fxml"));
-            AnchorPane page = (AnchorPane) loader.load();
+            AnchorPane page = loadView(loader, "PlayListView.fxml");
 
             // Create the dialog Stage.
             Stage playListStage = new Stage();
@@ -188,6 +537,37 @@ public class Main extends Application {
         this.current.set(current);
     }
 
+    /**
+     * Returns the controller of the player view.
+     *
+     * @return razPlayerViewController the RazPlayerViewController to return.
+     */
+    public RazPlayerViewController getRazPlayerViewController()
+    {
+        return razPlayerViewController;
+    }
+
+    /**
+     * Returns the import pipeline of the playlist.
+     *
+     * @return library the Library to return.
+     */
+    public Library getLibrary()
+    {
+        return library;
+    }
+
+    /**
+     * Returns the bus the player publishes its events on. Subscribers may
+     * follow playback from any thread.
+     *
+     * @return events the EventBus to return.
+     */
+    public EventBus getEvents()
+    {
+        return events;
+    }
+
     /**
      * Returns the playlist as an observable list of MediaItems.
      *
@@ -199,11 +579,17 @@ public class Main extends Application {
     }
 
     /**
-     * The main method. Ignored on proper deployment.
+     * The main method. Ignored on proper deployment. Passes the file arguments
+     * to an already running instance if there is one, unless started with
+     * {@code --new-instance} or {@code --wall}.
      *
      * @param args
      */
     public static void main(String[] args) {
+        List<String> switches = Arrays.asList(args);
+        if (!switches.contains(NEW_INSTANCE) && !switches.contains(WALL) && SingleInstance.handOff(args)) {
+            return;
+        }
         launch(args);
     }
 
@@ -0,0 +1,343 @@
+package ir.razplayer.audio;
+
+import ir.razplayer.library.FileCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Measures the integrated loudness of PCM files as specified by ITU-R
+ * BS.1770 and EBU R128: K-weighted mean square over 400 ms blocks with 75%
+ * overlap, gated at -70 LUFS and 10 LU below the ungated mean. The result is
+ * a ReplayGain style gain towards {@link #TARGET_LUFS}.
+ * <p>
+ * A file is split into chunks that are filtered in parallel in a fork-join
+ * pool; every chunk warms up its filters on the audio just before it, so the
+ * result matches a sequential pass. Gains are cached by file, so every file
+ * is analysed once.
+ * </p>
+ */
+public final class LoudnessAnalyzer {
+
+    /**
+     * The loudness tracks are normalised to, in LUFS.
+     */
+    public static final double TARGET_LUFS = -18;
+
+    /**
+     * The number of 100 ms sub-blocks per chunk handled by one task.
+     */
+    private static final int CHUNK_BLOCKS = 100;
+
+    /**
+     * The frames read at once by a task.
+     */
+    private static final int READ_FRAMES = 8192;
+
+    /**
+     * The filter warm-up before a chunk in seconds.
+     */
+    private static final double WARM_UP = 0.5;
+
+    /**
+     * The gains in dB by file. <i>NaN</i> marks files that cannot be analysed.
+     */
+    private final FileCache<Double> cache = new FileCache<>(String::valueOf, Double::valueOf);
+
+    /**
+     * The analysis threads.
+     */
+    private final ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("razplayer-loudness-" + thread.getPoolIndex());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }, null, false);
+
+    /**
+     * Returns the gain of a file, analysing it in the background if it has
+     * not been analysed since it last changed.
+     *
+     * @param file the PCM file.
+     * @return the gain in dB, <i>NaN</i> if the file cannot be analysed.
+     */
+    public CompletableFuture<Double> gain(Path file) {
+        return CompletableFuture.supplyAsync(() -> {
+            Double gain = cache.get(file, this::analyze);
+            return gain == null ? Double.NaN : gain;
+        }, pool);
+    }
+
+    /**
+     * Returns the gain of a file, analysing it on the calling thread if it
+     * has not been analysed since it last changed. Called from a fork-join
+     * pool, the chunks are filtered in that pool, so its worker is never
+     * left waiting on the analysis threads.
+     *
+     * @param file the PCM file.
+     * @return the gain in dB, <i>NaN</i> if the file cannot be analysed.
+     */
+    public double measure(Path file) {
+        Double gain = cache.get(file, this::analyze);
+        return gain == null ? Double.NaN : gain;
+    }
+
+    /**
+     * Returns the cached gain of a file without analysing it.
+     *
+     * @param file the file.
+     * @return the gain in dB, or <i>null</i> if not analysed or changed since.
+     */
+    public Double cachedGain(Path file) {
+        return cache.get(file, path -> null);
+    }
+
+    /**
+     * Returns the gain cache, for loading and saving.
+     *
+     * @return the cache of gains in dB.
+     */
+    public FileCache<Double> getCache() {
+        return cache;
+    }
+
+    /**
+     * Stops the analysis threads.
+     */
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Converts a gain to a volume factor for {@code MediaPlayer.setVolume}.
+     * The player cannot amplify, so gains above 0 dB leave the volume as is.
+     *
+     * @param gain the gain in dB, <i>NaN</i> if unknown.
+     * @return the factor between 0 and 1.
+     */
+    public static double toVolume(double gain) {
+        return Double.isNaN(gain) ? 1 : Math.min(1, Math.pow(10, gain / 20));
+    }
+
+    /**
+     * Measures a file. On a fork-join worker the chunks are split in the
+     * worker's pool, which helps with its own chunks; other threads hand
+     * them to the analysis threads.
+     *
+     * @return the gain in dB, <i>NaN</i> if the file is not PCM or too short.
+     */
+    private Double analyze(Path file) {
+        try (PcmFile pcm = PcmFile.open(file)) {
+            int blockFrames = pcm.getSampleRate() / 10;
+            long blocks = pcm.getFrames() / blockFrames;
+            if (blocks == 0 || blocks > Integer.MAX_VALUE) {
+                return Double.NaN;
+            }
+            double[] energies = new double[(int) blocks];
+            Chunk chunk = new Chunk(pcm, energies, 0, energies.length);
+            double peak = Thread.currentThread() instanceof ForkJoinWorkerThread ? chunk.invoke() : pool.invoke(chunk);
+            double loudness = integrate(energies, blockFrames);
+            if (Double.isNaN(loudness)) {
+                return Double.NaN;
+            }
+            // Never raise the level past full scale.
+            double headroom = peak > 0 ? -20 * Math.log10(peak) : 0;
+            return Math.min(TARGET_LUFS - loudness, headroom);
+        } catch (IOException | RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Applies the absolute and relative gates to the 400 ms blocks made of
+     * four consecutive sub-blocks.
+     *
+     * @param energies    the channel-weighted sum of squares of each 100 ms sub-block.
+     * @param blockFrames the frames per sub-block.
+     * @return the integrated loudness in LUFS, <i>NaN</i> if everything is gated.
+     */
+    private static double integrate(double[] energies, int blockFrames) {
+        int span = Math.min(4, energies.length);
+        int count = energies.length - span + 1;
+        double[] means = new double[count];
+        double window = 0;
+        for (int i = 0; i < energies.length; i++) {
+            window += energies[i];
+            if (i >= span) {
+                window -= energies[i - span];
+            }
+            if (i >= span - 1) {
+                means[i - span + 1] = Math.max(0, window) / ((double) span * blockFrames);
+            }
+        }
+
+        double sum = 0;
+        int gated = 0;
+        for (double mean : means) {
+            if (loudness(mean) > -70) {
+                sum += mean;
+                gated++;
+            }
+        }
+        if (gated == 0) {
+            return Double.NaN;
+        }
+        double relative = loudness(sum / gated) - 10;
+        sum = 0;
+        gated = 0;
+        for (double mean : means) {
+            double loudness = loudness(mean);
+            if (loudness > -70 && loudness > relative) {
+                sum += mean;
+                gated++;
+            }
+        }
+        return gated == 0 ? Double.NaN : loudness(sum / gated);
+    }
+
+    private static double loudness(double meanSquare) {
+        return -0.691 + 10 * Math.log10(meanSquare);
+    }
+
+    /**
+     * Filters a range of sub-blocks and stores their energies. Returns the
+     * peak sample.
+     */
+    private static final class Chunk extends RecursiveTask<Double> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PcmFile pcm;
+
+        private final double[] energies;
+
+        private final int from;
+
+        private final int to;
+
+        private Chunk(PcmFile pcm, double[] energies, int from, int to) {
+            this.pcm = pcm;
+            this.energies = energies;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from > CHUNK_BLOCKS) {
+                int middle = (from + to) >>> 1;
+                Chunk left = new Chunk(pcm, energies, from, middle);
+                left.fork();
+                double right = new Chunk(pcm, energies, middle, to).compute();
+                return Math.max(left.join(), right);
+            }
+            try {
+                return filter();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private double filter() throws IOException {
+            int channels = pcm.getChannels();
+            int rate = pcm.getSampleRate();
+            int blockFrames = rate / 10;
+            KWeighting[] filters = new KWeighting[channels];
+            double[] weights = new double[channels];
+            for (int c = 0; c < channels; c++) {
+                filters[c] = new KWeighting(rate);
+                // BS.1770 channel weights for 5.1: no LFE, surrounds +1.5 dB.
+                weights[c] = channels == 6 && c == 3 ? 0 : channels == 6 && c >= 4 ? 1.41 : 1;
+            }
+            float[] samples = new float[READ_FRAMES * channels];
+            ByteBuffer buffer = ByteBuffer.allocate(samples.length * pcm.getBytesPerSample());
+
+            long start = (long) from * blockFrames;
+            long end = (long) to * blockFrames;
+            long frame = Math.max(0, start - (long) (WARM_UP * rate));
+            double peak = 0;
+            while (frame < end) {
+                int read = pcm.read(frame, samples, buffer);
+                if (read == 0) {
+                    break;
+                }
+                read = (int) Math.min(read, end - frame);
+                for (int i = 0; i < read; i++, frame++) {
+                    double energy = 0;
+                    for (int c = 0; c < channels; c++) {
+                        float sample = samples[i * channels + c];
+                        double filtered = filters[c].apply(sample);
+                        energy += weights[c] * filtered * filtered;
+                        if (frame >= start) {
+                            peak = Math.max(peak, Math.abs(sample));
+                        }
+                    }
+                    if (frame >= start) {
+                        energies[(int) (frame / blockFrames)] += energy;
+                    }
+                }
+            }
+            return peak;
+        }
+    }
+
+    /**
+     * The two-stage K-weighting filter of BS.1770 for one channel, with
+     * coefficients derived for the sample rate.
+     */
+    private static final class KWeighting {
+
+        private final double b0;
+        private final double b1;
+        private final double b2;
+        private final double a1;
+        private final double a2;
+        private final double c1;
+        private final double c2;
+
+        private double x1;
+        private double x2;
+        private double y1;
+        private double y2;
+        private double z1;
+        private double z2;
+
+        private KWeighting(int rate) {
+            // Stage 1: high shelf modelling the head.
+            double k = Math.tan(Math.PI * 1681.974450955533 / rate);
+            double q = 0.7071752369554196;
+            double vh = Math.pow(10, 3.999843853973347 / 20);
+            double vb = Math.pow(vh, 0.4996667741545416);
+            double a0 = 1 + k / q + k * k;
+            b0 = (vh + vb * k / q + k * k) / a0;
+            b1 = 2 * (k * k - vh) / a0;
+            b2 = (vh - vb * k / q + k * k) / a0;
+            a1 = 2 * (k * k - 1) / a0;
+            a2 = (1 - k / q + k * k) / a0;
+            // Stage 2: RLB high pass; numerator 1, -2, 1.
+            k = Math.tan(Math.PI * 38.13547087602444 / rate);
+            q = 0.5003270373238773;
+            a0 = 1 + k / q + k * k;
+            c1 = 2 * (k * k - 1) / a0;
+            c2 = (1 - k / q + k * k) / a0;
+        }
+
+        private double apply(double x) {
+            double y = b0 * x + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+            double z = y - 2 * y1 + y2 - c1 * z1 - c2 * z2;
+            x2 = x1;
+            x1 = x;
+            y2 = y1;
+            y1 = y;
+            z2 = z1;
+            z1 = z;
+            return z;
+        }
+    }
+}
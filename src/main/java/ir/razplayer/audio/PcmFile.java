@@ -0,0 +1,288 @@
+package ir.razplayer.audio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Uncompressed PCM audio in a WAV or AIFF file. Reads any range of frames
+ * as floats with positional reads, so several threads may decode different
+ * parts of the same file at once.
+ * <p>
+ * Supported are 8, 16, 24 and 32 bit integer and 32 and 64 bit float
+ * samples, including WAVE_FORMAT_EXTENSIBLE and little-endian AIFC. Other
+ * formats are rejected with an {@link IOException}.
+ * </p>
+ */
+public final class PcmFile implements Closeable {
+
+    private final FileChannel channel;
+
+    private final int channels;
+
+    private final int sampleRate;
+
+    private final int bytesPerSample;
+
+    private final boolean floating;
+
+    private final boolean bigEndian;
+
+    /**
+     * The file position of the first frame.
+     */
+    private final long dataOffset;
+
+    private final long frames;
+
+    private PcmFile(FileChannel channel, int channels, int sampleRate, int bytesPerSample, boolean floating,
+                    boolean bigEndian, long dataOffset, long frames) {
+        this.channel = channel;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.bytesPerSample = bytesPerSample;
+        this.floating = floating;
+        this.bigEndian = bigEndian;
+        this.dataOffset = dataOffset;
+        this.frames = frames;
+    }
+
+    /**
+     * Opens a WAV or AIFF file.
+     *
+     * @param file the file.
+     * @return the opened file.
+     * @throws IOException if the file cannot be read or is not uncompressed PCM.
+     */
+    public static PcmFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(channel, 0, 12, ByteOrder.LITTLE_ENDIAN);
+            String riff = fourCC(header, 0);
+            String form = fourCC(header, 8);
+            if (riff.equals("RIFF") && form.equals("WAVE")) {
+                return openWave(channel);
+            } else if (riff.equals("FORM") && (form.equals("AIFF") || form.equals("AIFC"))) {
+                return openAiff(channel, form.equals("AIFC"));
+            }
+            throw new IOException("Not a WAV or AIFF file");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Damaged audio file", e);
+        }
+    }
+
+    private static PcmFile openWave(FileChannel channel) throws IOException {
+        long position = 12;
+        int format = -1;
+        int channels = 0;
+        int sampleRate = 0;
+        int bits = 0;
+        while (position + 8 <= channel.size()) {
+            ByteBuffer chunk = read(channel, position, 8, ByteOrder.LITTLE_ENDIAN);
+            String id = fourCC(chunk, 0);
+            long size = chunk.getInt(4) & 0xFFFFFFFFL;
+            if (id.equals("fmt ")) {
+                ByteBuffer fmt = read(channel, position + 8, (int) Math.min(size, 40), ByteOrder.LITTLE_ENDIAN);
+                format = fmt.getShort(0) & 0xFFFF;
+                channels = fmt.getShort(2) & 0xFFFF;
+                sampleRate = fmt.getInt(4);
+                bits = fmt.getShort(14) & 0xFFFF;
+                if (format == 0xFFFE && size >= 26) {
+                    // WAVE_FORMAT_EXTENSIBLE: the format code starts the sub-format GUID.
+                    format = fmt.getShort(24) & 0xFFFF;
+                }
+            } else if (id.equals("data")) {
+                if (format != 1 && format != 3) {
+                    throw new IOException("Unsupported WAV format " + format);
+                }
+                long available = Math.min(size, channel.size() - position - 8);
+                return create(channel, channels, sampleRate, bits, format == 3, false, position + 8, available);
+            }
+            position += 8 + size + (size & 1);
+        }
+        throw new IOException("No audio data");
+    }
+
+    private static PcmFile openAiff(FileChannel channel, boolean compressed) throws IOException {
+        long position = 12;
+        int channels = 0;
+        int sampleRate = 0;
+        int bits = 0;
+        boolean floating = false;
+        boolean bigEndian = true;
+        boolean common = false;
+        while (position + 8 <= channel.size()) {
+            ByteBuffer chunk = read(channel, position, 8, ByteOrder.BIG_ENDIAN);
+            String id = fourCC(chunk, 0);
+            long size = chunk.getInt(4) & 0xFFFFFFFFL;
+            if (id.equals("COMM")) {
+                ByteBuffer comm = read(channel, position + 8, (int) Math.min(size, 22), ByteOrder.BIG_ENDIAN);
+                channels = comm.getShort(0) & 0xFFFF;
+                bits = comm.getShort(6) & 0xFFFF;
+                sampleRate = (int) extended(comm, 8);
+                if (compressed && size >= 22) {
+                    String type = fourCC(comm, 18);
+                    if (type.equals("sowt")) {
+                        bigEndian = false;
+                    } else if (type.equalsIgnoreCase("fl32") || type.equalsIgnoreCase("fl64")) {
+                        floating = true;
+                    } else if (!type.equals("NONE") && !type.equals("twos")) {
+                        throw new IOException("Unsupported AIFC compression " + type);
+                    }
+                }
+                common = true;
+            } else if (id.equals("SSND") && common) {
+                ByteBuffer ssnd = read(channel, position + 8, 8, ByteOrder.BIG_ENDIAN);
+                long offset = ssnd.getInt(0) & 0xFFFFFFFFL;
+                long start = position + 16 + offset;
+                long available = Math.min(size - 8 - offset, channel.size() - start);
+                return create(channel, channels, sampleRate, bits, floating, bigEndian, start, available);
+            }
+            position += 8 + size + (size & 1);
+        }
+        throw new IOException("No audio data");
+    }
+
+    private static PcmFile create(FileChannel channel, int channels, int sampleRate, int bits, boolean floating,
+                                  boolean bigEndian, long dataOffset, long dataSize) throws IOException {
+        int bytesPerSample = (bits + 7) / 8;
+        boolean supported = floating ? bytesPerSample == 4 || bytesPerSample == 8
+                : bytesPerSample >= 1 && bytesPerSample <= 4;
+        if (!supported || channels <= 0 || sampleRate <= 0) {
+            throw new IOException("Unsupported PCM format " + channels + " x " + bits + " bit at " + sampleRate + " Hz");
+        }
+        return new PcmFile(channel, channels, sampleRate, bytesPerSample, floating, bigEndian, dataOffset,
+                Math.max(0, dataSize) / ((long) bytesPerSample * channels));
+    }
+
+    /**
+     * Reads consecutive frames as interleaved samples between -1 and 1.
+     *
+     * @param frame  the first frame.
+     * @param out    receives the samples; its length should be a multiple of the channel count.
+     * @param buffer a scratch buffer of at least {@code out.length * bytesPerSample} bytes; not shared between threads.
+     * @return the number of frames read, 0 at the end.
+     * @throws IOException if reading fails.
+     */
+    public int read(long frame, float[] out, ByteBuffer buffer) throws IOException {
+        int wanted = (int) Math.min(out.length / channels, frames - frame);
+        if (wanted <= 0) {
+            return 0;
+        }
+        int bytes = wanted * channels * bytesPerSample;
+        buffer.clear().limit(bytes);
+        long position = dataOffset + frame * channels * bytesPerSample;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        buffer.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        int samples = buffer.remaining() / bytesPerSample;
+        for (int i = 0; i < samples; i++) {
+            out[i] = sample(buffer, i * bytesPerSample);
+        }
+        return samples / channels;
+    }
+
+    private float sample(ByteBuffer buffer, int index) {
+        if (floating) {
+            return bytesPerSample == 4 ? buffer.getFloat(index) : (float) buffer.getDouble(index);
+        }
+        switch (bytesPerSample) {
+            case 1:
+                // WAV stores 8 bit samples unsigned, AIFF signed.
+                return bigEndian ? buffer.get(index) / 128f : ((buffer.get(index) & 0xFF) - 128) / 128f;
+            case 2:
+                return buffer.getShort(index) / 32768f;
+            case 3:
+                int b0 = buffer.get(index) & 0xFF;
+                int b1 = buffer.get(index + 1) & 0xFF;
+                int b2 = buffer.get(index + 2);
+                int value = bigEndian ? (b0 << 24 >> 8) | (b1 << 8) | (b2 & 0xFF) : (b2 << 16) | (b1 << 8) | b0;
+                return value / 8388608f;
+            default:
+                return buffer.getInt(index) / 2147483648f;
+        }
+    }
+
+    /**
+     * Returns the number of interleaved channels.
+     *
+     * @return the channel count.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns the number of frames per second.
+     *
+     * @return the sample rate in Hz.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the size of one sample in bytes.
+     *
+     * @return the bytes per sample.
+     */
+    public int getBytesPerSample() {
+        return bytesPerSample;
+    }
+
+    /**
+     * Returns the length in frames.
+     *
+     * @return the frame count.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size, ByteOrder order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(order);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // Fill the buffer.
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Truncated header");
+        }
+        return buffer;
+    }
+
+    private static String fourCC(ByteBuffer buffer, int index) {
+        char[] id = new char[4];
+        for (int i = 0; i < 4; i++) {
+            id[i] = (char) (buffer.get(index + i) & 0xFF);
+        }
+        return new String(id);
+    }
+
+    /**
+     * Decodes the 80 bit IEEE extended float AIFF stores the sample rate in.
+     */
+    private static double extended(ByteBuffer buffer, int index) {
+        int exponent = buffer.getShort(index) & 0x7FFF;
+        long mantissa = buffer.getLong(index + 2);
+        if (exponent == 0 && mantissa == 0) {
+            return 0;
+        }
+        // The mantissa is unsigned with an explicit integer bit.
+        double value = (mantissa >>> 1) * 2.0 + (mantissa & 1);
+        return Math.scalb(value, exponent - 16383 - 63);
+    }
+}
@@ -0,0 +1,186 @@
+package ir.razplayer.audio;
+
+import ir.razplayer.library.FileCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Finds long silences in PCM files for skip-silence playback. A file is
+ * read once from start to end in 50 ms windows on a background thread, far
+ * faster than it plays, and every run of windows below
+ * {@link #THRESHOLD_DB} that lasts at least {@link #MIN_SILENCE_MILLIS}
+ * becomes a span, shortened by {@link #PAD_MILLIS} at either end so that
+ * speech is not clipped. Spans are published as soon as they are found, and
+ * the complete set is cached by file, so a replayed file is not read again.
+ */
+public final class SilenceDetector {
+
+    /**
+     * The level below which a window counts as silent, in dBFS.
+     */
+    public static final double THRESHOLD_DB = -50;
+
+    /**
+     * The shortest silence that is skipped, in milliseconds.
+     */
+    public static final long MIN_SILENCE_MILLIS = 1500;
+
+    /**
+     * The silence kept before and after a skip, in milliseconds.
+     */
+    public static final long PAD_MILLIS = 250;
+
+    /**
+     * The length of an analysis window in milliseconds.
+     */
+    private static final int WINDOW_MILLIS = 50;
+
+    /**
+     * The frames read at once.
+     */
+    private static final int READ_FRAMES = 8192;
+
+    /**
+     * The mean square of a window at the threshold.
+     */
+    private static final double THRESHOLD = Math.pow(10, THRESHOLD_DB / 10);
+
+    /**
+     * The spans by file.
+     */
+    private final FileCache<SilenceSpans> cache = new FileCache<>(SilenceSpans::encode, SilenceSpans::decode);
+
+    /**
+     * The scanning thread. Only the playing track is scanned, so one is enough.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "razplayer-silence");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * Scans a file for silences in the background. The listener receives a
+     * growing set after every span found, and the complete set at the end;
+     * a cached file gets the complete set right away. Sets are delivered on
+     * the scanning thread.
+     *
+     * @param file     the PCM file.
+     * @param listener receives the spans found so far.
+     * @return the scan, to cancel it with interruption when the track changes.
+     */
+    public Future<?> scan(Path file, Consumer<SilenceSpans> listener) {
+        return executor.submit(() -> {
+            SilenceSpans spans = cache.get(file, path -> scanFile(path, listener));
+            if (spans != null) {
+                listener.accept(spans);
+            }
+        });
+    }
+
+    /**
+     * Returns the span cache, for loading and saving.
+     *
+     * @return the cache of silent spans.
+     */
+    public FileCache<SilenceSpans> getCache() {
+        return cache;
+    }
+
+    /**
+     * Stops the scanning thread.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads a file and publishes its spans as they are found.
+     *
+     * @return the complete spans, empty if the file is not PCM, or
+     *         <i>null</i> if the scan was cancelled or reading failed.
+     */
+    private static SilenceSpans scanFile(Path file, Consumer<SilenceSpans> listener) {
+        PcmFile pcm;
+        try {
+            pcm = PcmFile.open(file);
+        } catch (ClosedByInterruptException e) {
+            return null;
+        } catch (IOException e) {
+            return new SilenceSpans(new long[0], new long[0], 0, true);
+        }
+        try (PcmFile in = pcm) {
+            int channels = in.getChannels();
+            int rate = in.getSampleRate();
+            int windowFrames = Math.max(1, rate * WINDOW_MILLIS / 1000);
+            float[] samples = new float[READ_FRAMES * channels];
+            ByteBuffer buffer = ByteBuffer.allocate(samples.length * in.getBytesPerSample());
+
+            long[] starts = new long[64];
+            long[] ends = new long[64];
+            int count = 0;
+            long frame = 0;
+            long silentFrom = -1;
+            double energy = 0;
+            int windowFill = 0;
+            int read;
+            while ((read = in.read(frame, samples, buffer)) > 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                for (int i = 0, n = read * channels; i < n; i++) {
+                    energy += samples[i] * samples[i];
+                    if ((i + 1) % channels != 0 || ++windowFill < windowFrames) {
+                        continue;
+                    }
+                    long windowEnd = frame + (i + 1) / channels;
+                    boolean silent = energy / ((double) windowFrames * channels) < THRESHOLD;
+                    if (silent && silentFrom < 0) {
+                        silentFrom = windowEnd - windowFrames;
+                    } else if (!silent && silentFrom >= 0) {
+                        long start = silentFrom * 1000 / rate;
+                        long end = (windowEnd - windowFrames) * 1000 / rate;
+                        silentFrom = -1;
+                        if (end - start >= MIN_SILENCE_MILLIS) {
+                            if (count == starts.length) {
+                                starts = Arrays.copyOf(starts, count * 2);
+                                ends = Arrays.copyOf(ends, count * 2);
+                            }
+                            starts[count] = start + PAD_MILLIS;
+                            ends[count] = end - PAD_MILLIS;
+                            count++;
+                            listener.accept(new SilenceSpans(starts, ends, count, false));
+                        }
+                    }
+                    energy = 0;
+                    windowFill = 0;
+                }
+                frame += read;
+            }
+            // Silence up to the end is skipped to the end.
+            if (silentFrom >= 0) {
+                long start = silentFrom * 1000 / rate;
+                long end = frame * 1000 / rate;
+                if (end - start >= MIN_SILENCE_MILLIS) {
+                    starts = Arrays.copyOf(starts, count + 1);
+                    ends = Arrays.copyOf(ends, count + 1);
+                    starts[count] = start + PAD_MILLIS;
+                    ends[count] = end;
+                    count++;
+                }
+            }
+            return new SilenceSpans(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count), count, true);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ir.razplayer.audio;
+
+import java.util.Arrays;
+
+/**
+ * A set of disjoint silent intervals of a track, in ascending order. While a
+ * file is being scanned, the detector publishes a new set every time it finds
+ * a span; each set is a view of the first <i>count</i> entries of arrays the
+ * detector only appends to, so publishing copies nothing.
+ */
+public final class SilenceSpans {
+
+    /**
+     * The starts of the spans in milliseconds.
+     */
+    private final long[] starts;
+
+    /**
+     * The ends of the spans in milliseconds, exclusive.
+     */
+    private final long[] ends;
+
+    /**
+     * The number of spans in this set.
+     */
+    private final int count;
+
+    /**
+     * <i>true</i> once the whole file has been scanned.
+     */
+    private final boolean complete;
+
+    SilenceSpans(long[] starts, long[] ends, int count, boolean complete) {
+        this.starts = starts;
+        this.ends = ends;
+        this.count = count;
+        this.complete = complete;
+    }
+
+    /**
+     * Returns where playback should continue at a playback time.
+     *
+     * @param millis the playback time in milliseconds.
+     * @return the end of the span containing the time, or -1 if the time is
+     *         not within a span.
+     */
+    public long skipTarget(double millis) {
+        int index = Arrays.binarySearch(starts, 0, count, (long) millis);
+        if (index < 0) {
+            // The span starting before the insertion point.
+            index = -index - 2;
+        }
+        return index >= 0 && millis < ends[index] ? ends[index] : -1;
+    }
+
+    /**
+     * Returns the number of spans.
+     *
+     * @return the span count.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns whether the whole file has been scanned, so no more spans
+     * will follow.
+     *
+     * @return <i>true</i> if complete.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Writes the spans as {@code start-end} pairs separated by commas.
+     *
+     * @return the single-line form for the cache file.
+     */
+    String encode() {
+        StringBuilder out = new StringBuilder(count * 16);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(starts[i]).append('-').append(ends[i]);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Parses the form written by {@link #encode()}.
+     *
+     * @param text the encoded spans.
+     * @return the complete set, or <i>null</i> if the text is malformed.
+     */
+    static SilenceSpans decode(String text) {
+        String[] pairs = text.isEmpty() ? new String[0] : text.split(",");
+        long[] starts = new long[pairs.length];
+        long[] ends = new long[pairs.length];
+        try {
+            for (int i = 0; i < pairs.length; i++) {
+                int dash = pairs[i].indexOf('-');
+                starts[i] = Long.parseLong(pairs[i].substring(0, dash));
+                ends[i] = Long.parseLong(pairs[i].substring(dash + 1));
+                if (ends[i] <= starts[i] || i > 0 && starts[i] < ends[i - 1]) {
+                    return null;
+                }
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return new SilenceSpans(starts, ends, pairs.length, true);
+    }
+}
@@ -0,0 +1,124 @@
+package ir.razplayer.audio;
+
+import ir.razplayer.library.FileCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Reduces PCM files to a fixed number of peak levels, enough to draw an
+ * overview of a track at any width. A file is read once from start to end,
+ * and each of the {@link #PEAKS} equal parts of it becomes the largest
+ * absolute sample in it, stored as one unsigned byte. Peaks are cached by
+ * file; files that are not PCM get an empty array.
+ */
+public final class WaveformAnalyzer {
+
+    /**
+     * The number of peaks per file.
+     */
+    public static final int PEAKS = 256;
+
+    /**
+     * The frames read at once.
+     */
+    private static final int READ_FRAMES = 8192;
+
+    /**
+     * The peaks by file, as two hex digits per peak.
+     */
+    private final FileCache<byte[]> cache = new FileCache<>(WaveformAnalyzer::encode, WaveformAnalyzer::decode);
+
+    /**
+     * Returns the peaks of a file, reading it if it is not cached. Blocks
+     * for the time it takes to read the file.
+     *
+     * @param file the file.
+     * @return {@link #PEAKS} levels from 0 to 255, empty if the file is not
+     *         PCM, or <i>null</i> if it cannot be read.
+     */
+    public byte[] peaks(Path file) {
+        return cache.get(file, WaveformAnalyzer::analyze);
+    }
+
+    /**
+     * Returns the cached peaks of a file without reading it.
+     *
+     * @param file the file.
+     * @return the peaks, or <i>null</i> if not analysed or changed since.
+     */
+    public byte[] cachedPeaks(Path file) {
+        return cache.get(file, path -> null);
+    }
+
+    /**
+     * Returns the peak cache, for loading and saving.
+     *
+     * @return the cache of peaks.
+     */
+    public FileCache<byte[]> getCache() {
+        return cache;
+    }
+
+    private static byte[] analyze(Path file) {
+        PcmFile pcm;
+        try {
+            pcm = PcmFile.open(file);
+        } catch (IOException e) {
+            return new byte[0];
+        }
+        try (PcmFile in = pcm) {
+            long frames = in.getFrames();
+            int channels = in.getChannels();
+            if (frames == 0) {
+                return new byte[0];
+            }
+            float[] levels = new float[PEAKS];
+            float[] samples = new float[READ_FRAMES * channels];
+            ByteBuffer buffer = ByteBuffer.allocate(samples.length * in.getBytesPerSample());
+            long frame = 0;
+            int read;
+            while ((read = in.read(frame, samples, buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    int peak = (int) ((frame + i) * PEAKS / frames);
+                    for (int c = 0; c < channels; c++) {
+                        levels[peak] = Math.max(levels[peak], Math.abs(samples[i * channels + c]));
+                    }
+                }
+                frame += read;
+            }
+            byte[] peaks = new byte[PEAKS];
+            for (int i = 0; i < PEAKS; i++) {
+                peaks[i] = (byte) Math.round(Math.min(1, levels[i]) * 255);
+            }
+            return peaks;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String encode(byte[] peaks) {
+        StringBuilder out = new StringBuilder(peaks.length * 2);
+        for (byte peak : peaks) {
+            out.append(Character.forDigit((peak >> 4) & 15, 16)).append(Character.forDigit(peak & 15, 16));
+        }
+        return out.toString();
+    }
+
+    private static byte[] decode(String text) {
+        if (text.length() % 2 != 0) {
+            return null;
+        }
+        byte[] peaks = new byte[text.length() / 2];
+        for (int i = 0; i < peaks.length; i++) {
+            int high = Character.digit(text.charAt(2 * i), 16);
+            int low = Character.digit(text.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            peaks[i] = (byte) (high << 4 | low);
+        }
+        return peaks;
+    }
+}
@@ -0,0 +1,474 @@
+package ir.razplayer.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * A caching HTTP proxy on the loopback interface for remote media. The media
+ * player is handed a local URL instead of the remote one. Range requests are
+ * served from fixed-size chunks stored on disk, fetching missing chunks from
+ * the origin with range requests of its own. While a range is served, the
+ * chunks following the one being sent are prefetched, so playback and seeks
+ * within fetched ranges never wait on the network. The disk cache is bounded and evicts the least
+ * recently used chunks.
+ */
+public final class MediaCacheProxy {
+
+    /**
+     * The size of one cached chunk in bytes.
+     */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /**
+     * The number of chunks prefetched ahead of the chunk being served.
+     */
+    private static final int READ_AHEAD = 4;
+
+    /**
+     * The name of the per-resource metadata file.
+     */
+    private static final String META = "meta";
+
+    /**
+     * The cache root. Holds one directory per remote resource.
+     */
+    private final Path cacheDir;
+
+    /**
+     * The disk budget for chunk files in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * The local HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * The client used for origin requests.
+     */
+    private final HttpClient client;
+
+    /**
+     * The threads fetching prefetched chunks.
+     */
+    private final ExecutorService prefetcher;
+
+    /**
+     * The proxied resources by key.
+     */
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+
+    /**
+     * The chunk fetches in progress, so that a chunk is downloaded only once.
+     */
+    private final Map<Path, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * The cached chunk files and their sizes in access order. Guarded by itself.
+     */
+    private final LinkedHashMap<Path, Long> lru = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * The total size of the cached chunk files. Guarded by <i>lru</i>.
+     */
+    private long cachedBytes;
+
+    /**
+     * Starts the proxy.
+     *
+     * @param cacheDir the directory holding cached chunks.
+     * @param maxBytes the disk budget in bytes.
+     * @throws IOException if the cache cannot be read or the server not bound.
+     */
+    public MediaCacheProxy(Path cacheDir, long maxBytes) throws IOException {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(cacheDir);
+        loadIndex();
+
+        this.client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.prefetcher = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "razplayer-cache-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "razplayer-cache-serve");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        this.server.createContext("/m/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Returns the URI the media player should open. HTTP(S) URIs are routed
+     * through the proxy, every other URI is returned unchanged.
+     *
+     * @param uri the media URI.
+     * @return the URI string to pass to {@code Media}.
+     */
+    public String proxy(URI uri) {
+        String scheme = uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            return uri.toString();
+        }
+        String key = key(uri.toString());
+        resources.computeIfAbsent(key, k -> new Resource(uri, cacheDir.resolve(k)));
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        // Keep the file name so the player can still guess the container.
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+                + "/m/" + key + "/" + name;
+    }
+
+    /**
+     * Stops the server and the prefetch threads. Cached chunks stay on disk.
+     */
+    public void close() {
+        server.stop(0);
+        prefetcher.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String[] parts = exchange.getRequestURI().getPath().split("/");
+            Resource resource = parts.length > 2 ? resources.get(parts[2]) : null;
+            if (resource == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (!resource.probe()) {
+                // The origin does not support ranges, let the player stream it directly.
+                exchange.getResponseHeaders().set("Location", resource.origin.toString());
+                exchange.sendResponseHeaders(307, -1);
+                return;
+            }
+
+            long start = 0;
+            long end = resource.length - 1;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            boolean partial = range != null && range.startsWith("bytes=");
+            if (partial) {
+                String[] bounds = range.substring(6).split(",")[0].trim().split("-", -1);
+                if (bounds.length != 2) {
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+                if (bounds[0].isEmpty()) {
+                    start = Math.max(0, resource.length - Long.parseLong(bounds[1]));
+                } else {
+                    start = Long.parseLong(bounds[0]);
+                    if (!bounds[1].isEmpty()) {
+                        end = Math.min(end, Long.parseLong(bounds[1]));
+                    }
+                }
+                if (start > end) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + resource.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Range",
+                        "bytes " + start + "-" + end + "/" + resource.length);
+            }
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().set("Content-Type", resource.contentType);
+            exchange.sendResponseHeaders(partial ? 206 : 200, end - start + 1);
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                return;
+            }
+
+            int first = (int) (start / CHUNK_SIZE);
+            int last = (int) (end / CHUNK_SIZE);
+            try (OutputStream out = exchange.getResponseBody()) {
+                byte[] buffer = new byte[64 * 1024];
+                for (int index = first; index <= last; index++) {
+                    // Players ask for everything from the play position on,
+                    // so keep the chunks after the one being sent in flight.
+                    prefetch(resource, index + 1);
+                    Path chunk = chunk(resource, index);
+                    long chunkStart = (long) index * CHUNK_SIZE;
+                    long from = Math.max(start, chunkStart) - chunkStart;
+                    long to = Math.min(end, chunkStart + CHUNK_SIZE - 1) - chunkStart;
+                    try (FileChannel channel = FileChannel.open(chunk, StandardOpenOption.READ)) {
+                        long position = from;
+                        while (position <= to) {
+                            int n = channel.read(ByteBuffer.wrap(buffer, 0,
+                                    (int) Math.min(buffer.length, to - position + 1)), position);
+                            if (n < 0) {
+                                throw new IOException("Truncated chunk " + chunk);
+                            }
+                            out.write(buffer, 0, n);
+                            position += n;
+                        }
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            exchange.sendResponseHeaders(400, -1);
+        } catch (IOException e) {
+            // The player closed the connection, usually because it seeked.
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Schedules the chunks after <i>from</i> for background download.
+     */
+    private void prefetch(Resource resource, int from) {
+        int chunks = (int) ((resource.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        for (int index = from; index < Math.min(chunks, from + READ_AHEAD); index++) {
+            Path file = resource.dir.resolve(Integer.toString(index));
+            if (!isCached(file) && !inFlight.containsKey(file)) {
+                int chunkIndex = index;
+                prefetcher.execute(() -> {
+                    try {
+                        chunk(resource, chunkIndex);
+                    } catch (IOException e) {
+                        // Retried when the player actually asks for it.
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns the file of a chunk, downloading it first if necessary.
+     */
+    private Path chunk(Resource resource, int index) throws IOException {
+        Path file = resource.dir.resolve(Integer.toString(index));
+        if (isCached(file)) {
+            return file;
+        }
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(file, created);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            long from = (long) index * CHUNK_SIZE;
+            long to = Math.min(resource.length, from + CHUNK_SIZE) - 1;
+            byte[] body = fetch(resource.origin, from, to).body();
+            if (body.length != to - from + 1) {
+                throw new IOException("Short chunk " + index + " of " + resource.origin);
+            }
+            Files.createDirectories(resource.dir);
+            Path tmp = Files.createTempFile(resource.dir, "chunk", ".tmp");
+            Files.write(tmp, body);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            addToIndex(file, body.length);
+            created.complete(file);
+            return file;
+        } catch (IOException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(file);
+        }
+    }
+
+    private HttpResponse<byte[]> fetch(URI origin, long from, long to) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(origin)
+                .header("Range", "bytes=" + from + "-" + to)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        try {
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 206) {
+                throw new IOException("Range request failed with " + response.statusCode() + " for " + origin);
+            }
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private static Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private boolean isCached(Path file) {
+        synchronized (lru) {
+            // A lookup also marks the chunk as recently used.
+            return lru.get(file) != null;
+        }
+    }
+
+    private void addToIndex(Path file, long size) {
+        List<Path> evicted = new ArrayList<>();
+        synchronized (lru) {
+            Long old = lru.put(file, size);
+            cachedBytes += size - (old == null ? 0 : old);
+            Iterator<Map.Entry<Path, Long>> it = lru.entrySet().iterator();
+            while (cachedBytes > maxBytes && it.hasNext()) {
+                Map.Entry<Path, Long> eldest = it.next();
+                if (eldest.getKey().equals(file)) {
+                    continue;
+                }
+                cachedBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        for (Path path : evicted) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // Overwritten or removed on the next fetch.
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the LRU index from the chunk files on disk, oldest first.
+     */
+    private void loadIndex() throws IOException {
+        List<Path> chunks = new ArrayList<>();
+        try (Stream<Path> dirs = Files.list(cacheDir)) {
+            for (Path dir : (Iterable<Path>) dirs::iterator) {
+                if (!Files.isDirectory(dir)) {
+                    continue;
+                }
+                try (Stream<Path> files = Files.list(dir)) {
+                    files.filter(f -> f.getFileName().toString().chars().allMatch(Character::isDigit))
+                            .forEach(chunks::add);
+                }
+            }
+        }
+        chunks.sort(Comparator.comparingLong(MediaCacheProxy::lastModified));
+        for (Path chunk : chunks) {
+            addToIndex(chunk, Files.size(chunk));
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String key(String uri) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(uri.getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                key.append(String.format("%02x", digest[i]));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A proxied remote resource and its length and content type.
+     */
+    private final class Resource {
+
+        private final URI origin;
+
+        private final Path dir;
+
+        private volatile long length = -1;
+
+        private volatile String contentType = "application/octet-stream";
+
+        private volatile boolean rangesSupported;
+
+        private Resource(URI origin, Path dir) {
+            this.origin = origin;
+            this.dir = dir;
+        }
+
+        /**
+         * Loads length and content type from the metadata file, or from the
+         * origin on first use.
+         *
+         * @return <i>true</i> if the origin serves byte ranges.
+         */
+        private synchronized boolean probe() throws IOException {
+            if (length >= 0) {
+                return rangesSupported;
+            }
+            Path meta = dir.resolve(META);
+            if (Files.exists(meta)) {
+                List<String> lines = Files.readAllLines(meta, StandardCharsets.UTF_8);
+                if (lines.size() >= 2) {
+                    length = Long.parseLong(lines.get(0));
+                    contentType = lines.get(1);
+                    rangesSupported = true;
+                    return true;
+                }
+            }
+            HttpResponse<byte[]> response;
+            try {
+                response = fetch(origin, 0, 0);
+            } catch (IOException e) {
+                // Probed again on the next request.
+                return false;
+            }
+            String contentRange = response.headers().firstValue("Content-Range").orElse("");
+            int slash = contentRange.lastIndexOf('/');
+            if (slash == -1 || contentRange.endsWith("*")) {
+                length = 0;
+                rangesSupported = false;
+                return false;
+            }
+            length = Long.parseLong(contentRange.substring(slash + 1).trim());
+            contentType = response.headers().firstValue("Content-Type").orElse(contentType);
+            rangesSupported = true;
+            Files.createDirectories(dir);
+            Files.write(meta, List.of(Long.toString(length), contentType), StandardCharsets.UTF_8);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ir.razplayer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The transition at the end of a track, from its end until the next track
+ * plays. A looping single track is rewound rather than reopened.
+ */
+@Name("ir.razplayer.EndOfMedia")
+@Label("End Of Media")
+@Category({"RazPlayer", "Playback"})
+@Description("The gap between the end of a track and the start of the next")
+@StackTrace(false)
+public final class EndOfMediaEvent extends jdk.jfr.Event {
+
+    @Label("Ended URI")
+    public String ended;
+
+    @Label("Next URI")
+    public String next;
+
+    @Label("Rewound")
+    @Description("The ended track was played again in the same player")
+    public boolean rewound;
+}
@@ -0,0 +1,26 @@
+package ir.razplayer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An import of files into the playlist, from the request until the items
+ * are in the playlist.
+ */
+@Name("ir.razplayer.PlaylistImport")
+@Label("Playlist Import")
+@Category({"RazPlayer", "Library"})
+@Description("Files imported into the playlist, from the request until the items are added")
+@StackTrace(false)
+public final class PlaylistImportEvent extends jdk.jfr.Event {
+
+    @Label("Files")
+    public int files;
+
+    @Label("Added")
+    @Description("The items added; duplicates are skipped")
+    public int added;
+}
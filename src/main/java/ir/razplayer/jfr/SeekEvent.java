@@ -0,0 +1,56 @@
+package ir.razplayer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A seek, from the request until the player reports the target position.
+ * A seek superseded before it lands is not recorded.
+ */
+@Name("ir.razplayer.Seek")
+@Label("Seek")
+@Category({"RazPlayer", "Playback"})
+@Description("A seek, from the request until the player reports the target position")
+@StackTrace(false)
+public final class SeekEvent extends jdk.jfr.Event {
+
+    /**
+     * A seek by clicking, touching or dragging the progress bar.
+     */
+    public static final String PROGRESS_BAR = "progress bar";
+
+    /**
+     * A seek by the arrow or J/L keys.
+     */
+    public static final String KEYBOARD = "keyboard";
+
+    /**
+     * A seek by the Back and Next buttons.
+     */
+    public static final String BUTTON = "button";
+
+    /**
+     * A seek requested through the control endpoint.
+     */
+    public static final String REMOTE = "remote";
+
+    /**
+     * A seek past a silence in skip-silence mode.
+     */
+    public static final String SILENCE = "silence";
+
+    @Label("Origin")
+    public String origin;
+
+    @Label("From")
+    @Timespan(Timespan.MILLISECONDS)
+    public long from;
+
+    @Label("To")
+    @Timespan(Timespan.MILLISECONDS)
+    public long to;
+}
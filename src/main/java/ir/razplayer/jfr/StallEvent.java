@@ -0,0 +1,26 @@
+package ir.razplayer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A stall of the playing track, while the player waits for data.
+ */
+@Name("ir.razplayer.Stall")
+@Label("Playback Stall")
+@Category({"RazPlayer", "Playback"})
+@Description("Playback stopped while the player waited for data")
+@StackTrace(false)
+public final class StallEvent extends jdk.jfr.Event {
+
+    @Label("URI")
+    public String uri;
+
+    @Label("Position")
+    @Timespan(Timespan.MILLISECONDS)
+    public long position;
+}
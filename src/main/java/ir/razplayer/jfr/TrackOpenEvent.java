@@ -0,0 +1,40 @@
+package ir.razplayer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The opening of a track for playback, from the request until its player
+ * is ready, failed, or was superseded by another track.
+ */
+@Name("ir.razplayer.TrackOpen")
+@Label("Track Open")
+@Category({"RazPlayer", "Playback"})
+@Description("A track opened for playback, from the request until its player is ready")
+@StackTrace(false)
+public final class TrackOpenEvent extends jdk.jfr.Event {
+
+    /**
+     * The outcome of an open whose player became ready.
+     */
+    public static final String OPENED = "opened";
+
+    /**
+     * The outcome of an open that failed.
+     */
+    public static final String FAILED = "failed";
+
+    /**
+     * The outcome of an open superseded by another track.
+     */
+    public static final String CANCELLED = "cancelled";
+
+    @Label("URI")
+    public String uri;
+
+    @Label("Outcome")
+    public String outcome;
+}
@@ -0,0 +1,21 @@
+package ir.razplayer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The loading of an FXML view, including its controller's initialization.
+ */
+@Name("ir.razplayer.ViewLoad")
+@Label("View Load")
+@Category({"RazPlayer", "UI"})
+@Description("An FXML view loaded, including its controller's initialization")
+@StackTrace(false)
+public final class ViewLoadEvent extends jdk.jfr.Event {
+
+    @Label("View")
+    public String view;
+}
@@ -0,0 +1,228 @@
+package ir.razplayer.library;
+
+import ir.razplayer.util.Log;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Embedded cover art, extracted in the background and scaled down to
+ * {@link #SIZE} while it is decoded, so full-size images never stay on the
+ * heap. Thumbnails are keyed by a hash of the embedded image: the tracks of
+ * an album share one key, and so one decoded image. Recent thumbnails are
+ * kept in a small LRU, all of them on disk as deflated pixels, and the key
+ * of every file is cached, so a track seen before never has its picture
+ * read again.
+ */
+public final class CoverArt {
+
+    /**
+     * The largest width and height of a thumbnail in pixels.
+     */
+    public static final int SIZE = 320;
+
+    /**
+     * The most thumbnails kept in memory.
+     */
+    private static final int MEMORY_ENTRIES = 32;
+
+    /**
+     * The key cached for files without a picture.
+     */
+    private static final String NONE = "-";
+
+    /**
+     * The directory holding the thumbnail files.
+     */
+    private final Path dir;
+
+    /**
+     * The thumbnail key of each file.
+     */
+    private final FileCache<String> keys = new FileCache<>(key -> key, key -> key);
+
+    /**
+     * The recently shown thumbnails by key, least recently used first.
+     * Guarded by itself.
+     */
+    private final Map<String, Image> memory = new LinkedHashMap<String, Image>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            return size() > MEMORY_ENTRIES;
+        }
+    };
+
+    /**
+     * The extraction thread.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "razplayer-art");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * Creates the cache.
+     *
+     * @param dir the directory for the thumbnail files.
+     */
+    public CoverArt(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the thumbnail of a file's embedded picture, extracting and
+     * scaling it in the background the first time.
+     *
+     * @param file the media file.
+     * @return the thumbnail, or <i>null</i> if the file has no picture,
+     *         completed on the extraction thread.
+     */
+    public CompletableFuture<Image> load(Path file) {
+        return CompletableFuture.supplyAsync(() -> {
+            Image image = thumbnail(file);
+            if (image == null && !NONE.equals(keys.peek(file))) {
+                // The thumbnail file is gone; extract again.
+                keys.remove(file);
+                image = thumbnail(file);
+            }
+            return image;
+        }, executor);
+    }
+
+    /**
+     * Returns the key cache, for loading and saving.
+     *
+     * @return the cache of thumbnail keys by file.
+     */
+    public FileCache<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Stops the extraction thread.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Image thumbnail(Path file) {
+        String key = keys.get(file, this::extract);
+        if (key == null || key.equals(NONE)) {
+            return null;
+        }
+        synchronized (memory) {
+            Image image = memory.get(key);
+            if (image != null) {
+                return image;
+            }
+        }
+        Image image = readThumbnail(key);
+        if (image != null) {
+            remember(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Reads the picture of a file and stores its thumbnail unless one with
+     * the same key exists.
+     *
+     * @return the key, {@link #NONE} if there is no usable picture, or
+     *         <i>null</i> if the file cannot be read.
+     */
+    private String extract(Path file) {
+        byte[] picture;
+        try {
+            picture = TagReader.readPicture(file);
+        } catch (IOException e) {
+            return null;
+        }
+        if (picture == null) {
+            return NONE;
+        }
+        String key = Long.toHexString(Hash64.finish(Hash64.update(Hash64.SEED, ByteBuffer.wrap(picture))));
+        if (Files.isRegularFile(dir.resolve(key))) {
+            return key;
+        }
+        // Decoding at the requested size keeps only the thumbnail.
+        Image image = new Image(new ByteArrayInputStream(picture), SIZE, SIZE, true, true);
+        if (image.isError() || image.getWidth() < 1) {
+            return NONE;
+        }
+        writeThumbnail(key, image);
+        remember(key, image);
+        return key;
+    }
+
+    private void remember(String key, Image image) {
+        synchronized (memory) {
+            memory.put(key, image);
+        }
+    }
+
+    /**
+     * Writes the pixels of a thumbnail, replacing the file atomically.
+     */
+    private void writeThumbnail(String key, Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(width);
+                out.writeInt(height);
+                ByteBuffer bytes = ByteBuffer.allocate(pixels.length * Integer.BYTES);
+                bytes.asIntBuffer().put(pixels);
+                out.write(bytes.array());
+            }
+            Files.move(tmp, dir.resolve(key), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Log.warn("Cover art could not be cached", e);
+        }
+    }
+
+    /**
+     * Reads a thumbnail written by {@link #writeThumbnail}.
+     *
+     * @return the image, or <i>null</i> if missing or damaged.
+     */
+    private Image readThumbnail(String key) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(Files.newInputStream(dir.resolve(key))))) {
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width < 1 || height < 1 || width > SIZE || height > SIZE) {
+                return null;
+            }
+            byte[] bytes = new byte[width * height * Integer.BYTES];
+            in.readFully(bytes);
+            int[] pixels = new int[width * height];
+            ByteBuffer.wrap(bytes).asIntBuffer().get(pixels);
+            WritableImage image = new WritableImage(width, height);
+            image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+            return image;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package ir.razplayer.library;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Finds files with identical content without reading them in full. Files are
+ * first grouped by size; only files sharing a size are fingerprinted, using a
+ * fast non-cryptographic hash over a few sampled blocks read with positional
+ * {@link FileChannel} calls. Fingerprints are computed in parallel and cached
+ * by path, size and modification time. Files added to a known set are all
+ * fingerprinted and matched against the cached fingerprints of the known
+ * files, so the known files are not read again.
+ */
+public final class DuplicateFinder {
+
+    /**
+     * The size of one sampled block in bytes.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The number of blocks sampled per file, spread evenly across it.
+     */
+    private static final int BLOCKS = 4;
+
+    /**
+     * The per-thread read buffer.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+
+    /**
+     * The cached fingerprints.
+     */
+    private final FileCache<Long> cache = new FileCache<>(Long::toHexString, s -> Long.parseUnsignedLong(s, 16));
+
+    /**
+     * Returns the files whose content duplicates a file earlier in the
+     * collection. The first file of each group of duplicates is kept.
+     * Unreadable files are never reported.
+     *
+     * @param files the files to check, in priority order.
+     * @return the duplicates, in collection order.
+     */
+    public List<Path> findDuplicates(Collection<Path> files) {
+        // Stat in parallel; only same-size files can be duplicates.
+        List<Stat> stats = files.parallelStream()
+                .map(DuplicateFinder::stat)
+                .collect(Collectors.toList());
+        Map<Long, Integer> sizes = new HashMap<>();
+        for (Stat stat : stats) {
+            if (stat != null) {
+                sizes.merge(stat.size, 1, Integer::sum);
+            }
+        }
+
+        List<Long> hashes = stats.parallelStream()
+                .map(stat -> stat != null && sizes.get(stat.size) > 1
+                        ? cache.get(stat.path, stat.size, stat.modified, path -> sample(path, stat.size))
+                        : null)
+                .collect(Collectors.toList());
+
+        Map<String, Path> seen = new LinkedHashMap<>();
+        List<Path> duplicates = new ArrayList<>();
+        for (int i = 0; i < stats.size(); i++) {
+            Long hash = hashes.get(i);
+            if (hash != null) {
+                Stat stat = stats.get(i);
+                if (seen.putIfAbsent(stat.size + ":" + Long.toHexString(hash), stat.path) != null) {
+                    duplicates.add(stat.path);
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Returns the new files whose content duplicates a known file or a new
+     * file earlier in the collection. Only the new files are read, and each
+     * of them is fingerprinted, so that it is matched from the cache once it
+     * is known. Known files are matched by their cached fingerprints without
+     * touching the disk; one without a fingerprint never matches.
+     * Fingerprints are seeded with the file size, so files of different
+     * sizes do not match. Unreadable files are never reported.
+     *
+     * @param files the new files, in priority order.
+     * @param known the files already present.
+     * @return the duplicates among the new files, in collection order.
+     */
+    public List<Path> findDuplicates(Collection<Path> files, Collection<Path> known) {
+        Set<Long> seen = new HashSet<>();
+        for (Path file : known) {
+            long hash = cachedHash(file);
+            if (hash != 0) {
+                seen.add(hash);
+            }
+        }
+        List<Path> candidates = new ArrayList<>(files);
+        List<Long> hashes = candidates.parallelStream()
+                .map(this::hash)
+                .collect(Collectors.toList());
+        List<Path> duplicates = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            long hash = hashes.get(i);
+            if (hash != 0 && !seen.add(hash)) {
+                duplicates.add(candidates.get(i));
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Returns the content hash of a file, using the cache when the file has
+     * not changed.
+     *
+     * @param file the file to hash.
+     * @return the hash, or 0 if the file cannot be read.
+     */
+    public long hash(Path file) {
+        Stat stat = stat(file);
+        if (stat == null) {
+            return 0;
+        }
+        Long hash = cache.get(file, stat.size, stat.modified, path -> sample(path, stat.size));
+        return hash == null ? 0 : hash;
+    }
+
+    /**
+     * Returns the cached content hash of a file without touching the disk.
+     *
+     * @param file the file.
+     * @return the last known hash, or 0 if there is none.
+     */
+    public long cachedHash(Path file) {
+        Long hash = cache.peek(file);
+        return hash == null ? 0 : hash;
+    }
+
+    /**
+     * Drops the cached fingerprint of a file.
+     *
+     * @param file the file that was removed or changed.
+     */
+    public void forget(Path file) {
+        cache.remove(file);
+    }
+
+    /**
+     * Loads cached fingerprints written by {@link #save(Path)}.
+     *
+     * @param file the cache file.
+     */
+    public void load(Path file) {
+        cache.load(file);
+    }
+
+    /**
+     * Writes the cached fingerprints.
+     *
+     * @param file the cache file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        cache.save(file);
+    }
+
+    /**
+     * Returns size and modification time of a regular file, <i>null</i> otherwise.
+     */
+    private static Stat stat(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            return new Stat(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Hashes the sampled blocks of a file. Small files are hashed in full.
+     *
+     * @return the hash, or <i>null</i> if the file cannot be read.
+     */
+    private static Long sample(Path file, long size) {
+        ByteBuffer buffer = BUFFER.get();
+        long hash = Hash64.SEED ^ size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long step = size <= (long) BLOCK_SIZE * BLOCKS ? BLOCK_SIZE : (size - BLOCK_SIZE) / (BLOCKS - 1);
+            for (long position = 0; position < size; position += step) {
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                    // Fill the block.
+                }
+                buffer.flip();
+                hash = Hash64.update(hash, buffer);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        hash = Hash64.finish(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * A file's size and modification time.
+     */
+    private static final class Stat {
+
+        private final Path path;
+
+        private final long size;
+
+        private final long modified;
+
+        private Stat(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package ir.razplayer.library;
+
+import ir.razplayer.audio.PcmFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the duration of media files from their headers, without a player,
+ * so the playlist can show durations before a track is played and the
+ * command line analyser can run without JavaFX. PCM durations come from the
+ * frame count, MP4 durations from the movie header, and MP3 durations from
+ * the Xing or VBRI header of variable bit rate files or from the size and
+ * bit rate of constant bit rate files. Only files the
+ * {@link MediaTypeDetector} recognises are parsed; others have an unknown
+ * duration. Durations are cached by file.
+ */
+public final class DurationReader {
+
+    /**
+     * The bit rates of MPEG-1 layer III in kbit/s by index.
+     */
+    private static final int[] MPEG1_BITRATES = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+
+    /**
+     * The bit rates of MPEG-2 and 2.5 layer III in kbit/s by index.
+     */
+    private static final int[] MPEG2_BITRATES = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+
+    /**
+     * The sample rates of MPEG-1 in Hz by index; halved for MPEG-2 and
+     * quartered for MPEG-2.5.
+     */
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    /**
+     * The bytes searched for the first MP3 frame after the tag.
+     */
+    private static final int SYNC_SEARCH = 64 * 1024;
+
+    /**
+     * The header bits that stay the same from frame to frame: the sync,
+     * version, layer and sample rate.
+     */
+    private static final int SAME_STREAM = 0xFFFE0C00;
+
+    /**
+     * The durations in milliseconds by file. <i>NaN</i> marks files whose
+     * duration cannot be read from the header.
+     */
+    private final FileCache<Double> cache = new FileCache<>(String::valueOf, Double::valueOf);
+
+    /**
+     * Returns the duration of a file, reading its header if it is not cached.
+     *
+     * @param file the file.
+     * @return the duration in milliseconds, <i>NaN</i> if unknown, or
+     *         <i>null</i> if the file cannot be read.
+     */
+    public Double read(Path file) {
+        return cache.get(file, DurationReader::parse);
+    }
+
+    /**
+     * Reads the durations of many files in parallel.
+     *
+     * @param files the files.
+     * @return the known durations in milliseconds.
+     */
+    public Map<Path, Double> readAll(Collection<Path> files) {
+        Map<Path, Double> durations = new ConcurrentHashMap<>();
+        files.parallelStream().forEach(file -> {
+            Double duration = read(file);
+            if (duration != null && !duration.isNaN()) {
+                durations.put(file, duration);
+            }
+        });
+        return durations;
+    }
+
+    /**
+     * Returns the cache, for loading, saving and invalidation.
+     *
+     * @return the duration cache.
+     */
+    public FileCache<Double> getCache() {
+        return cache;
+    }
+
+    private static Double parse(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = read(channel, 0, 12);
+            if (head.remaining() < 12) {
+                return Double.NaN;
+            }
+            switch (MediaTypeDetector.detect(head)) {
+                case WAV:
+                case AIFF:
+                    try (PcmFile pcm = PcmFile.open(file)) {
+                        return pcm.getFrames() * 1000.0 / pcm.getSampleRate();
+                    } catch (IOException e) {
+                        return Double.NaN;
+                    }
+                case MP4:
+                case MP4_AUDIO:
+                    return mp4(channel);
+                case MP3:
+                    return mp3(channel);
+                default:
+                    // Other formats, such as Ogg or Matroska, have no duration
+                    // in a header this reads; the player reports it.
+                    return Double.NaN;
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Reads the duration from the {@code mvhd} box inside {@code moov}.
+     */
+    private static double mp4(FileChannel channel) throws IOException {
+        long[] moov = findBox(channel, 0, channel.size(), "moov");
+        long[] mvhd = moov == null ? null : findBox(channel, moov[0], moov[1], "mvhd");
+        if (mvhd == null) {
+            return Double.NaN;
+        }
+        ByteBuffer header = read(channel, mvhd[0], 32);
+        int version = header.get(0);
+        long timescale;
+        long duration;
+        if (version == 1) {
+            timescale = header.getInt(20) & 0xFFFFFFFFL;
+            duration = header.getLong(24);
+        } else {
+            timescale = header.getInt(12) & 0xFFFFFFFFL;
+            duration = header.getInt(16) & 0xFFFFFFFFL;
+        }
+        return timescale == 0 ? Double.NaN : duration * 1000.0 / timescale;
+    }
+
+    /**
+     * Finds a box among the boxes between two offsets.
+     *
+     * @return the start and end of the box's content, or <i>null</i>.
+     */
+    private static long[] findBox(FileChannel channel, long from, long to, String type) throws IOException {
+        long position = from;
+        while (position + 8 <= to) {
+            ByteBuffer header = read(channel, position, 16);
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            int headerSize = 8;
+            if (size == 1) {
+                size = header.getLong(8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = to - position;
+            }
+            if (size < headerSize) {
+                return null;
+            }
+            if (fourCC(header, 4).equals(type)) {
+                return new long[]{position + headerSize, Math.min(to, position + size)};
+            }
+            position += size;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the duration of an MPEG audio file from its first frame.
+     */
+    private static double mp3(FileChannel channel) throws IOException {
+        long start = 0;
+        ByteBuffer id3 = read(channel, 0, 10);
+        if (id3.remaining() == 10 && id3.get(0) == 'I' && id3.get(1) == 'D' && id3.get(2) == '3') {
+            int size = (id3.get(6) & 0x7F) << 21 | (id3.get(7) & 0x7F) << 14 | (id3.get(8) & 0x7F) << 7 | id3.get(9) & 0x7F;
+            // A footer repeats the header after the tag.
+            start = 10 + size + ((id3.get(5) & 0x10) != 0 ? 10 : 0);
+        }
+        ByteBuffer search = read(channel, start, SYNC_SEARCH);
+        for (int i = 0; i + 4 <= search.remaining(); i++) {
+            int header = search.getInt(i);
+            int frameLength = frameLength(header);
+            if (frameLength < 0) {
+                continue;
+            }
+            long frameStart = start + i;
+            // Any two bytes can look like a frame sync; a real frame is
+            // followed by another with the same version, layer and rate.
+            ByteBuffer next = read(channel, frameStart + frameLength, 4);
+            if (next.remaining() < 4 || frameLength(next.getInt(0)) < 0
+                    || (next.getInt(0) & SAME_STREAM) != (header & SAME_STREAM)) {
+                continue;
+            }
+            int version = header >>> 19 & 3;
+            int bitrateIndex = header >>> 12 & 15;
+            boolean mpeg1 = version == 3;
+            int sampleRate = sampleRate(header);
+            int samplesPerFrame = mpeg1 ? 1152 : 576;
+            boolean mono = (header >>> 6 & 3) == 3;
+
+            // A Xing or Info header follows the side information of the first frame.
+            int sideInfo = mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+            ByteBuffer first = read(channel, frameStart, 4 + 32 + 16);
+            long frames = -1;
+            String tag = first.remaining() >= 4 + sideInfo + 12 ? fourCC(first, 4 + sideInfo) : "";
+            if ((tag.equals("Xing") || tag.equals("Info")) && (first.getInt(4 + sideInfo + 4) & 1) != 0) {
+                frames = first.getInt(4 + sideInfo + 8) & 0xFFFFFFFFL;
+            } else if (first.remaining() >= 4 + 32 + 16 && fourCC(first, 36).equals("VBRI")) {
+                frames = first.getInt(36 + 14) & 0xFFFFFFFFL;
+            }
+            if (frames > 0) {
+                return frames * samplesPerFrame * 1000.0 / sampleRate;
+            }
+            int bitrate = (mpeg1 ? MPEG1_BITRATES : MPEG2_BITRATES)[bitrateIndex] * 1000;
+            long end = channel.size();
+            if (end >= 128 && fourCC(read(channel, end - 128, 4), 0).startsWith("TAG")) {
+                end -= 128;
+            }
+            return (end - frameStart) * 8 * 1000.0 / bitrate;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Returns the length of the MPEG audio layer III frame a header starts.
+     *
+     * @return the length in bytes, or -1 if the header is not valid.
+     */
+    private static int frameLength(int header) {
+        int version = header >>> 19 & 3;
+        int layer = header >>> 17 & 3;
+        int bitrateIndex = header >>> 12 & 15;
+        int rateIndex = header >>> 10 & 3;
+        if ((header & 0xFFE00000) != 0xFFE00000
+                || version == 1 || layer != 1 || bitrateIndex == 0 || bitrateIndex == 15 || rateIndex == 3) {
+            return -1;
+        }
+        boolean mpeg1 = version == 3;
+        int bitrate = (mpeg1 ? MPEG1_BITRATES : MPEG2_BITRATES)[bitrateIndex] * 1000;
+        int padding = header >>> 9 & 1;
+        return (mpeg1 ? 144 : 72) * bitrate / sampleRate(header) + padding;
+    }
+
+    private static int sampleRate(int header) {
+        int version = header >>> 19 & 3;
+        return SAMPLE_RATES[header >>> 10 & 3] >> (version == 3 ? 0 : version == 2 ? 1 : 2);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // Fill the buffer or reach the end of the file.
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String fourCC(ByteBuffer buffer, int offset) {
+        if (buffer.remaining() < offset + 4) {
+            return "";
+        }
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,196 @@
+package ir.razplayer.library;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A thread-safe cache of values computed from file contents. Entries are
+ * keyed by path and are only valid while the file's size and modification
+ * time are unchanged. The cache can be saved to and loaded from a text file
+ * with one tab-separated entry per line, so the GUI and the command line
+ * analyser share it.
+ *
+ * @param <V> the type of the cached values.
+ */
+public final class FileCache<V> {
+
+    /**
+     * The cached entries by path.
+     */
+    private final Map<Path, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Turns values into single-line strings for the cache file.
+     */
+    private final Function<V, String> encoder;
+
+    /**
+     * Parses the strings written by the encoder.
+     */
+    private final Function<String, V> decoder;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param encoder turns a value into a string.
+     * @param decoder parses a string back into a value.
+     */
+    public FileCache(Function<V, String> encoder, Function<String, V> decoder) {
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Returns the value for a file, computing and caching it if the file is
+     * new or has changed.
+     *
+     * @param file    the file.
+     * @param compute computes the value; may return <i>null</i>, which is not cached.
+     * @return the value, or <i>null</i> if the file cannot be read or nothing was computed.
+     */
+    public V get(Path file, Function<Path, V> compute) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        return get(file, attributes.size(), attributes.lastModifiedTime().toMillis(), compute);
+    }
+
+    /**
+     * Returns the value for a file of known size and modification time,
+     * computing and caching it if the cached entry is missing or stale.
+     *
+     * @param file     the file.
+     * @param size     the file size in bytes.
+     * @param modified the modification time in milliseconds.
+     * @param compute  computes the value; may return <i>null</i>, which is not cached.
+     * @return the value, or <i>null</i> if nothing was computed.
+     */
+    public V get(Path file, long size, long modified, Function<Path, V> compute) {
+        Entry<V> entry = entries.get(file);
+        if (entry != null && entry.size == size && entry.modified == modified) {
+            return entry.value;
+        }
+        V value = compute.apply(file);
+        if (value != null) {
+            entries.put(file, new Entry<>(size, modified, value));
+        }
+        return value;
+    }
+
+    /**
+     * Returns the last cached value of a file without checking whether the
+     * file changed.
+     *
+     * @param file the file.
+     * @return the value, or <i>null</i> if there is none.
+     */
+    public V peek(Path file) {
+        Entry<V> entry = entries.get(file);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Drops the entry of a file.
+     *
+     * @param file the file that was removed or changed.
+     */
+    public void remove(Path file) {
+        entries.remove(file);
+    }
+
+    /**
+     * Loads entries written by {@link #save(Path)}. A missing or damaged
+     * file leaves the cache with whatever could be read.
+     *
+     * @param file the cache file.
+     */
+    public void load(Path file) {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 4) {
+                    V value = decoder.apply(unescape(fields[3]));
+                    if (value != null) {
+                        entries.put(Paths.get(unescape(fields[0])),
+                                new Entry<>(Long.parseLong(fields[1]), Long.parseLong(fields[2]), value));
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Start with whatever was read.
+        }
+    }
+
+    /**
+     * Writes all entries, replacing the file atomically.
+     *
+     * @param file the cache file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<Path, Entry<V>> entry : entries.entrySet()) {
+                Entry<V> value = entry.getValue();
+                out.write(escape(entry.getKey().toString()) + "\t" + value.size + "\t" + value.modified
+                        + "\t" + escape(encoder.apply(value.value)));
+                out.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') == -1) {
+            return s;
+        }
+        StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                out.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * A cached value and the file state it was computed from.
+     */
+    private static final class Entry<V> {
+
+        private final long size;
+
+        private final long modified;
+
+        private final V value;
+
+        private Entry(long size, long modified, V value) {
+            this.size = size;
+            this.modified = modified;
+            this.value = value;
+        }
+    }
+}
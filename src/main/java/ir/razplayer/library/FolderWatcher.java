@@ -0,0 +1,176 @@
+package ir.razplayer.library;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the source directories of the playlist with a {@link WatchService}
+ * and reports their changes in debounced batches. A batch is delivered once
+ * no event has arrived for {@link #QUIET_MILLIS}, or at the latest after
+ * {@link #MAX_DELAY_MILLIS}, so copying a whole album results in one update.
+ */
+final class FolderWatcher {
+
+    /**
+     * The quiet period that ends a batch in milliseconds.
+     */
+    static final long QUIET_MILLIS = 500;
+
+    /**
+     * The longest time a batch is held back in milliseconds.
+     */
+    static final long MAX_DELAY_MILLIS = 5000;
+
+    /**
+     * The changes collected over one debounce period.
+     */
+    static final class Batch {
+
+        /**
+         * The files that appeared.
+         */
+        final Set<Path> created = new LinkedHashSet<>();
+
+        /**
+         * The files that disappeared.
+         */
+        final Set<Path> deleted = new LinkedHashSet<>();
+
+        /**
+         * The files whose content changed.
+         */
+        final Set<Path> modified = new LinkedHashSet<>();
+
+        /**
+         * The directories that lost events and must be compared in full.
+         */
+        final Set<Path> rescan = new LinkedHashSet<>();
+
+        boolean isEmpty() {
+            return created.isEmpty() && deleted.isEmpty() && modified.isEmpty() && rescan.isEmpty();
+        }
+    }
+
+    /**
+     * The underlying watch service.
+     */
+    private final WatchService watchService;
+
+    /**
+     * The receiver of batches. Called on the watcher thread.
+     */
+    private final Consumer<Batch> handler;
+
+    /**
+     * The watched directories and their keys.
+     */
+    private final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Starts the watcher thread.
+     *
+     * @param handler the receiver of batches.
+     * @throws IOException if the watch service cannot be created.
+     */
+    FolderWatcher(Consumer<Batch> handler) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.handler = handler;
+
+        Thread thread = new Thread(this::run, "razplayer-folder-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts watching a directory. Does nothing if it is already watched.
+     *
+     * @param dir the directory to watch.
+     */
+    void watch(Path dir) {
+        keys.computeIfAbsent(dir, d -> {
+            try {
+                return d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException | ClosedWatchServiceException e) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Stops watching.
+     */
+    void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Batch batch = new Batch();
+                collect(watchService.take(), batch);
+
+                long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+                long wait;
+                while ((wait = Math.min(QUIET_MILLIS, deadline - System.currentTimeMillis())) > 0) {
+                    WatchKey key = watchService.poll(wait, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    collect(key, batch);
+                }
+                if (!batch.isEmpty()) {
+                    handler.accept(batch);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watching stopped.
+        }
+    }
+
+    /**
+     * Folds the events of a key into the batch. Later events for the same
+     * file override earlier ones.
+     */
+    private void collect(WatchKey key, Batch batch) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                batch.rescan.add(dir);
+                continue;
+            }
+            Path file = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                batch.deleted.remove(file);
+                batch.created.add(file);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                batch.created.remove(file);
+                batch.modified.remove(file);
+                batch.deleted.add(file);
+            } else if (!batch.created.contains(file)) {
+                batch.modified.add(file);
+            }
+        }
+        if (!key.reset()) {
+            // The directory itself is gone.
+            keys.remove(dir);
+            batch.rescan.add(dir);
+        }
+    }
+}
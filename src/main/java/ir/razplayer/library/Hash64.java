@@ -0,0 +1,56 @@
+package ir.razplayer.library;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A fast non-cryptographic 64-bit hash in the style of MurmurHash64. Good
+ * enough to tell files apart, not to resist deliberate collisions.
+ */
+final class Hash64 {
+
+    static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private static final long MULTIPLIER = 0xC6A4A7935BD1E995L;
+
+    private Hash64() {
+    }
+
+    /**
+     * Mixes the remaining bytes of the buffer into the hash.
+     *
+     * @param hash   the running hash.
+     * @param buffer the bytes to mix in; consumed by this call.
+     * @return the updated hash.
+     */
+    static long update(long hash, ByteBuffer buffer) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.remaining() >= Long.BYTES) {
+            long k = buffer.getLong() * MULTIPLIER;
+            k ^= k >>> 47;
+            hash = (hash ^ k * MULTIPLIER) * MULTIPLIER;
+        }
+        long tail = 0;
+        int shift = 0;
+        while (buffer.hasRemaining()) {
+            tail |= (buffer.get() & 0xFFL) << shift;
+            shift += 8;
+        }
+        if (shift > 0) {
+            hash = (hash ^ tail) * MULTIPLIER;
+        }
+        return hash;
+    }
+
+    /**
+     * Finalizes the hash by spreading its high bits.
+     *
+     * @param hash the running hash.
+     * @return the final hash.
+     */
+    static long finish(long hash) {
+        hash ^= hash >>> 47;
+        hash *= MULTIPLIER;
+        return hash ^ hash >>> 47;
+    }
+}
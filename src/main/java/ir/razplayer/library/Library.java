@@ -0,0 +1,733 @@
+package ir.razplayer.library;
+
+import ir.razplayer.audio.LoudnessAnalyzer;
+import ir.razplayer.audio.SilenceDetector;
+import ir.razplayer.audio.SilenceSpans;
+import ir.razplayer.audio.WaveformAnalyzer;
+import ir.razplayer.jfr.PlaylistImportEvent;
+import ir.razplayer.model.MediaItem;
+import ir.razplayer.model.MediaType;
+import ir.razplayer.util.ConversionUtils;
+import ir.razplayer.util.Log;
+import javafx.application.Platform;
+import javafx.beans.property.IntegerProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.image.Image;
+import javafx.util.Duration;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Imports files into the playlist off the JavaFX application thread and owns
+ * the caches used while doing so. Imports run one after the other, so each
+ * sees the items added by the previous one.
+ */
+public class Library {
+
+    /**
+     * The name of the fingerprint cache file.
+     */
+    private static final String FINGERPRINTS = "fingerprints";
+
+    /**
+     * The name of the media type cache file.
+     */
+    private static final String MEDIA_TYPES = "mediatypes";
+
+    /**
+     * The name of the loudness cache file.
+     */
+    private static final String LOUDNESS = "loudness";
+
+    /**
+     * The name of the silence cache file.
+     */
+    private static final String SILENCE = "silence";
+
+    /**
+     * The name of the tag cache file.
+     */
+    private static final String TAGS = "tags";
+
+    /**
+     * The name of the duration cache file. Changed when durations are read
+     * differently, so that values read before are not loaded.
+     */
+    private static final String DURATIONS = "durations2";
+
+    /**
+     * The name of the waveform peak cache file.
+     */
+    private static final String WAVEFORMS = "waveforms";
+
+    /**
+     * The name of the cover art key cache file.
+     */
+    private static final String COVERS = "covers";
+
+    /**
+     * The longest wait for the import thread on close, in milliseconds.
+     */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /**
+     * The name of the cover art thumbnail directory.
+     */
+    private static final String ART = "art";
+
+    /**
+     * The file extensions picked up from watched folders.
+     */
+    private static final Set<String> MEDIA_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "mp3", "wav", "aif", "aiff", "m4a", "mp4", "m4v", "flv", "fxm"));
+
+    /**
+     * The playlist items are added to.
+     */
+    private final ObservableList<MediaItem> playList;
+
+    /**
+     * The playlist index of the currently playing item.
+     */
+    private final IntegerProperty current;
+
+    /**
+     * The directory holding the cache files.
+     */
+    private final Path cacheDir;
+
+    /**
+     * The content based duplicate detection.
+     */
+    private final DuplicateFinder duplicateFinder = new DuplicateFinder();
+
+    /**
+     * The content based media type detection.
+     */
+    private final MediaTypeDetector mediaTypeDetector = new MediaTypeDetector();
+
+    /**
+     * The tag reading.
+     */
+    private final TagReader tagReader = new TagReader();
+
+    /**
+     * The header based duration reading.
+     */
+    private final DurationReader durationReader = new DurationReader();
+
+    /**
+     * The cover art thumbnails.
+     */
+    private final CoverArt coverArt;
+
+    /**
+     * The loudness measurement of PCM files.
+     */
+    private final LoudnessAnalyzer loudness = new LoudnessAnalyzer();
+
+    /**
+     * The silence detection of PCM files for skip-silence playback.
+     */
+    private final SilenceDetector silence = new SilenceDetector();
+
+    /**
+     * The waveform peaks of PCM files.
+     */
+    private final WaveformAnalyzer waveforms = new WaveformAnalyzer();
+
+    /**
+     * The playlist sorting.
+     */
+    private final PlayListSorter sorter = new PlayListSorter(Locale.getDefault());
+
+    /**
+     * The single thread running imports in order.
+     */
+    private final ExecutorService importer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "razplayer-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The watcher of the playlist's source directories. <i>null</i> unless
+     * watched-folder mode is on.
+     */
+    private volatile FolderWatcher watcher;
+
+    /**
+     * Set while <i>current</i> is moved to follow its item. Only touched on
+     * the JavaFX application thread.
+     */
+    private boolean remapping;
+
+    /**
+     * Creates the library and loads its caches.
+     *
+     * @param playList the playlist items are added to.
+     * @param current  the playlist index of the currently playing item.
+     * @param cacheDir the directory holding the cache files.
+     */
+    public Library(ObservableList<MediaItem> playList, IntegerProperty current, Path cacheDir) {
+        this.playList = playList;
+        this.current = current;
+        this.cacheDir = cacheDir;
+        this.coverArt = new CoverArt(cacheDir.resolve(ART));
+        importer.execute(() -> {
+            duplicateFinder.load(cacheDir.resolve(FINGERPRINTS));
+            mediaTypeDetector.getCache().load(cacheDir.resolve(MEDIA_TYPES));
+            tagReader.getCache().load(cacheDir.resolve(TAGS));
+            coverArt.getKeys().load(cacheDir.resolve(COVERS));
+            loudness.getCache().load(cacheDir.resolve(LOUDNESS));
+            silence.getCache().load(cacheDir.resolve(SILENCE));
+            durationReader.getCache().load(cacheDir.resolve(DURATIONS));
+            waveforms.getCache().load(cacheDir.resolve(WAVEFORMS));
+        });
+    }
+
+    /**
+     * Returns when the caches are loaded.
+     *
+     * @return completed on the import thread once the caches saved by an
+     *         earlier run are in memory.
+     */
+    public CompletableFuture<Void> ready() {
+        return CompletableFuture.runAsync(() -> { }, importer);
+    }
+
+    /**
+     * Computes and caches everything the player looks up about a file:
+     * content hash, media type, tags, duration and, for PCM files,
+     * loudness and waveform peaks. Files cached since they last changed are
+     * not read again. Blocks until done; safe to call from many threads.
+     *
+     * @param file the media file.
+     * @return the media type, or <i>null</i> if the file cannot be read.
+     */
+    public MediaType analyze(Path file) {
+        duplicateFinder.hash(file);
+        MediaType type = mediaTypeDetector.detect(file);
+        tagReader.read(file);
+        durationReader.read(file);
+        if (type == MediaType.WAV || type == MediaType.AIFF) {
+            loudness.measure(file);
+            waveforms.peaks(file);
+        }
+        return type;
+    }
+
+    /**
+     * Adds the files to the playlist, skipping files whose content is already
+     * in the playlist or earlier in the same import. Must be called on the
+     * JavaFX application thread.
+     *
+     * @param files the files to add.
+     * @return the added items, completed on the JavaFX application thread
+     *         once they are in the playlist.
+     */
+    public CompletableFuture<List<MediaItem>> importFiles(List<File> files) {
+        List<Path> existing = new ArrayList<>();
+        for (MediaItem item : playList) {
+            Path path = toPath(item.getURI());
+            if (path != null) {
+                existing.add(path);
+            }
+        }
+        PlaylistImportEvent event = new PlaylistImportEvent();
+        event.begin();
+        CompletableFuture<List<MediaItem>> added = new CompletableFuture<>();
+        importer.execute(() -> {
+            try {
+                List<MediaItem> items = createItems(existing, files);
+                Platform.runLater(() -> {
+                    playList.addAll(items);
+                    event.files = files.size();
+                    event.added = items.size();
+                    event.commit();
+                    added.complete(items);
+                });
+            } catch (RuntimeException e) {
+                Log.warn("Import of " + files.size() + " files failed", e);
+                added.completeExceptionally(e);
+            }
+        });
+        return added;
+    }
+
+    /**
+     * Turns watched-folder mode on or off. While on, the directories of all
+     * playlist items are watched, and new, renamed and deleted files are
+     * applied to the playlist in debounced batches. Must be called on the
+     * JavaFX application thread.
+     *
+     * @param watching <i>true</i> to watch the source directories.
+     */
+    public void setWatching(boolean watching) {
+        if (!watching) {
+            if (watcher != null) {
+                watcher.close();
+                watcher = null;
+            }
+            return;
+        }
+        if (watcher != null) {
+            return;
+        }
+        try {
+            watcher = new FolderWatcher(batch -> importer.execute(() -> applyChanges(batch)));
+        } catch (IOException e) {
+            Log.warn("Watched-folder mode unavailable", e);
+            return;
+        }
+        List<Path> paths = new ArrayList<>();
+        for (MediaItem item : playList) {
+            Path path = toPath(item.getURI());
+            if (path != null) {
+                paths.add(path);
+            }
+        }
+        importer.execute(() -> watchParents(paths));
+    }
+
+    /**
+     * Sorts the playlist. Sort keys are computed and sorted in parallel off
+     * the JavaFX application thread; the result is applied as a single
+     * permutation, and <i>current</i> follows the playing item. A sort that
+     * finds the playlist changed when it is done starts over. Must be called
+     * on the JavaFX application thread.
+     *
+     * @param key        the property to sort by.
+     * @param descending <i>true</i> for descending order.
+     * @return completed on the JavaFX application thread once applied.
+     */
+    public CompletableFuture<Void> sort(PlayListSorter.Key key, boolean descending) {
+        MediaItem[] snapshot = playList.toArray(new MediaItem[0]);
+        String[] texts = new String[snapshot.length];
+        double[] numbers = new double[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            MediaItem item = snapshot[i];
+            switch (key) {
+                case TITLE:
+                    texts[i] = item.getTitle();
+                    break;
+                case PATH:
+                    texts[i] = item.getURI() == null ? null : item.getURI().getPath();
+                    break;
+                case DURATION:
+                    numbers[i] = item.getDuration().isUnknown() ? Double.NaN : item.getDuration().toMillis();
+                    break;
+                default:
+                    numbers[i] = item.getDateAdded();
+                    break;
+            }
+        }
+        boolean byText = key == PlayListSorter.Key.TITLE || key == PlayListSorter.Key.PATH;
+
+        CompletableFuture<Void> sorted = new CompletableFuture<>();
+        importer.execute(() -> {
+            int[] order;
+            try {
+                order = byText ? sorter.sortByText(texts, descending) : sorter.sortByNumber(numbers, descending);
+            } catch (RuntimeException e) {
+                sorted.completeExceptionally(e);
+                return;
+            }
+            Platform.runLater(() -> {
+                if (!playList.equals(Arrays.asList(snapshot))) {
+                    sort(key, descending).whenComplete((result, error) -> {
+                        if (error != null) {
+                            sorted.completeExceptionally(error);
+                        } else {
+                            sorted.complete(null);
+                        }
+                    });
+                    return;
+                }
+                applyOrder(snapshot, order);
+                sorted.complete(null);
+            });
+        });
+        return sorted;
+    }
+
+    /**
+     * Reorders the playlist in one permutation and moves <i>current</i> along
+     * with the playing item.
+     *
+     * @param snapshot the playlist the order was computed for.
+     * @param order    the old index of the item at each new position.
+     */
+    private void applyOrder(MediaItem[] snapshot, int[] order) {
+        Map<MediaItem, Integer> rank = new IdentityHashMap<>();
+        for (int i = 0; i < order.length; i++) {
+            rank.put(snapshot[order[i]], i);
+        }
+        int index = current.get();
+        MediaItem playing = index >= 0 && index < snapshot.length ? snapshot[index] : null;
+        FXCollections.sort(playList, Comparator.comparingInt(rank::get));
+        if (playing != null && rank.get(playing) != index) {
+            remap(rank.get(playing));
+        }
+    }
+
+    /**
+     * Moves <i>current</i> to the new index of its item.
+     */
+    private void remap(int index) {
+        remapping = true;
+        try {
+            current.set(index);
+        } finally {
+            remapping = false;
+        }
+    }
+
+    /**
+     * Returns whether <i>current</i> is being moved to follow its item after
+     * the playlist was reordered or shrunk. Listeners of <i>current</i> use
+     * it to tell such a move from a new selection. Must be called on the
+     * JavaFX application thread.
+     *
+     * @return <i>true</i> while the index changes but the item does not.
+     */
+    public boolean isRemapping() {
+        return remapping;
+    }
+
+    /**
+     * Stops the import thread, waiting up to {@link #CLOSE_TIMEOUT}
+     * milliseconds for a running import to finish, and saves the caches.
+     */
+    public void close() {
+        setWatching(false);
+        importer.shutdown();
+        try {
+            // An import still fills the caches; saving first would lose it.
+            if (!importer.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                Log.warn("Import still running on close, saving the caches without it");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        loudness.close();
+        silence.close();
+        coverArt.close();
+        try {
+            duplicateFinder.save(cacheDir.resolve(FINGERPRINTS));
+            mediaTypeDetector.getCache().save(cacheDir.resolve(MEDIA_TYPES));
+            tagReader.getCache().save(cacheDir.resolve(TAGS));
+            coverArt.getKeys().save(cacheDir.resolve(COVERS));
+            loudness.getCache().save(cacheDir.resolve(LOUDNESS));
+            silence.getCache().save(cacheDir.resolve(SILENCE));
+            durationReader.getCache().save(cacheDir.resolve(DURATIONS));
+            waveforms.getCache().save(cacheDir.resolve(WAVEFORMS));
+        } catch (IOException e) {
+            Log.warn("Library caches could not be saved", e);
+        }
+    }
+
+    /**
+     * Returns the volume factor that normalises the loudness of an item.
+     * Only cached measurements are used; an item that has not been measured
+     * is queued for measuring and plays unchanged this time. Reads the file
+     * attributes, so call it off the JavaFX application thread.
+     *
+     * @param uri the URI of the media item.
+     * @return the factor between 0 and 1 to multiply the volume with.
+     */
+    public double getTrackVolume(URI uri) {
+        Path path = toPath(uri);
+        if (path == null) {
+            return 1;
+        }
+        Double gain = loudness.cachedGain(path);
+        if (gain == null) {
+            loudness.gain(path);
+            return 1;
+        }
+        return LoudnessAnalyzer.toVolume(gain);
+    }
+
+    /**
+     * Starts finding the silences of an item for skip-silence playback.
+     * Files that are not PCM have none.
+     *
+     * @param uri      the URI of the media item.
+     * @param listener receives the spans found so far, on the scanning thread.
+     * @return the scan, or <i>null</i> if the item is not a local file.
+     */
+    public Future<?> scanSilence(URI uri, Consumer<SilenceSpans> listener) {
+        Path path = toPath(uri);
+        return path == null ? null : silence.scan(path, listener);
+    }
+
+    /**
+     * Returns the thumbnail of an item's embedded cover art.
+     *
+     * @param uri the URI of the media item.
+     * @return the thumbnail, or <i>null</i> if the item has none, completed
+     *         on a background thread.
+     */
+    public CompletableFuture<Image> getCoverArt(URI uri) {
+        Path path = toPath(uri);
+        return path == null ? CompletableFuture.completedFuture(null) : coverArt.load(path);
+    }
+
+    /**
+     * Returns the cached waveform peaks of an item. Peaks are only computed
+     * by {@link #analyze(Path)}.
+     *
+     * @param uri the URI of the media item.
+     * @return {@link WaveformAnalyzer#PEAKS} levels from 0 to 255, empty if
+     *         the item is not PCM, or <i>null</i> if not analysed.
+     */
+    public byte[] getWaveform(URI uri) {
+        Path path = toPath(uri);
+        return path == null ? null : waveforms.cachedPeaks(path);
+    }
+
+    /**
+     * Returns the duplicate detection, for checks outside an import.
+     *
+     * @return the duplicate finder.
+     */
+    public DuplicateFinder getDuplicateFinder() {
+        return duplicateFinder;
+    }
+
+    /**
+     * Builds the items for the files that are not duplicates.
+     */
+    private List<MediaItem> createItems(List<Path> existing, List<File> files) {
+        Set<Path> known = new HashSet<>(existing);
+        Set<Path> added = new LinkedHashSet<>();
+        for (File file : files) {
+            Path path = file.toPath().toAbsolutePath().normalize();
+            if (!known.contains(path)) {
+                added.add(path);
+            }
+        }
+        // Existing items were fingerprinted when they were added, so only
+        // the new files are read.
+        Set<Path> duplicates = new HashSet<>(duplicateFinder.findDuplicates(added, existing));
+        List<Path> paths = new ArrayList<>();
+        for (Path path : added) {
+            if (!duplicates.contains(path)) {
+                paths.add(path);
+            }
+        }
+
+        // Decide audio or video now, so playback never has to touch the disk for it.
+        Map<Path, MediaType> types = mediaTypeDetector.detectAll(paths);
+        Map<Path, TagReader.Tags> tags = tagReader.readAll(paths);
+        Map<Path, Double> durations = durationReader.readAll(paths);
+        List<MediaItem> items = new ArrayList<>();
+        for (Path path : paths) {
+            URI uri = path.toUri();
+            MediaItem item = new MediaItem(uri);
+            TagReader.Tags tagged = tags.get(path);
+            if (tagged != null && !tagged.getTitle().isEmpty()) {
+                item.setTitle(tagged.getTitle());
+            } else {
+                item.setTitle(ConversionUtils.convertToFileName(uri));
+            }
+            if (tagged != null) {
+                item.setArtist(tagged.getArtist());
+                item.setAlbum(tagged.getAlbum());
+                item.setTrackNumber(tagged.getTrack());
+            }
+            item.setMediaType(types.get(path));
+            Double duration = durations.get(path);
+            if (duration != null) {
+                item.setDuration(Duration.millis(duration));
+            }
+            items.add(item);
+            // Measure decodable files ahead of playback.
+            if (item.getMediaType() == MediaType.WAV || item.getMediaType() == MediaType.AIFF) {
+                loudness.gain(path);
+            }
+        }
+        watchParents(paths);
+        return items;
+    }
+
+    /**
+     * Watches the directories of the files if watched-folder mode is on. The
+     * files were fingerprinted on import, so a later rename can be told from
+     * a delete.
+     */
+    private void watchParents(List<Path> paths) {
+        FolderWatcher folderWatcher = watcher;
+        if (folderWatcher != null) {
+            for (Path path : paths) {
+                if (path.getParent() != null) {
+                    folderWatcher.watch(path.getParent());
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of folder changes. Runs on the import thread, so disk
+     * access stays off the JavaFX application thread; the playlist itself is
+     * updated in one step on the latter.
+     */
+    private void applyChanges(FolderWatcher.Batch batch) {
+        Set<Path> deleted = new LinkedHashSet<>(batch.deleted);
+        List<Path> created = batch.created.stream()
+                .filter(path -> Files.isRegularFile(path) && isMediaFile(path))
+                .collect(Collectors.toList());
+        batch.modified.forEach(this::forget);
+        // Changed files get a new fingerprint, so they can still be renamed.
+        batch.modified.stream()
+                .filter(path -> Files.isRegularFile(path) && isMediaFile(path))
+                .forEach(duplicateFinder::hash);
+
+        // Directories that lost events are compared against a fresh listing.
+        Map<Path, Set<Path>> listings = new HashMap<>();
+        for (Path dir : batch.rescan) {
+            Set<Path> listing = new HashSet<>();
+            if (Files.isDirectory(dir)) {
+                try (Stream<Path> files = Files.list(dir)) {
+                    files.filter(path -> Files.isRegularFile(path) && isMediaFile(path)).forEach(listing::add);
+                } catch (IOException e) {
+                    continue;
+                }
+                created.addAll(listing);
+            }
+            listings.put(dir, listing);
+        }
+
+        // A rename shows up as a delete and a create of the same content.
+        Map<Long, Path> deletedByHash = new HashMap<>();
+        for (Path path : deleted) {
+            long hash = duplicateFinder.cachedHash(path);
+            if (hash != 0) {
+                deletedByHash.put(hash, path);
+            }
+        }
+        Map<Path, Path> renamed = new HashMap<>();
+        if (!deletedByHash.isEmpty()) {
+            for (Path path : created) {
+                Path from = deletedByHash.remove(duplicateFinder.hash(path));
+                if (from != null) {
+                    renamed.put(from, path);
+                }
+            }
+        }
+        deleted.removeAll(renamed.keySet());
+        created.removeAll(renamed.values());
+        deleted.forEach(this::forget);
+        renamed.keySet().forEach(this::forget);
+
+        List<File> added = created.stream().map(Path::toFile).collect(Collectors.toList());
+        Platform.runLater(() -> {
+            List<MediaItem> removed = new ArrayList<>();
+            for (MediaItem item : playList) {
+                Path path = toPath(item.getURI());
+                if (path == null) {
+                    continue;
+                }
+                Path to = renamed.get(path);
+                Set<Path> listing = listings.get(path.getParent());
+                if (to != null) {
+                    // Tagged titles survive a rename; file names follow it.
+                    if (item.getTitle().equals(ConversionUtils.convertToFileName(item.getURI()))) {
+                        item.setTitle(ConversionUtils.convertToFileName(to.toUri()));
+                    }
+                    item.setURI(to.toUri());
+                } else if (deleted.contains(path) || (listing != null && !listing.contains(path))) {
+                    removed.add(item);
+                }
+            }
+            removeItems(removed);
+            if (!added.isEmpty()) {
+                importFiles(added);
+            }
+        });
+    }
+
+    /**
+     * Drops the cached data of a file that was removed or changed.
+     */
+    private void forget(Path path) {
+        duplicateFinder.forget(path);
+        mediaTypeDetector.getCache().remove(path);
+        durationReader.getCache().remove(path);
+    }
+
+    /**
+     * Removes items from the playlist while keeping <i>current</i> on the
+     * playing item. The playing item itself is never removed.
+     */
+    private void removeItems(List<MediaItem> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        int index = current.get();
+        MediaItem playing = index >= 0 && index < playList.size() ? playList.get(index) : null;
+        removed.remove(playing);
+        playList.removeAll(removed);
+        if (playing != null) {
+            remap(playList.indexOf(playing));
+        }
+    }
+
+    /**
+     * Returns whether the file is media JavaFX can play. Files with a media
+     * extension are taken by name; any other file is sniffed, so that
+     * extensionless or misnamed media is found too. Sniffed types are cached
+     * with those of imported files.
+     *
+     * @param path the file.
+     * @return <i>true</i> for media files.
+     */
+    public boolean isMediaFile(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot != -1 && MEDIA_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        MediaType type = mediaTypeDetector.detect(path);
+        return type != null && type != MediaType.UNKNOWN;
+    }
+
+    /**
+     * Returns the local path of a file URI, or <i>null</i> for other URIs.
+     */
+    static Path toPath(URI uri) {
+        if (uri == null || !"file".equalsIgnoreCase(uri.getScheme())) {
+            return null;
+        }
+        try {
+            return Path.of(uri).toAbsolutePath().normalize();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
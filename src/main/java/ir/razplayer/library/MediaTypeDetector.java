@@ -0,0 +1,159 @@
+package ir.razplayer.library;
+
+import ir.razplayer.model.MediaType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Detects the container format of media files from their first bytes rather
+ * than their names. Only {@link #SNIFF_SIZE} bytes are read per file, into
+ * buffers taken from a small pool, and results are cached per file.
+ */
+public final class MediaTypeDetector {
+
+    /**
+     * The number of leading bytes read per file.
+     */
+    static final int SNIFF_SIZE = 4 * 1024;
+
+    /**
+     * The most buffers kept in the pool.
+     */
+    private static final int POOL_SIZE = 32;
+
+    /**
+     * The MP4 brands used by audio-only files.
+     */
+    private static final String[] AUDIO_BRANDS = {"M4A ", "M4B ", "M4P "};
+
+    /**
+     * The idle read buffers.
+     */
+    private final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The cached media types.
+     */
+    private final FileCache<MediaType> cache = new FileCache<>(MediaType::name, MediaType::valueOf);
+
+    /**
+     * Returns the media type of a file, sniffing it if it is not cached.
+     *
+     * @param file the file.
+     * @return the media type, or <i>null</i> if the file cannot be read.
+     */
+    public MediaType detect(Path file) {
+        return cache.get(file, this::sniff);
+    }
+
+    /**
+     * Detects the media types of many files in parallel.
+     *
+     * @param files the files.
+     * @return the media types of the readable files.
+     */
+    public Map<Path, MediaType> detectAll(Collection<Path> files) {
+        Map<Path, MediaType> types = new ConcurrentHashMap<>();
+        files.parallelStream().forEach(file -> {
+            MediaType type = detect(file);
+            if (type != null) {
+                types.put(file, type);
+            }
+        });
+        return types;
+    }
+
+    /**
+     * Returns the cache, for loading, saving and invalidation.
+     *
+     * @return the media type cache.
+     */
+    public FileCache<MediaType> getCache() {
+        return cache;
+    }
+
+    private MediaType sniff(Path file) {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(SNIFF_SIZE);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+                // Fill the buffer or reach the end of the file.
+            }
+            buffer.flip();
+            return detect(buffer);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (pool.size() < POOL_SIZE) {
+                pool.offer(buffer);
+            }
+        }
+    }
+
+    /**
+     * Matches the leading bytes against known container signatures.
+     *
+     * @param head the first bytes of a file.
+     * @return the media type, {@link MediaType#UNKNOWN} if nothing matches.
+     */
+    static MediaType detect(ByteBuffer head) {
+        int n = head.remaining();
+        if (startsWith(head, 0, "ID3")) {
+            return MediaType.MP3;
+        }
+        if (n >= 12 && startsWith(head, 0, "RIFF") && startsWith(head, 8, "WAVE")) {
+            return MediaType.WAV;
+        }
+        if (n >= 12 && startsWith(head, 0, "FORM") && (startsWith(head, 8, "AIFF") || startsWith(head, 8, "AIFC"))) {
+            return MediaType.AIFF;
+        }
+        if (n >= 12 && startsWith(head, 4, "ftyp")) {
+            for (String brand : AUDIO_BRANDS) {
+                if (startsWith(head, 8, brand)) {
+                    return MediaType.MP4_AUDIO;
+                }
+            }
+            return MediaType.MP4;
+        }
+        if (startsWith(head, 0, "FLV")) {
+            return MediaType.FLV;
+        }
+        if (n >= 2 && isMpegAudioSync(head.get(head.position()), head.get(head.position() + 1))) {
+            return MediaType.MP3;
+        }
+        return MediaType.UNKNOWN;
+    }
+
+    /**
+     * Returns whether two bytes start an MPEG audio frame of layer I, II or III.
+     */
+    private static boolean isMpegAudioSync(byte b0, byte b1) {
+        return (b0 & 0xFF) == 0xFF && (b1 & 0xE0) == 0xE0 && (b1 & 0x06) != 0;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, String magic) {
+        byte[] bytes = magic.getBytes(StandardCharsets.US_ASCII);
+        if (buffer.remaining() < offset + bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(buffer.position() + offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
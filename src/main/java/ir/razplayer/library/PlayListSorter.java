@@ -0,0 +1,142 @@
+package ir.razplayer.library;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the sorted order of a playlist snapshot. Sort keys are computed
+ * once per item and in parallel: text is turned into a {@link CollationKey}
+ * with numbers compared by value, so "Track 2" sorts before "Track 10".
+ * Sorting is stable, so items with equal keys keep their relative order.
+ */
+public final class PlayListSorter {
+
+    /**
+     * The property a playlist is sorted by.
+     */
+    public enum Key {
+        TITLE, PATH, DURATION, DATE_ADDED
+    }
+
+    /**
+     * The longest run of digits compared by value; longer runs compare as
+     * if this long.
+     */
+    private static final int MAX_DIGITS = 99;
+
+    /**
+     * The per-thread collator; collators are not thread-safe.
+     */
+    private final ThreadLocal<Collator> collator;
+
+    /**
+     * Creates a sorter for the locale.
+     *
+     * @param locale the locale whose collation rules are used for text.
+     */
+    public PlayListSorter(Locale locale) {
+        Collator prototype = Collator.getInstance(locale);
+        prototype.setStrength(Collator.SECONDARY);
+        this.collator = ThreadLocal.withInitial(() -> (Collator) prototype.clone());
+    }
+
+    /**
+     * Sorts by text.
+     *
+     * @param texts      the text of each item; <i>null</i> is treated as empty.
+     * @param descending <i>true</i> for descending order.
+     * @return the old index of the item at each new position.
+     */
+    public int[] sortByText(String[] texts, boolean descending) {
+        Entry[] entries = IntStream.range(0, texts.length).parallel()
+                .mapToObj(i -> new Entry(i, collator.get().getCollationKey(naturalKey(texts[i])), 0))
+                .toArray(Entry[]::new);
+        Comparator<Entry> byKey = (a, b) -> a.text.compareTo(b.text);
+        return sort(entries, descending ? byKey.reversed() : byKey);
+    }
+
+    /**
+     * Sorts by number. <i>NaN</i> values sort last in either direction.
+     *
+     * @param numbers    the number of each item.
+     * @param descending <i>true</i> for descending order.
+     * @return the old index of the item at each new position.
+     */
+    public int[] sortByNumber(double[] numbers, boolean descending) {
+        Entry[] entries = IntStream.range(0, numbers.length)
+                .mapToObj(i -> new Entry(i, null, numbers[i]))
+                .toArray(Entry[]::new);
+        Comparator<Entry> byKey = (a, b) -> Double.compare(a.number, b.number);
+        Comparator<Entry> known = descending ? byKey.reversed() : byKey;
+        return sort(entries, (a, b) -> {
+            boolean aUnknown = Double.isNaN(a.number);
+            boolean bUnknown = Double.isNaN(b.number);
+            if (aUnknown || bUnknown) {
+                return Boolean.compare(aUnknown, bUnknown);
+            }
+            return known.compare(a, b);
+        });
+    }
+
+    private static int[] sort(Entry[] entries, Comparator<Entry> comparator) {
+        // Object parallelSort is stable.
+        Arrays.parallelSort(entries, comparator);
+        int[] order = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            order[i] = entries[i].index;
+        }
+        return order;
+    }
+
+    /**
+     * Prefixes every run of digits with its length as two digits, leading
+     * zeros removed, so that collating the result compares numbers by value.
+     * Cheaper to collate than zero padding to a fixed width.
+     */
+    private static String naturalKey(String text) {
+        if (text == null) {
+            return "";
+        }
+        int length = text.length();
+        StringBuilder key = new StringBuilder(length + 8);
+        int i = 0;
+        while (i < length) {
+            if (!Character.isDigit(text.charAt(i))) {
+                key.append(text.charAt(i++));
+                continue;
+            }
+            while (i < length - 1 && text.charAt(i) == '0' && Character.isDigit(text.charAt(i + 1))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isDigit(text.charAt(i))) {
+                i++;
+            }
+            int digits = Math.min(i - start, MAX_DIGITS);
+            key.append((char) ('0' + digits / 10)).append((char) ('0' + digits % 10)).append(text, start, i);
+        }
+        return key.toString();
+    }
+
+    /**
+     * An item's precomputed sort key.
+     */
+    private static final class Entry {
+
+        private final int index;
+
+        private final CollationKey text;
+
+        private final double number;
+
+        private Entry(int index, CollationKey text, double number) {
+            this.index = index;
+            this.text = text;
+            this.number = number;
+        }
+    }
+}
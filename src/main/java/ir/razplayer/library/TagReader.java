@@ -0,0 +1,743 @@
+package ir.razplayer.library;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads title, artist, album and track number from ID3v2 and ID3v1 tags and
+ * from the INFO list of RIFF files, including ID3 chunks in WAV and AIFF
+ * files. Tags are parsed straight from the file with positional reads of
+ * the headers: frames that are not needed, such as pictures, and the audio
+ * itself are skipped without being read. Results are cached per file.
+ */
+public final class TagReader {
+
+    /**
+     * The bytes read at once from the start of an ID3v2 tag.
+     */
+    private static final int WINDOW_SIZE = 4 * 1024;
+
+    /**
+     * The longest text frame read, in bytes.
+     */
+    private static final int MAX_TEXT = 1024;
+
+    /**
+     * The largest picture read, in bytes.
+     */
+    private static final int MAX_PICTURE = 16 * 1024 * 1024;
+
+    /**
+     * The size of an ID3v1 tag at the end of a file.
+     */
+    private static final int ID3V1_SIZE = 128;
+
+    /**
+     * The most chunks walked in a RIFF or AIFF file.
+     */
+    private static final int MAX_CHUNKS = 64;
+
+    /**
+     * The cached tags.
+     */
+    private final FileCache<Tags> cache = new FileCache<>(Tags::encode, Tags::decode);
+
+    /**
+     * Returns the tags of a file, reading them if they are not cached.
+     *
+     * @param file the file.
+     * @return the tags, empty if the file has none, or <i>null</i> if it cannot be read.
+     */
+    public Tags read(Path file) {
+        return cache.get(file, TagReader::parse);
+    }
+
+    /**
+     * Reads the tags of many files in parallel.
+     *
+     * @param files the files.
+     * @return the tags of the readable files.
+     */
+    public Map<Path, Tags> readAll(Collection<Path> files) {
+        Map<Path, Tags> tags = new ConcurrentHashMap<>();
+        files.parallelStream().forEach(file -> {
+            Tags read = read(file);
+            if (read != null) {
+                tags.put(file, read);
+            }
+        });
+        return tags;
+    }
+
+    /**
+     * Returns the cache, for loading, saving and invalidation.
+     *
+     * @return the tag cache.
+     */
+    public FileCache<Tags> getCache() {
+        return cache;
+    }
+
+    private static Tags parse(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Builder tags = new Builder();
+            ByteBuffer head = read(channel, 0, 12, ByteOrder.BIG_ENDIAN);
+            if (startsWith(head, 0, "ID3")) {
+                readId3v2(channel, 0, tags);
+                if (!tags.isComplete()) {
+                    readId3v1(channel, tags);
+                }
+            } else if (startsWith(head, 0, "RIFF") && startsWith(head, 8, "WAVE")) {
+                readRiff(channel, tags);
+            } else if (startsWith(head, 0, "FORM") && (startsWith(head, 8, "AIFF") || startsWith(head, 8, "AIFC"))) {
+                readAiff(channel, tags);
+            } else {
+                readId3v1(channel, tags);
+            }
+            return tags.build();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the text frames of an ID3v2.2, 2.3 or 2.4 tag.
+     *
+     * @param start the file position of the tag header.
+     */
+    private static void readId3v2(FileChannel channel, long start, Builder tags) throws IOException {
+        walkId3v2(channel, start, (window, id, data, size, unsync) -> {
+            Field field = Field.of(id);
+            if (field != null && size > 1) {
+                int length = (int) Math.min(size, MAX_TEXT);
+                ByteBuffer text = window.get(data, length);
+                if (text != null) {
+                    byte[] bytes = new byte[length];
+                    text.get(bytes);
+                    tags.set(field, decodeText(unsync ? resync(bytes) : bytes));
+                }
+            }
+            return !tags.isComplete();
+        });
+    }
+
+    /**
+     * Walks the frames of an ID3v2.2, 2.3 or 2.4 tag. Only frame headers are
+     * read; compressed and encrypted frames are passed over.
+     *
+     * @param start the file position of the tag header.
+     */
+    private static void walkId3v2(FileChannel channel, long start, FrameVisitor visitor) throws IOException {
+        Window window = new Window(channel);
+        ByteBuffer header = window.get(start, 10);
+        if (header == null || !startsWith(header, header.position(), "ID3")) {
+            return;
+        }
+        int p = header.position();
+        int version = header.get(p + 3);
+        int flags = header.get(p + 5);
+        long end = start + 10 + syncsafe(header, p + 6);
+        if (version < 2 || version > 4 || version < 4 && (flags & 0x80) != 0) {
+            // Whole-tag unsynchronisation shifts the frames; leave it to ID3v1.
+            return;
+        }
+        long position = start + 10;
+        if ((flags & 0x40) != 0 && version >= 3) {
+            ByteBuffer extended = window.get(position, 4);
+            if (extended == null) {
+                return;
+            }
+            position += version == 3 ? 4 + extended.getInt(extended.position()) : syncsafe(extended, extended.position());
+        }
+
+        int headerSize = version == 2 ? 6 : 10;
+        while (position + headerSize <= end) {
+            ByteBuffer frame = window.get(position, headerSize);
+            if (frame == null || frame.get(frame.position()) == 0) {
+                // Padding.
+                return;
+            }
+            int f = frame.position();
+            String id;
+            long size;
+            int frameFlags = 0;
+            if (version == 2) {
+                id = fourCC(frame, f, 3);
+                size = (frame.get(f + 3) & 0xFFL) << 16 | (frame.get(f + 4) & 0xFF) << 8 | frame.get(f + 5) & 0xFF;
+            } else {
+                id = fourCC(frame, f, 4);
+                size = version == 4 ? syncsafe(frame, f + 4) : frame.getInt(f + 4) & 0xFFFFFFFFL;
+                frameFlags = frame.getShort(f + 8) & 0xFFFF;
+            }
+            long data = position + headerSize;
+            position = data + size;
+            if (position > end) {
+                return;
+            }
+            int skip = 0;
+            boolean unsync = false;
+            if (version == 3) {
+                if ((frameFlags & 0xC0) != 0) {
+                    // Compressed or encrypted.
+                    continue;
+                }
+                skip = (frameFlags & 0x20) != 0 ? 1 : 0;
+            } else if (version == 4) {
+                if ((frameFlags & 0x0C) != 0) {
+                    continue;
+                }
+                skip = ((frameFlags & 0x40) != 0 ? 1 : 0) + ((frameFlags & 0x01) != 0 ? 4 : 0);
+                unsync = (frameFlags & 0x02) != 0;
+            }
+            if (size > skip && !visitor.visit(window, id, data + skip, size - skip, unsync)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the embedded picture of a file: the front cover if there is
+     * one, otherwise the first picture. Reads the APIC or PIC frames of an
+     * ID3v2 tag at the start of the file or in a WAV or AIFF ID3 chunk.
+     *
+     * @param file the file.
+     * @return the encoded image, or <i>null</i> if the file has none.
+     * @throws IOException if the file cannot be read.
+     */
+    public static byte[] readPicture(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = read(channel, 0, 12, ByteOrder.BIG_ENDIAN);
+            long start = -1;
+            if (startsWith(head, 0, "ID3")) {
+                start = 0;
+            } else if (startsWith(head, 0, "RIFF") && startsWith(head, 8, "WAVE")) {
+                start = findChunk(channel, "id3 ", ByteOrder.LITTLE_ENDIAN);
+            } else if (startsWith(head, 0, "FORM") && (startsWith(head, 8, "AIFF") || startsWith(head, 8, "AIFC"))) {
+                start = findChunk(channel, "ID3 ", ByteOrder.BIG_ENDIAN);
+            }
+            if (start < 0) {
+                return null;
+            }
+            byte[][] picture = new byte[1][];
+            walkId3v2(channel, start, (window, id, data, size, unsync) -> {
+                if (!id.equals("APIC") && !id.equals("PIC") || size > MAX_PICTURE) {
+                    return true;
+                }
+                ByteBuffer frame = window.get(data, (int) size);
+                if (frame == null) {
+                    return true;
+                }
+                byte[] bytes = new byte[(int) size];
+                frame.get(bytes);
+                if (unsync) {
+                    bytes = resync(bytes);
+                }
+                int type = pictureType(bytes, id.equals("PIC"));
+                int offset = pictureOffset(bytes, type);
+                if (offset < 0 || offset >= bytes.length) {
+                    return true;
+                }
+                boolean front = bytes[type] == 3;
+                if (picture[0] == null || front) {
+                    picture[0] = Arrays.copyOfRange(bytes, offset, bytes.length);
+                }
+                return !front;
+            });
+            return picture[0];
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the picture type of a picture frame, after the encoding and the
+     * three letter format or null-terminated MIME type.
+     *
+     * @return the offset of the picture type.
+     */
+    private static int pictureType(byte[] frame, boolean v22) {
+        if (v22) {
+            return 4;
+        }
+        int i = 1;
+        while (i < frame.length && frame[i] != 0) {
+            i++;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Finds where the image data of a picture frame starts, after the
+     * picture type and description.
+     *
+     * @return the offset of the image data, -1 if the frame is malformed.
+     */
+    private static int pictureOffset(byte[] frame, int type) {
+        boolean wide = frame[0] == 1 || frame[0] == 2;
+        int i = type + 1;
+        while (i < frame.length) {
+            if (!wide && frame[i] == 0) {
+                return i + 1;
+            }
+            if (wide && i + 1 < frame.length && frame[i] == 0 && frame[i + 1] == 0) {
+                return i + 2;
+            }
+            i += wide ? 2 : 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the data position of the first chunk with an identifier.
+     *
+     * @return the position, -1 if there is no such chunk.
+     */
+    private static long findChunk(FileChannel channel, String wanted, ByteOrder order) throws IOException {
+        long position = 12;
+        long size = channel.size();
+        for (int i = 0; i < MAX_CHUNKS && position + 8 <= size; i++) {
+            ByteBuffer chunk = read(channel, position, 8, order);
+            long length = chunk.getInt(4) & 0xFFFFFFFFL;
+            if (fourCC(chunk, 0, 4).equalsIgnoreCase(wanted)) {
+                return position + 8;
+            }
+            position += 8 + length + (length & 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Reads an ID3v1 or ID3v1.1 tag from the end of the file.
+     */
+    private static void readId3v1(FileChannel channel, Builder tags) throws IOException {
+        long size = channel.size();
+        if (size < ID3V1_SIZE) {
+            return;
+        }
+        ByteBuffer tag = read(channel, size - ID3V1_SIZE, ID3V1_SIZE, ByteOrder.BIG_ENDIAN);
+        if (!startsWith(tag, 0, "TAG")) {
+            return;
+        }
+        tags.set(Field.TITLE, latin1(tag, 3, 30));
+        tags.set(Field.ARTIST, latin1(tag, 33, 30));
+        tags.set(Field.ALBUM, latin1(tag, 63, 30));
+        if (tag.get(125) == 0 && tag.get(126) != 0) {
+            tags.set(Field.TRACK, Integer.toString(tag.get(126) & 0xFF));
+        }
+    }
+
+    /**
+     * Walks the chunks of a WAV file for an INFO list or an ID3 chunk.
+     */
+    private static void readRiff(FileChannel channel, Builder tags) throws IOException {
+        long position = 12;
+        long size = channel.size();
+        for (int i = 0; i < MAX_CHUNKS && position + 8 <= size && !tags.isComplete(); i++) {
+            ByteBuffer chunk = read(channel, position, 12, ByteOrder.LITTLE_ENDIAN);
+            String id = fourCC(chunk, 0, 4);
+            long length = chunk.getInt(4) & 0xFFFFFFFFL;
+            if (id.equals("LIST") && length >= 4 && startsWith(chunk, 8, "INFO")) {
+                readInfo(channel, position + 12, Math.min(position + 8 + length, size), tags);
+            } else if (id.equalsIgnoreCase("id3 ")) {
+                readId3v2(channel, position + 8, tags);
+            }
+            position += 8 + length + (length & 1);
+        }
+    }
+
+    /**
+     * Reads the sub-chunks of a RIFF INFO list.
+     */
+    private static void readInfo(FileChannel channel, long position, long end, Builder tags) throws IOException {
+        while (position + 8 <= end) {
+            ByteBuffer chunk = read(channel, position, 8, ByteOrder.LITTLE_ENDIAN);
+            String id = fourCC(chunk, 0, 4);
+            long length = chunk.getInt(4) & 0xFFFFFFFFL;
+            Field field = Field.ofInfo(id);
+            if (field != null && length > 0 && position + 8 + length <= end) {
+                ByteBuffer text = read(channel, position + 8, (int) Math.min(length, MAX_TEXT), ByteOrder.LITTLE_ENDIAN);
+                byte[] bytes = new byte[text.remaining()];
+                text.get(bytes);
+                // INFO strings have no declared encoding; UTF-8 is the common choice.
+                tags.set(field, clean(new String(bytes, StandardCharsets.UTF_8)));
+            }
+            position += 8 + length + (length & 1);
+        }
+    }
+
+    /**
+     * Walks the chunks of an AIFF file for an ID3 chunk or name and author
+     * chunks.
+     */
+    private static void readAiff(FileChannel channel, Builder tags) throws IOException {
+        long position = 12;
+        long size = channel.size();
+        for (int i = 0; i < MAX_CHUNKS && position + 8 <= size && !tags.isComplete(); i++) {
+            ByteBuffer chunk = read(channel, position, 8, ByteOrder.BIG_ENDIAN);
+            String id = fourCC(chunk, 0, 4);
+            long length = chunk.getInt(4) & 0xFFFFFFFFL;
+            if (id.equals("ID3 ")) {
+                readId3v2(channel, position + 8, tags);
+            } else if ((id.equals("NAME") || id.equals("AUTH")) && length > 0) {
+                ByteBuffer text = read(channel, position + 8, (int) Math.min(length, MAX_TEXT), ByteOrder.BIG_ENDIAN);
+                byte[] bytes = new byte[text.remaining()];
+                text.get(bytes);
+                tags.set(id.equals("NAME") ? Field.TITLE : Field.ARTIST,
+                        clean(new String(bytes, StandardCharsets.ISO_8859_1)));
+            }
+            position += 8 + length + (length & 1);
+        }
+    }
+
+    /**
+     * Decodes an ID3v2 text frame: an encoding byte followed by the text.
+     * Only the first of several null-separated values is kept.
+     */
+    private static String decodeText(byte[] bytes) {
+        Charset charset;
+        switch (bytes[0]) {
+            case 1:
+                charset = StandardCharsets.UTF_16;
+                break;
+            case 2:
+                charset = StandardCharsets.UTF_16BE;
+                break;
+            case 3:
+                charset = StandardCharsets.UTF_8;
+                break;
+            default:
+                charset = StandardCharsets.ISO_8859_1;
+                break;
+        }
+        int length = bytes.length - 1;
+        if (charset == StandardCharsets.UTF_16 || charset == StandardCharsets.UTF_16BE) {
+            length &= ~1;
+        }
+        String text = new String(bytes, 1, length, charset);
+        int nul = text.indexOf('\0');
+        return clean(nul >= 0 ? text.substring(0, nul) : text);
+    }
+
+    /**
+     * Removes the zero bytes that unsynchronisation inserts after 0xFF.
+     */
+    private static byte[] resync(byte[] bytes) {
+        int n = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[n++] = bytes[i];
+            if (bytes[i] == (byte) 0xFF && i + 1 < bytes.length && bytes[i + 1] == 0) {
+                i++;
+            }
+        }
+        byte[] out = new byte[n];
+        System.arraycopy(bytes, 0, out, 0, n);
+        return out;
+    }
+
+    private static String latin1(ByteBuffer buffer, int index, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(index + i);
+        }
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        int nul = text.indexOf('\0');
+        return clean(nul >= 0 ? text.substring(0, nul) : text);
+    }
+
+    /**
+     * Trims a value and replaces control characters, so it fits on one line
+     * of the cache file.
+     */
+    private static String clean(String text) {
+        StringBuilder out = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isISOControl(c)) {
+                if (out == null) {
+                    out = new StringBuilder(text);
+                }
+                out.setCharAt(i, ' ');
+            }
+        }
+        return (out == null ? text : out.toString()).trim();
+    }
+
+    private static long syncsafe(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0x7FL) << 21 | (buffer.get(index + 1) & 0x7F) << 14
+                | (buffer.get(index + 2) & 0x7F) << 7 | buffer.get(index + 3) & 0x7F;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int index, String magic) {
+        if (buffer.limit() < index + magic.length()) {
+            return false;
+        }
+        for (int i = 0; i < magic.length(); i++) {
+            if (buffer.get(index + i) != magic.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String fourCC(ByteBuffer buffer, int index, int length) {
+        char[] id = new char[length];
+        for (int i = 0; i < length; i++) {
+            id[i] = (char) (buffer.get(index + i) & 0xFF);
+        }
+        return new String(id);
+    }
+
+    /**
+     * Reads up to <i>size</i> bytes at a position; fewer at the end of the file.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int size, ByteOrder order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(order);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // Fill the buffer or reach the end of the file.
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * A buffered view of a file for walking ID3v2 frames: most tags put their
+     * text frames in the first few kilobytes, which then take a single read.
+     */
+    private static final class Window {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(WINDOW_SIZE).order(ByteOrder.BIG_ENDIAN);
+
+        /**
+         * The file position of the first buffered byte, -1 if nothing is buffered.
+         */
+        private long start = -1;
+
+        private Window(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Returns a buffer positioned at the requested bytes.
+         *
+         * @return the buffer, or <i>null</i> if the file ends first.
+         */
+        private ByteBuffer get(long position, int length) throws IOException {
+            if (start < 0 || position < start || position + length > start + buffer.limit()) {
+                if (length > buffer.capacity()) {
+                    ByteBuffer large = read(channel, position, length, ByteOrder.BIG_ENDIAN);
+                    return large.remaining() < length ? null : large;
+                }
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                    // Fill the window or reach the end of the file.
+                }
+                buffer.flip();
+                start = position;
+            }
+            int offset = (int) (position - start);
+            if (offset + length > buffer.limit()) {
+                return null;
+            }
+            ByteBuffer view = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            view.position(offset).limit(offset + length);
+            return view;
+        }
+    }
+
+    /**
+     * Receives the frames of an ID3v2 tag.
+     */
+    private interface FrameVisitor {
+
+        /**
+         * Visits a frame.
+         *
+         * @param window the view of the file to read the frame with.
+         * @param id     the frame identifier.
+         * @param data   the file position of the frame content.
+         * @param size   the size of the frame content.
+         * @param unsync <i>true</i> if the content is unsynchronised.
+         * @return <i>false</i> to stop walking.
+         * @throws IOException if reading fails.
+         */
+        boolean visit(Window window, String id, long data, long size, boolean unsync) throws IOException;
+    }
+
+    /**
+     * The fields read, with their frame identifiers.
+     */
+    private enum Field {
+        TITLE("TIT2", "TT2", "INAM"),
+        ARTIST("TPE1", "TP1", "IART"),
+        ALBUM("TALB", "TAL", "IPRD"),
+        TRACK("TRCK", "TRK", "IPRT");
+
+        private final String id3v23;
+
+        private final String id3v22;
+
+        private final String info;
+
+        Field(String id3v23, String id3v22, String info) {
+            this.id3v23 = id3v23;
+            this.id3v22 = id3v22;
+            this.info = info;
+        }
+
+        private static Field of(String id) {
+            for (Field field : values()) {
+                if (field.id3v23.equals(id) || field.id3v22.equals(id)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        private static Field ofInfo(String id) {
+            if (id.equals("ITRK")) {
+                return TRACK;
+            }
+            for (Field field : values()) {
+                if (field.info.equals(id)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Collects fields; the first value found for a field wins.
+     */
+    private static final class Builder {
+
+        private final String[] values = new String[Field.values().length];
+
+        private int found;
+
+        private void set(Field field, String value) {
+            if (values[field.ordinal()] == null && !value.isEmpty()) {
+                values[field.ordinal()] = value;
+                found++;
+            }
+        }
+
+        private boolean isComplete() {
+            return found == values.length;
+        }
+
+        private Tags build() {
+            String track = values[Field.TRACK.ordinal()];
+            return new Tags(value(Field.TITLE), value(Field.ARTIST), value(Field.ALBUM),
+                    track == null ? 0 : parseTrack(track));
+        }
+
+        private String value(Field field) {
+            String value = values[field.ordinal()];
+            return value == null ? "" : value;
+        }
+
+        /**
+         * Parses the leading number of {@code 3} or {@code 3/12}.
+         */
+        private static int parseTrack(String track) {
+            int number = 0;
+            for (int i = 0; i < track.length() && i < 9; i++) {
+                char c = track.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                number = number * 10 + (c - '0');
+            }
+            return number;
+        }
+    }
+
+    /**
+     * The tags of a file. Missing text fields are empty.
+     */
+    public static final class Tags {
+
+        private final String title;
+
+        private final String artist;
+
+        private final String album;
+
+        private final int track;
+
+        Tags(String title, String artist, String album, int track) {
+            this.title = title;
+            this.artist = artist;
+            this.album = album;
+            this.track = track;
+        }
+
+        /**
+         * Returns the title.
+         *
+         * @return the title, empty if not tagged.
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * Returns the artist.
+         *
+         * @return the artist, empty if not tagged.
+         */
+        public String getArtist() {
+            return artist;
+        }
+
+        /**
+         * Returns the album.
+         *
+         * @return the album, empty if not tagged.
+         */
+        public String getAlbum() {
+            return album;
+        }
+
+        /**
+         * Returns the track number.
+         *
+         * @return the track number, 0 if not tagged.
+         */
+        public int getTrack() {
+            return track;
+        }
+
+        /**
+         * Joins the fields with tabs; the values hold no control characters.
+         */
+        private static String encode(Tags tags) {
+            return tags.title + "\t" + tags.artist + "\t" + tags.album + "\t" + tags.track;
+        }
+
+        private static Tags decode(String text) {
+            String[] fields = text.split("\t", -1);
+            if (fields.length != 4) {
+                return null;
+            }
+            try {
+                return new Tags(fields[0], fields[1], fields[2], Integer.parseInt(fields[3]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package ir.razplayer.model;
 
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.util.Duration;
 
 import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Stores and retrieves the media item associated data. Contains the information
@@ -17,16 +21,53 @@ import java.net.URI;
 public class MediaItem 
 {	
 	/**
-	 * The observable name value of the media file. TODO: Get title from
-	 * metadata.
+	 * The time stamp of the last created item, keeps <i>dateAdded</i> unique.
+	 */
+	private static final AtomicLong LAST_ADDED = new AtomicLong();
+	
+	/**
+	 * The observable title of the media, from its tags or else its file name.
 	 */
 	private final StringProperty title;
 	
+	/**
+	 * The observable artist from the media tags. Empty if not tagged.
+	 */
+	private final StringProperty artist;
+	
+	/**
+	 * The observable album from the media tags. Empty if not tagged.
+	 */
+	private final StringProperty album;
+	
+	/**
+	 * The observable track number from the media tags. 0 if not tagged.
+	 */
+	private final IntegerProperty trackNumber;
+	
 	/**
 	 * The observable URI object of the media file.
 	 */
 	private ObjectProperty<URI> uri;
 	
+	/**
+	 * The observable media type detected from the file content. <i>null</i>
+	 * if not detected.
+	 */
+	private final ObjectProperty<MediaType> mediaType;
+	
+	/**
+	 * The observable duration of the media. {@link Duration#UNKNOWN} until
+	 * the media has been opened.
+	 */
+	private final ObjectProperty<Duration> duration;
+	
+	/**
+	 * The time the item was created in milliseconds. Unique and increasing,
+	 * so items added together keep their order.
+	 */
+	private final long dateAdded;
+	
 	/**
 	 * Default constructor
 	 */
@@ -44,7 +85,14 @@ public class MediaItem
 	public MediaItem(URI uri) 
 	{	
 		this.title = new SimpleStringProperty("");
+		this.artist = new SimpleStringProperty("");
+		this.album = new SimpleStringProperty("");
+		this.trackNumber = new SimpleIntegerProperty(0);
 		this.uri = new SimpleObjectProperty<URI>(uri);
+		this.mediaType = new SimpleObjectProperty<MediaType>(null);
+		this.duration = new SimpleObjectProperty<Duration>(Duration.UNKNOWN);
+		long now = System.currentTimeMillis();
+		this.dateAdded = LAST_ADDED.updateAndGet(last -> Math.max(last + 1, now));
 	} //end ctor
 	
 	/**
@@ -78,6 +126,99 @@ public class MediaItem
 		return title;
 	}
 	
+	/**
+	 * Returns the artist of the MediaItem.
+	 * 
+	 * @return artist String, empty if not tagged.
+	 */
+	public String getArtist()
+	{
+		return artist.get();
+	}
+	
+	/**
+	 * Sets the artist of the MediaItem.
+	 * 
+	 * @param artist
+	 *            the artist of the media.
+	 */
+	public void setArtist(String artist)
+	{
+		this.artist.set(artist);
+	}
+	
+	/**
+	 * Returns the artist StringProperty of the MediaItem.
+	 * 
+	 * @return artist StringProperty.
+	 */
+	public StringProperty getArtistProperty()
+	{
+		return artist;
+	}
+	
+	/**
+	 * Returns the album of the MediaItem.
+	 * 
+	 * @return album String, empty if not tagged.
+	 */
+	public String getAlbum()
+	{
+		return album.get();
+	}
+	
+	/**
+	 * Sets the album of the MediaItem.
+	 * 
+	 * @param album
+	 *            the album of the media.
+	 */
+	public void setAlbum(String album)
+	{
+		this.album.set(album);
+	}
+	
+	/**
+	 * Returns the album StringProperty of the MediaItem.
+	 * 
+	 * @return album StringProperty.
+	 */
+	public StringProperty getAlbumProperty()
+	{
+		return album;
+	}
+	
+	/**
+	 * Returns the track number of the MediaItem.
+	 * 
+	 * @return trackNumber int, 0 if not tagged.
+	 */
+	public int getTrackNumber()
+	{
+		return trackNumber.get();
+	}
+	
+	/**
+	 * Sets the track number of the MediaItem.
+	 * 
+	 * @param trackNumber
+	 *            the track number of the media.
+	 */
+	public void setTrackNumber(int trackNumber)
+	{
+		this.trackNumber.set(trackNumber);
+	}
+	
+	/**
+	 * Returns the track number IntegerProperty of the MediaItem.
+	 * 
+	 * @return trackNumber IntegerProperty.
+	 */
+	public IntegerProperty getTrackNumberProperty()
+	{
+		return trackNumber;
+	}
+	
 	/**
 	 * Returns the URI of the media file.
 	 * 
@@ -108,4 +249,76 @@ public class MediaItem
 	{
 		return uri;
 	}
+	
+	/**
+	 * Returns the detected media type of the media file.
+	 * 
+	 * @return mediaType MediaType, or <i>null</i> if not detected.
+	 */
+	public MediaType getMediaType()
+	{
+		return mediaType.get();
+	}
+	
+	/**
+	 * Sets the detected media type of the MediaItem.
+	 * 
+	 * @param mediaType
+	 *            the MediaType of the media file.
+	 */
+	public void setMediaType(MediaType mediaType)
+	{
+		this.mediaType.set(mediaType);
+	}
+	
+	/**
+	 * Returns the media type ObjectProperty of the MediaItem.
+	 * 
+	 * @return mediaType {@code ObjectProperty<MediaType>}.
+	 */
+	public ObjectProperty<MediaType> getMediaTypeProperty()
+	{
+		return mediaType;
+	}
+	
+	/**
+	 * Returns the duration of the media.
+	 * 
+	 * @return duration Duration, {@link Duration#UNKNOWN} if not yet known.
+	 */
+	public Duration getDuration()
+	{
+		return duration.get();
+	}
+	
+	/**
+	 * Sets the duration of the MediaItem.
+	 * 
+	 * @param duration
+	 *            the Duration of the media.
+	 */
+	public void setDuration(Duration duration)
+	{
+		this.duration.set(duration);
+	}
+	
+	/**
+	 * Returns the duration ObjectProperty of the MediaItem.
+	 * 
+	 * @return duration {@code ObjectProperty<Duration>}.
+	 */
+	public ObjectProperty<Duration> getDurationProperty()
+	{
+		return duration;
+	}
+	
+	/**
+	 * Returns the time the item was added in milliseconds.
+	 * 
+	 * @return dateAdded long.
+	 */
+	public long getDateAdded()
+	{
+		return dateAdded;
+	}
 }
@@ -0,0 +1,35 @@
+package ir.razplayer.model;
+
+/**
+ * The container format of a media file, as detected from its content.
+ */
+public enum MediaType
+{
+	MP3(true),
+	WAV(true),
+	AIFF(true),
+	MP4_AUDIO(true),
+	MP4(false),
+	FLV(false),
+	UNKNOWN(false);
+
+	/**
+	 * The audio-only flag.
+	 */
+	private final boolean audio;
+
+	MediaType(boolean audio)
+	{
+		this.audio = audio;
+	}
+
+	/**
+	 * Returns whether the format carries audio only.
+	 * 
+	 * @return <i>true</i> for audio formats.
+	 */
+	public boolean isAudio()
+	{
+		return audio;
+	}
+}
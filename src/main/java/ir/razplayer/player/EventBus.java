@@ -0,0 +1,278 @@
+package ir.razplayer.player;
+
+import ir.razplayer.util.Log;
+import javafx.application.Platform;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Delivers {@link PlayerEvent}s from the player to any number of
+ * subscribers, so that consumers such as the control endpoint follow playback
+ * without being called by the view or running on its thread.
+ * <p>
+ * Publishing takes no lock and never waits for a subscriber: it reads the
+ * subscriber list, a copy-on-write array, and hands the event to each
+ * matching subscriber's lock-free queue. Each subscriber is delivered to on
+ * the JavaFX application thread or on a background thread, one event at a
+ * time and in order. A coalescing subscriber only keeps the latest pending
+ * event, so a slow consumer of position ticks skips stale ones instead of
+ * falling behind.
+ * </p>
+ * <p>
+ * The last event of each {@link PlayerEvent.Retained} type is kept, and a
+ * new subscriber first receives the last of these that it subscribed to, so
+ * it starts from the current track, state and position. One-off events such
+ * as errors and seeks are only delivered to those subscribed when they
+ * happen.
+ * Events are numbered as they are published, and a subscriber skips any
+ * event older than the last one of the same type it was given, so a replayed
+ * event that lost the race with a newer publish is never delivered after it.
+ * </p>
+ */
+public final class EventBus {
+
+    /**
+     * Where a subscriber is called.
+     */
+    public enum Delivery {
+        /**
+         * On the JavaFX application thread.
+         */
+        FX_THREAD,
+        /**
+         * On a background thread of the bus.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * The subscribers. Only copied when subscriptions change.
+     */
+    private final CopyOnWriteArrayList<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * The last event of each retained type.
+     */
+    private final Map<Class<?>, Published> latest = new ConcurrentHashMap<>();
+
+    /**
+     * The number of the last published event.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The background delivery threads.
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "razplayer-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Publishes an event. Never blocks; may be called on any thread.
+     *
+     * @param event the event.
+     */
+    public void publish(PlayerEvent event) {
+        Published published = new Published(sequence.incrementAndGet(), event);
+        if (event instanceof PlayerEvent.Retained) {
+            latest.merge(event.getClass(), published, (old, now) -> old.number > now.number ? old : now);
+        }
+        for (Subscription<?> subscription : subscriptions) {
+            subscription.offer(published);
+        }
+    }
+
+    /**
+     * Returns whether anyone receives events of a type. Lets publishers of
+     * frequent events skip creating them.
+     *
+     * @param type the event type.
+     * @return <i>true</i> if there is at least one subscriber.
+     */
+    public boolean hasSubscribers(Class<? extends PlayerEvent> type) {
+        for (Subscription<?> subscription : subscriptions) {
+            if (subscription.type.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Subscribes to the events of a type and its subtypes.
+     *
+     * @param type       the event type; {@code PlayerEvent.class} for all events.
+     * @param delivery   the thread the subscriber is called on.
+     * @param coalesce   <i>true</i> to only deliver the latest of the events
+     *                   published while the subscriber was busy.
+     * @param subscriber receives the events.
+     * @param <E>        the event type.
+     * @return the subscription, to cancel it.
+     */
+    public <E extends PlayerEvent> Subscription<E> subscribe(Class<E> type, Delivery delivery, boolean coalesce,
+                                                             Consumer<? super E> subscriber) {
+        Subscription<E> subscription = new Subscription<>(this, type, delivery, coalesce, subscriber);
+        subscriptions.add(subscription);
+        // Publishes racing with the subscription may reach it first; the
+        // subscription drops the replayed event if it is older.
+        for (Published published : latest.values()) {
+            subscription.offer(published);
+        }
+        return subscription;
+    }
+
+    /**
+     * Cancels every subscription and stops the delivery threads.
+     */
+    public void close() {
+        subscriptions.clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * An event and its publish number.
+     */
+    private static final class Published {
+
+        private final long number;
+
+        private final PlayerEvent event;
+
+        private Published(long number, PlayerEvent event) {
+            this.number = number;
+            this.event = event;
+        }
+    }
+
+    /**
+     * A subscriber and its pending events.
+     *
+     * @param <E> the event type.
+     */
+    public static final class Subscription<E extends PlayerEvent> {
+
+        private final EventBus bus;
+
+        private final Class<E> type;
+
+        private final Delivery delivery;
+
+        private final Consumer<? super E> subscriber;
+
+        /**
+         * The pending events, <i>null</i> if coalescing.
+         */
+        private final Queue<Published> queue;
+
+        /**
+         * The latest pending event, if coalescing.
+         */
+        private final AtomicReference<Published> pending = new AtomicReference<>();
+
+        /**
+         * The number of the last event delivered of each type. Only touched
+         * by the drain, which runs one at a time.
+         */
+        private final Map<Class<?>, Long> delivered = new HashMap<>();
+
+        /**
+         * Set while a drain is scheduled or running, so that events are
+         * delivered one at a time.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile boolean cancelled;
+
+        private Subscription(EventBus bus, Class<E> type, Delivery delivery, boolean coalesce,
+                             Consumer<? super E> subscriber) {
+            this.bus = bus;
+            this.type = type;
+            this.delivery = delivery;
+            this.subscriber = subscriber;
+            this.queue = coalesce ? null : new ConcurrentLinkedQueue<>();
+        }
+
+        /**
+         * Stops delivery. Events already being delivered still arrive.
+         */
+        public void cancel() {
+            cancelled = true;
+            bus.subscriptions.remove(this);
+        }
+
+        private void offer(Published published) {
+            if (!type.isInstance(published.event)) {
+                return;
+            }
+            if (queue != null) {
+                queue.offer(published);
+            } else {
+                pending.accumulateAndGet(published,
+                        (old, now) -> old != null && old.number > now.number ? old : now);
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                if (delivery == Delivery.FX_THREAD) {
+                    Platform.runLater(this::drain);
+                } else {
+                    bus.executor.execute(this::drain);
+                }
+            }
+        }
+
+        private Published poll() {
+            return queue != null ? queue.poll() : pending.getAndSet(null);
+        }
+
+        private void drain() {
+            while (true) {
+                Published published = poll();
+                if (published == null) {
+                    scheduled.set(false);
+                    // An event offered after the poll but before the reset
+                    // found the flag still set; take it over.
+                    if (isEmpty() || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (cancelled) {
+                    continue;
+                }
+                Long last = delivered.get(published.event.getClass());
+                if (last != null && last >= published.number) {
+                    // A replay, or a publish from another thread, that was
+                    // overtaken by a newer event of its type.
+                    continue;
+                }
+                delivered.put(published.event.getClass(), published.number);
+                E event = type.cast(published.event);
+                try {
+                    subscriber.accept(event);
+                } catch (RuntimeException e) {
+                    Log.warn("Event subscriber failed on " + event.getClass().getSimpleName(), e);
+                }
+            }
+        }
+
+        private boolean isEmpty() {
+            return queue != null ? queue.isEmpty() : pending.get() == null;
+        }
+    }
+}
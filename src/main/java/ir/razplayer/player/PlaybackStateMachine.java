@@ -0,0 +1,218 @@
+package ir.razplayer.player;
+
+/**
+ * The playback state of the player view as an explicit state machine. Every
+ * input returns the one {@link Action} the player has to take, and only
+ * {@link Action#OPEN} builds a new {@code MediaPlayer}; pausing, resuming,
+ * reselecting the playing item and looping a single item reuse the player
+ * there is.
+ * <pre>
+ *            select / play           opened
+ *   STOPPED ---------------&gt; OPENING -------&gt; PLAYING &lt;--&gt; PAUSED
+ *      ^                       |   ^             |   pause / resume
+ *      +------- failed --------+   +-- ended ----+   (ended on the same item: REWIND)
+ * </pre>
+ * A pause while opening is remembered, and the track starts paused. Only
+ * used on the JavaFX application thread.
+ *
+ * @param <T> the type of the playlist items.
+ */
+public final class PlaybackStateMachine<T> {
+
+    /**
+     * The playback states.
+     */
+    public enum State {
+        /**
+         * Nothing selected for playback, or the last open failed.
+         */
+        STOPPED,
+        /**
+         * A player is being built for the item.
+         */
+        OPENING,
+        /**
+         * The item's player is playing.
+         */
+        PLAYING,
+        /**
+         * The item's player is paused.
+         */
+        PAUSED
+    }
+
+    /**
+     * What the player has to do after an input.
+     */
+    public enum Action {
+        /**
+         * Nothing.
+         */
+        NONE,
+        /**
+         * Dispose the current player and open the item in a new one.
+         */
+        OPEN,
+        /**
+         * Start or resume the current player.
+         */
+        PLAY,
+        /**
+         * Pause the current player.
+         */
+        PAUSE,
+        /**
+         * Seek the current player back to the start and play it.
+         */
+        REWIND
+    }
+
+    private State state = State.STOPPED;
+
+    /**
+     * The item opened or playing. <i>null</i> before the first selection.
+     */
+    private T item;
+
+    /**
+     * Set when paused while opening, so the item starts paused.
+     */
+    private boolean startPaused;
+
+    /**
+     * The number of {@link Action#OPEN} actions returned.
+     */
+    private int opens;
+
+    /**
+     * Selects an item for playback. Selecting the item already opening or
+     * playing changes nothing.
+     *
+     * @param next the item.
+     * @return {@link Action#OPEN}, or {@link Action#NONE} if it is the current item.
+     */
+    public Action select(T next) {
+        if (next == item && state != State.STOPPED) {
+            return Action.NONE;
+        }
+        item = next;
+        state = State.OPENING;
+        startPaused = false;
+        opens++;
+        return Action.OPEN;
+    }
+
+    /**
+     * Pauses playback; while opening, makes the item start paused.
+     *
+     * @return {@link Action#PAUSE} if a playing player has to pause.
+     */
+    public Action pause() {
+        if (state == State.PLAYING) {
+            state = State.PAUSED;
+            return Action.PAUSE;
+        }
+        if (state == State.OPENING) {
+            startPaused = true;
+        }
+        return Action.NONE;
+    }
+
+    /**
+     * Resumes paused playback; while opening, makes the item start playing.
+     *
+     * @return {@link Action#PLAY} if a paused player has to play.
+     */
+    public Action resume() {
+        if (state == State.PAUSED) {
+            state = State.PLAYING;
+            return Action.PLAY;
+        }
+        if (state == State.OPENING) {
+            startPaused = false;
+        }
+        return Action.NONE;
+    }
+
+    /**
+     * Reports that the player of the opening item is ready.
+     *
+     * @return {@link Action#PLAY}, or {@link Action#NONE} if it starts paused.
+     */
+    public Action opened() {
+        if (state != State.OPENING) {
+            return Action.NONE;
+        }
+        state = startPaused ? State.PAUSED : State.PLAYING;
+        return startPaused ? Action.NONE : Action.PLAY;
+    }
+
+    /**
+     * Reports that the opening item could not be opened.
+     */
+    public void failed() {
+        state = State.STOPPED;
+        startPaused = false;
+    }
+
+    /**
+     * Reports that the playing item reached its end and moves on.
+     *
+     * @param next the item to play next.
+     * @return {@link Action#REWIND} if the next item is the one that ended,
+     *         as when a single item loops, {@link Action#OPEN} otherwise.
+     */
+    public Action ended(T next) {
+        if (next == item && (state == State.PLAYING || state == State.PAUSED)) {
+            state = State.PLAYING;
+            return Action.REWIND;
+        }
+        state = State.STOPPED;
+        return select(next);
+    }
+
+    /**
+     * Returns the state.
+     *
+     * @return the current state.
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the item opening or playing.
+     *
+     * @return the item, <i>null</i> before the first selection.
+     */
+    public T getItem() {
+        return item;
+    }
+
+    /**
+     * Returns whether playback was started, including while opening.
+     *
+     * @return <i>true</i> unless stopped.
+     */
+    public boolean isStarted() {
+        return state != State.STOPPED;
+    }
+
+    /**
+     * Returns whether playback is paused or will start paused.
+     *
+     * @return <i>true</i> if paused.
+     */
+    public boolean isPaused() {
+        return state == State.PAUSED || state == State.OPENING && startPaused;
+    }
+
+    /**
+     * Returns how many times a player had to be built.
+     *
+     * @return the number of {@link Action#OPEN} actions.
+     */
+    public int getOpenCount() {
+        return opens;
+    }
+}
@@ -0,0 +1,225 @@
+package ir.razplayer.player;
+
+import java.net.URI;
+
+/**
+ * An event published on the {@link EventBus} by the player. Events are
+ * immutable, so they can be handed to any thread.
+ */
+public abstract class PlayerEvent {
+
+    /**
+     * The playback states.
+     */
+    public enum State {
+        STOPPED, PLAYING, PAUSED
+    }
+
+    /**
+     * Marks events that describe where playback is rather than something
+     * that happened once. The bus keeps the last one of each such type and
+     * gives it to new subscribers.
+     */
+    public interface Retained {
+    }
+
+    /**
+     * The time the event happened, from {@link System#nanoTime()}.
+     */
+    private final long time = System.nanoTime();
+
+    PlayerEvent() {
+    }
+
+    /**
+     * Returns when the event happened.
+     *
+     * @return the {@link System#nanoTime()} at creation.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * A new track started playing.
+     */
+    public static final class TrackChanged extends PlayerEvent implements Retained {
+
+        private final int index;
+
+        private final URI uri;
+
+        /**
+         * Creates the event.
+         *
+         * @param index the playlist index of the track.
+         * @param uri   the media URI.
+         */
+        public TrackChanged(int index, URI uri) {
+            this.index = index;
+            this.uri = uri;
+        }
+
+        /**
+         * Returns the playlist index of the track.
+         *
+         * @return the index.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the media URI of the track.
+         *
+         * @return the URI.
+         */
+        public URI getURI() {
+            return uri;
+        }
+    }
+
+    /**
+     * Playback started, paused, resumed or stopped.
+     */
+    public static final class StateChanged extends PlayerEvent implements Retained {
+
+        private final State state;
+
+        /**
+         * Creates the event.
+         *
+         * @param state the new state.
+         */
+        public StateChanged(State state) {
+            this.state = state;
+        }
+
+        /**
+         * Returns the new state.
+         *
+         * @return the state.
+         */
+        public State getState() {
+            return state;
+        }
+    }
+
+    /**
+     * The playback position moved on. Published at the rate the player
+     * reports its time, so subscribers normally coalesce it.
+     */
+    public static final class PositionTick extends PlayerEvent implements Retained {
+
+        private final double seconds;
+
+        private final double total;
+
+        /**
+         * Creates the event.
+         *
+         * @param seconds the position in seconds.
+         * @param total   the media duration in seconds.
+         */
+        public PositionTick(double seconds, double total) {
+            this.seconds = seconds;
+            this.total = total;
+        }
+
+        /**
+         * Returns the position.
+         *
+         * @return the position in seconds.
+         */
+        public double getSeconds() {
+            return seconds;
+        }
+
+        /**
+         * Returns the media duration.
+         *
+         * @return the duration in seconds.
+         */
+        public double getTotal() {
+            return total;
+        }
+    }
+
+    /**
+     * The position was changed by a seek.
+     */
+    public static final class Seeked extends PlayerEvent {
+
+        private final double from;
+
+        private final double to;
+
+        /**
+         * Creates the event.
+         *
+         * @param from the position before the seek in seconds.
+         * @param to   the requested position in seconds.
+         */
+        public Seeked(double from, double to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Returns the position before the seek.
+         *
+         * @return the position in seconds.
+         */
+        public double getFrom() {
+            return from;
+        }
+
+        /**
+         * Returns the requested position.
+         *
+         * @return the position in seconds.
+         */
+        public double getTo() {
+            return to;
+        }
+    }
+
+    /**
+     * A track could not be opened or failed while playing.
+     */
+    public static final class Error extends PlayerEvent {
+
+        private final URI uri;
+
+        private final Throwable cause;
+
+        /**
+         * Creates the event.
+         *
+         * @param uri   the media URI.
+         * @param cause the failure.
+         */
+        public Error(URI uri, Throwable cause) {
+            this.uri = uri;
+            this.cause = cause;
+        }
+
+        /**
+         * Returns the media URI of the failed track.
+         *
+         * @return the URI.
+         */
+        public URI getURI() {
+            return uri;
+        }
+
+        /**
+         * Returns the failure.
+         *
+         * @return the cause.
+         */
+        public Throwable getCause() {
+            return cause;
+        }
+    }
+}
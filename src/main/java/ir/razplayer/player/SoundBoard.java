@@ -0,0 +1,289 @@
+package ir.razplayer.player;
+
+import ir.razplayer.model.MediaItem;
+import ir.razplayer.util.Log;
+import javafx.application.Platform;
+import javafx.scene.media.AudioClip;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Plays short playlist items from pads with minimal latency. The items are
+ * decoded into {@link AudioClip}s ahead of time, so a trigger skips building a
+ * {@code Media} and a {@code MediaPlayer} and waiting for them to be ready.
+ * Every trigger plays a new instance, so retriggering a pad overlaps with the
+ * sound still playing. The media engine still builds a native player for
+ * each instance, which is most of what a trigger costs.
+ * <p>
+ * Decoded clips are kept in an LRU cache bounded by an estimate of their
+ * decoded size, {@value #BYTES_PER_SECOND} bytes per second; the bound in
+ * MiB is set by the system property {@code razplayer.soundboard.mb}
+ * (default 64). Only items of a known duration up to
+ * {@link #MAX_CLIP_SECONDS} become pads.
+ * </p>
+ */
+public final class SoundBoard {
+
+    /**
+     * The number of pads, triggered by the keys 1 to 9 and 0.
+     */
+    public static final int PADS = 10;
+
+    /**
+     * The longest item that becomes a pad, in seconds.
+     */
+    public static final double MAX_CLIP_SECONDS = 10;
+
+    /**
+     * The estimated decoded size of a second of audio: 16-bit stereo at
+     * 44.1 kHz.
+     */
+    private static final long BYTES_PER_SECOND = 44100 * 2 * 2;
+
+    /**
+     * The highest playback rate of an {@link AudioClip}.
+     */
+    private static final double MAX_RATE = 8;
+
+    /**
+     * Resolves item URIs to the sources clips are loaded from.
+     */
+    private final Function<URI, String> sources;
+
+    /**
+     * The most bytes of decoded clips kept.
+     */
+    private final long budget = Long.getLong("razplayer.soundboard.mb", 64L) << 20;
+
+    /**
+     * The decoded clips by URI, least recently assigned first. Only touched
+     * on the loader thread.
+     */
+    private final Map<URI, AudioClip> clips = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The estimated size of each cached clip. Only touched on the loader thread.
+     */
+    private final Map<URI, Long> sizes = new LinkedHashMap<>();
+
+    /**
+     * The estimated size of all cached clips. Only touched on the loader thread.
+     */
+    private long used;
+
+    /**
+     * The clip and item of each pad, <i>null</i> if unassigned. Only touched
+     * on the JavaFX application thread.
+     */
+    private final AudioClip[] pads = new AudioClip[PADS];
+
+    private final MediaItem[] padItems = new MediaItem[PADS];
+
+    /**
+     * Whether a clip was played to warm up the media engine. Only touched on
+     * the loader thread.
+     */
+    private boolean warmedUp;
+
+    /**
+     * The number of completed loads. Only touched on the JavaFX application thread.
+     */
+    private int loads;
+
+    /**
+     * The loader thread. Decoding is sequential so that the budget holds.
+     */
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "razplayer-soundboard");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates an empty soundboard.
+     *
+     * @param sources resolves an item URI to the source to load; called on
+     *                the loader thread.
+     */
+    public SoundBoard(Function<URI, String> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * Assigns the first short items of a playlist to the pads, decoding
+     * those not in the cache in the background. Must be called on the
+     * JavaFX application thread.
+     *
+     * @param playList the playlist.
+     * @return the number of pads assigned, completed on the JavaFX
+     *         application thread once their clips are loaded.
+     */
+    public CompletableFuture<Integer> load(List<MediaItem> playList) {
+        List<MediaItem> items = new ArrayList<>();
+        List<URI> uris = new ArrayList<>();
+        List<Double> lengths = new ArrayList<>();
+        for (MediaItem item : playList) {
+            double seconds = item.getDuration().toSeconds();
+            if (!item.getDuration().isUnknown() && seconds > 0 && seconds <= MAX_CLIP_SECONDS) {
+                items.add(item);
+                uris.add(item.getURI());
+                lengths.add(seconds);
+                if (items.size() == PADS) {
+                    break;
+                }
+            }
+        }
+        CompletableFuture<Integer> loaded = new CompletableFuture<>();
+        loader.execute(() -> {
+            AudioClip[] assigned = new AudioClip[PADS];
+            Set<URI> wanted = new HashSet<>(uris);
+            for (int i = 0; i < uris.size(); i++) {
+                assigned[i] = clip(uris.get(i), lengths.get(i), wanted);
+            }
+            Platform.runLater(() -> {
+                int count = 0;
+                for (int i = 0; i < PADS; i++) {
+                    pads[i] = assigned[i];
+                    padItems[i] = assigned[i] == null ? null : items.get(i);
+                    count += assigned[i] == null ? 0 : 1;
+                }
+                loads++;
+                loaded.complete(count);
+            });
+        });
+        return loaded;
+    }
+
+    /**
+     * Plays a pad. Does nothing if the pad is unassigned. Must be called on
+     * the JavaFX application thread.
+     *
+     * @param pad    the pad index.
+     * @param volume the volume between 0 and 1.
+     * @return <i>true</i> if a sound was started.
+     */
+    public boolean trigger(int pad, double volume) {
+        AudioClip clip = pad >= 0 && pad < PADS ? pads[pad] : null;
+        if (clip == null) {
+            return false;
+        }
+        clip.play(volume);
+        return true;
+    }
+
+    /**
+     * Returns the item of a pad.
+     *
+     * @param pad the pad index.
+     * @return the item, or <i>null</i> if the pad is unassigned.
+     */
+    public MediaItem getItem(int pad) {
+        return padItems[pad];
+    }
+
+    /**
+     * Returns how many loads have assigned their pads.
+     *
+     * @return the number of completed {@link #load(List)} calls.
+     */
+    public int getLoadCount() {
+        return loads;
+    }
+
+    /**
+     * Stops every sound of every pad.
+     */
+    public void stopAll() {
+        for (AudioClip clip : pads) {
+            if (clip != null) {
+                clip.stop();
+            }
+        }
+    }
+
+    /**
+     * Stops the sounds and the loader thread.
+     */
+    public void close() {
+        stopAll();
+        loader.shutdownNow();
+    }
+
+    /**
+     * Returns the clip of an item, decoding it if it is not cached and
+     * making room by evicting clips not wanted now.
+     *
+     * @return the clip, or <i>null</i> if it does not fit or cannot be loaded.
+     */
+    private AudioClip clip(URI uri, double seconds, Set<URI> wanted) {
+        AudioClip clip = clips.get(uri);
+        if (clip != null) {
+            return clip;
+        }
+        long size = (long) Math.ceil(seconds * BYTES_PER_SECOND);
+        Iterator<Map.Entry<URI, AudioClip>> eldest = clips.entrySet().iterator();
+        while (used + size > budget && eldest.hasNext()) {
+            Map.Entry<URI, AudioClip> entry = eldest.next();
+            if (!wanted.contains(entry.getKey())) {
+                entry.getValue().stop();
+                used -= sizes.remove(entry.getKey());
+                eldest.remove();
+            }
+        }
+        if (used + size > budget) {
+            Log.info("Soundboard budget full, skipping " + uri);
+            return null;
+        }
+        try {
+            clip = new AudioClip(sources.apply(uri));
+        } catch (RuntimeException e) {
+            Log.warn("Could not load clip " + uri, e);
+            return null;
+        }
+        if (!warmedUp) {
+            warmUp(clip, seconds);
+            warmedUp = true;
+        }
+        clips.put(uri, clip);
+        sizes.put(uri, size);
+        used += size;
+        return clip;
+    }
+
+    /**
+     * Plays a clip silently at the highest rate and waits for it to end.
+     * Every trigger builds a new native player, but the first one in the
+     * process also loads the media engine and opens the audio device, which
+     * costs several times a later trigger. The clip is left to end instead of
+     * being stopped: the engine disposes stopped players on the thread that
+     * starts new ones, so a stopped warm-up would delay the first trigger.
+     */
+    private static void warmUp(AudioClip clip, double seconds) {
+        clip.play(0, 0, MAX_RATE, 0, 0);
+        long deadline = System.nanoTime() + (long) ((seconds / MAX_RATE + 1) * 1e9);
+        try {
+            boolean started = false;
+            while (System.nanoTime() < deadline) {
+                boolean playing = clip.isPlaying();
+                if (started && !playing) {
+                    return;
+                }
+                started |= playing;
+                Thread.sleep(5);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
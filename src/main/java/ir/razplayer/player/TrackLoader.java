@@ -0,0 +1,317 @@
+package ir.razplayer.player;
+
+import ir.razplayer.subtitle.CueIndex;
+import ir.razplayer.subtitle.SubtitleParser;
+import ir.razplayer.util.Log;
+import javafx.application.Platform;
+import javafx.scene.media.Media;
+import javafx.scene.media.MediaPlayer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Opens tracks off the JavaFX application thread. Resolving the source,
+ * reading the start of local files into the page cache and constructing the
+ * {@link Media} and {@link MediaPlayer} all happen on a background thread,
+ * so a slow disk, network mount or HTTP server never freezes the UI. Only
+ * one load is pending at a time: starting a new one cancels the previous.
+ * Sidecar subtitles are loaded on the same threads.
+ */
+public final class TrackLoader {
+
+    /**
+     * The number of bytes read ahead from local files before opening them.
+     */
+    private static final int PREBUFFER_SIZE = 512 * 1024;
+
+    /**
+     * Resolves item URIs to the source strings media is opened with.
+     */
+    private final Function<URI, String> sources;
+
+    /**
+     * The loader threads. Cached, so that a load stuck in a blocking call
+     * does not hold up the next one.
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "razplayer-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The pending load, <i>null</i> if none. Only touched on the JavaFX
+     * application thread.
+     */
+    private Load pending;
+
+    /**
+     * The number of players constructed, including those of cancelled loads.
+     */
+    private final AtomicInteger constructed = new AtomicInteger();
+
+    /**
+     * The number of constructed players not yet disposed.
+     */
+    private final AtomicInteger live = new AtomicInteger();
+
+    /**
+     * Creates a loader.
+     *
+     * @param sources resolves an item URI to the source to open; called on
+     *                loader threads.
+     */
+    public TrackLoader(Function<URI, String> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * Starts opening a track and cancels the pending load, if any. Must be
+     * called on the JavaFX application thread.
+     *
+     * @param uri the URI of the media item.
+     * @return the player once it is ready, completed on the JavaFX
+     *         application thread. Completed with a
+     *         {@link java.util.concurrent.CancellationException} if
+     *         superseded or cancelled.
+     */
+    public CompletableFuture<MediaPlayer> load(URI uri) {
+        cancel();
+        Load load = new Load();
+        pending = load;
+        load.task = executor.submit(() -> open(load, uri));
+        return load.result;
+    }
+
+    /**
+     * Finds and parses the sidecar subtitles of a local track in the
+     * background.
+     *
+     * @param uri the URI of the media item.
+     * @return the cues, or <i>null</i> if there are none, completed on the
+     *         JavaFX application thread.
+     */
+    public CompletableFuture<CueIndex> loadSubtitles(URI uri) {
+        CompletableFuture<CueIndex> result = new CompletableFuture<>();
+        if (!"file".equalsIgnoreCase(uri.getScheme())) {
+            result.complete(null);
+            return result;
+        }
+        executor.execute(() -> {
+            CueIndex cues = null;
+            Path subtitles = null;
+            try {
+                subtitles = SubtitleParser.findSidecar(Paths.get(uri));
+                if (subtitles != null) {
+                    cues = SubtitleParser.load(subtitles);
+                    Log.info("Loaded " + cues.size() + " subtitle cues from " + subtitles);
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Could not read subtitles " + subtitles, e);
+            }
+            CueIndex loaded = cues;
+            Platform.runLater(() -> result.complete(loaded));
+        });
+        return result;
+    }
+
+    /**
+     * Runs a lookup for the track being opened on the loader threads, so
+     * that it neither blocks the JavaFX application thread nor competes for
+     * the common pool.
+     *
+     * @param lookup the lookup to run.
+     * @param <T>    the type of the result.
+     * @return the result, completed on the JavaFX application thread, or
+     *         completed exceptionally if the lookup failed.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> lookup) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                T value = lookup.get();
+                Platform.runLater(() -> result.complete(value));
+            } catch (RuntimeException e) {
+                Platform.runLater(() -> result.completeExceptionally(e));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Cancels the pending load. A player opened for it is disposed. Must be
+     * called on the JavaFX application thread.
+     */
+    public void cancel() {
+        if (pending != null) {
+            pending.cancel();
+            pending = null;
+        }
+    }
+
+    /**
+     * Returns how many players this loader has constructed, to check that
+     * playback only opens a track when it has to.
+     *
+     * @return the number of {@link MediaPlayer} constructions.
+     */
+    public int getConstructedCount() {
+        return constructed.get();
+    }
+
+    /**
+     * Returns how many players this loader constructed that are not yet
+     * disposed.
+     *
+     * @return the number of live players.
+     */
+    public int getLiveCount() {
+        return live.get();
+    }
+
+    /**
+     * Cancels the pending load and stops the loader threads.
+     */
+    public void close() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void open(Load load, URI uri) {
+        try {
+            String source = sources.apply(uri);
+            prebuffer(uri);
+            if (load.cancelled) {
+                return;
+            }
+            MediaPlayer player = new MediaPlayer(new Media(source));
+            constructed.incrementAndGet();
+            live.incrementAndGet();
+            player.statusProperty().addListener((observable, oldStatus, status) -> {
+                if (status == MediaPlayer.Status.DISPOSED) {
+                    live.decrementAndGet();
+                }
+            });
+            Platform.runLater(() -> load.opened(player));
+        } catch (RuntimeException e) {
+            Platform.runLater(() -> load.fail(e));
+        }
+    }
+
+    /**
+     * Reads the start of a local file so that the player's first reads do
+     * not wait on the disk. Stops early when the load is cancelled, since
+     * the channel is closed on interrupt.
+     */
+    private static void prebuffer(URI uri) {
+        if (!"file".equalsIgnoreCase(uri.getScheme())) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(uri), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long position = 0;
+            while (position < PREBUFFER_SIZE) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            // Opening the media reports unreadable files.
+        }
+    }
+
+    /**
+     * One track being opened. Apart from <i>cancelled</i>, only touched on
+     * the JavaFX application thread.
+     */
+    private final class Load {
+
+        private final CompletableFuture<MediaPlayer> result = new CompletableFuture<>();
+
+        private Future<?> task;
+
+        private MediaPlayer player;
+
+        private volatile boolean cancelled;
+
+        private void opened(MediaPlayer player) {
+            if (cancelled) {
+                player.dispose();
+                return;
+            }
+            this.player = player;
+            player.setOnReady(this::ready);
+            player.setOnError(() -> fail(error(player)));
+            // The player may have got ready or failed on the loader thread,
+            // before the handlers were installed.
+            if (player.getError() != null || player.getMedia().getError() != null
+                    || player.getStatus() == MediaPlayer.Status.HALTED) {
+                fail(error(player));
+            } else if (player.getStatus() == MediaPlayer.Status.READY) {
+                ready();
+            }
+        }
+
+        private Throwable error(MediaPlayer player) {
+            if (player.getError() != null) {
+                return player.getError();
+            }
+            if (player.getMedia().getError() != null) {
+                return player.getMedia().getError();
+            }
+            return new IllegalStateException("Player halted");
+        }
+
+        private void ready() {
+            if (cancelled || result.isDone()) {
+                return;
+            }
+            player.setOnReady(null);
+            player.setOnError(null);
+            if (pending == this) {
+                pending = null;
+            }
+            result.complete(player);
+        }
+
+        private void fail(Throwable error) {
+            if (result.isDone()) {
+                return;
+            }
+            if (player != null) {
+                player.dispose();
+            }
+            if (!cancelled) {
+                if (pending == this) {
+                    pending = null;
+                }
+                result.completeExceptionally(error);
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            task.cancel(true);
+            if (player != null && !result.isDone()) {
+                player.dispose();
+            }
+            result.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package ir.razplayer.remote;
+
+import ir.razplayer.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A local control endpoint on the loopback interface. Accepts one text
+ * command per line and streams player events to subscribed clients.
+ * <p>
+ * The port and an access token are published in {@code ~/.razplayer/control},
+ * readable by the owner only, the way {@link SingleInstance} publishes its
+ * hand-off port. The first line of every connection must be
+ * {@code auth <token>}; any other first line is answered with
+ * {@code ERR unauthorized} and the connection is closed.
+ * </p>
+ * <p>
+ * Commands: {@code play}, {@code pause}, {@code seek <seconds>},
+ * {@code load <path>}, {@code subscribe} and {@code quit}. Every command is
+ * answered with {@code OK} or {@code ERR <reason>}. After {@code subscribe}
+ * the connection only receives events: {@code state <STATE>},
+ * {@code track <index> <uri>} and {@code position <seconds> <total>}.
+ * </p>
+ * <p>
+ * Publishing never blocks the caller. Every subscriber has a bounded queue
+ * for state and track events and a single slot for the latest position, so
+ * position events are coalesced for slow clients. A client that lets its
+ * event queue overflow is disconnected.
+ * </p>
+ */
+public final class ControlServer {
+
+    /**
+     * The receiver of control commands. Called on connection threads.
+     */
+    public interface Controls {
+
+        void play();
+
+        void pause();
+
+        void seek(double seconds);
+
+        void load(String path);
+    }
+
+    /**
+     * The capacity of each subscriber's state and track event queue.
+     */
+    private static final int EVENT_QUEUE_SIZE = 64;
+
+    /**
+     * The longest time a subscriber writer sleeps before checking its socket.
+     */
+    private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * The file holding the port and token of the endpoint.
+     */
+    private static final Path CONTROL_FILE = Paths.get(System.getProperty("user.home"), ".razplayer", "control");
+
+    /**
+     * The read timeout of the authentication line in milliseconds.
+     */
+    private static final int AUTH_TIMEOUT = 5000;
+
+    /**
+     * The listening socket.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * The command receiver.
+     */
+    private final Controls controls;
+
+    /**
+     * The secret a client must present before its commands are accepted.
+     */
+    private final String token = TokenFile.newToken();
+
+    /**
+     * The connection threads, one per client.
+     */
+    private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "razplayer-control");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The currently subscribed clients.
+     */
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * The last published state, replayed to new subscribers.
+     */
+    private volatile String lastState = "state STOPPED";
+
+    /**
+     * The last published track, replayed to new subscribers.
+     */
+    private volatile String lastTrack;
+
+    /**
+     * Opens the control endpoint on the loopback interface and publishes its
+     * port and token.
+     *
+     * @param port     the TCP port, or 0 for any free port.
+     * @param controls the command receiver.
+     * @throws IOException if the port cannot be bound or the control file
+     *                     cannot be written.
+     */
+    public ControlServer(int port, Controls controls) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.controls = controls;
+        try {
+            TokenFile.publish(CONTROL_FILE, serverSocket.getLocalPort(), token);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+
+        Thread thread = new Thread(this::acceptLoop, "razplayer-control-accept");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the bound port.
+     *
+     * @return the local port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns whether any client is subscribed. Lets callers skip building
+     * events nobody receives.
+     *
+     * @return <i>true</i> if there is at least one subscriber.
+     */
+    public boolean hasSubscribers() {
+        return !subscribers.isEmpty();
+    }
+
+    /**
+     * Publishes a playback state change.
+     *
+     * @param state the new state, e.g. {@code PLAYING}.
+     */
+    public void publishState(String state) {
+        lastState = "state " + state;
+        publish(lastState);
+    }
+
+    /**
+     * Publishes a track change.
+     *
+     * @param index the playlist index.
+     * @param uri   the media URI.
+     */
+    public void publishTrack(int index, String uri) {
+        lastTrack = "track " + index + " " + uri;
+        publish(lastTrack);
+    }
+
+    /**
+     * Publishes the playback position. Older unsent positions are replaced.
+     *
+     * @param seconds the current position in seconds.
+     * @param total   the media duration in seconds.
+     */
+    public void publishPosition(double seconds, double total) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        String event = String.format(Locale.ROOT, "position %.3f %.3f", seconds, total);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.position.set(event);
+            LockSupport.unpark(subscriber.writer);
+        }
+    }
+
+    /**
+     * Closes the endpoint, removes the control file and disconnects every
+     * client.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+        TokenFile.remove(CONTROL_FILE, serverSocket.getLocalPort());
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        connections.shutdownNow();
+    }
+
+    private void publish(String event) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.events.offer(event)) {
+                // Too slow to keep up with state changes. Drop the client.
+                subscriber.close();
+            }
+            LockSupport.unpark(subscriber.writer);
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    Log.warn("Control connection failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Authenticates the client, then reads and runs commands until it quits
+     * or subscribes.
+     */
+    private void serve(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            socket.setSoTimeout(AUTH_TIMEOUT);
+            String line = in.readLine();
+            if (line == null || !line.trim().equals("auth " + token)) {
+                reply(out, "ERR unauthorized");
+                return;
+            }
+            socket.setSoTimeout(0);
+            reply(out, "OK");
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                String command = (space == -1 ? line : line.substring(0, space)).toLowerCase(Locale.ROOT);
+                String argument = space == -1 ? "" : line.substring(space + 1).trim();
+
+                if (command.equals("subscribe")) {
+                    reply(out, "OK");
+                    new Subscriber(socket, out).run();
+                    return;
+                } else if (command.equals("quit")) {
+                    reply(out, "OK");
+                    break;
+                }
+                reply(out, execute(command, argument));
+            }
+        } catch (IOException e) {
+            // Client went away.
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed.
+            }
+        }
+    }
+
+    private String execute(String command, String argument) {
+        try {
+            switch (command) {
+                case "play":
+                    controls.play();
+                    return "OK";
+                case "pause":
+                    controls.pause();
+                    return "OK";
+                case "seek":
+                    double seconds = Double.parseDouble(argument);
+                    if (!Double.isFinite(seconds) || seconds < 0) {
+                        return "ERR bad number " + argument;
+                    }
+                    controls.seek(seconds);
+                    return "OK";
+                case "load":
+                    if (argument.isEmpty()) {
+                        return "ERR missing path";
+                    }
+                    controls.load(argument);
+                    return "OK";
+                default:
+                    return "ERR unknown command " + command;
+            }
+        } catch (NumberFormatException e) {
+            return "ERR bad number " + argument;
+        }
+    }
+
+    private static void reply(BufferedWriter out, String message) throws IOException {
+        out.write(message);
+        out.newLine();
+        out.flush();
+    }
+
+    /**
+     * A subscribed client and its pending events. Its connection thread
+     * becomes the writer.
+     */
+    private final class Subscriber {
+
+        private final Socket socket;
+
+        private final BufferedWriter out;
+
+        private final Queue<String> events = new ArrayBlockingQueue<>(EVENT_QUEUE_SIZE);
+
+        private final AtomicReference<String> position = new AtomicReference<>();
+
+        private final Thread writer = Thread.currentThread();
+
+        private Subscriber(Socket socket, BufferedWriter out) {
+            this.socket = socket;
+            this.out = out;
+        }
+
+        private void run() throws IOException {
+            if (lastTrack != null) {
+                events.offer(lastTrack);
+            }
+            events.offer(lastState);
+            subscribers.add(this);
+            try {
+                while (!socket.isClosed()) {
+                    boolean wrote = false;
+                    String event;
+                    while ((event = events.poll()) != null) {
+                        out.write(event);
+                        out.newLine();
+                        wrote = true;
+                    }
+                    event = position.getAndSet(null);
+                    if (event != null) {
+                        out.write(event);
+                        out.newLine();
+                        wrote = true;
+                    }
+                    if (wrote) {
+                        out.flush();
+                    } else {
+                        LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+                    }
+                }
+            } finally {
+                subscribers.remove(this);
+            }
+        }
+
+        private void close() {
+            subscribers.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed.
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ir.razplayer.remote;
+
+import ir.razplayer.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hands file arguments over to an already running player instance. The
+ * running instance listens on a loopback socket whose port and access token
+ * are published in a file under the user's home directory. A new launch
+ * connects to it, sends its arguments and exits instead of starting another
+ * JVM and JavaFX toolkit.
+ */
+public final class SingleInstance {
+
+    /**
+     * The handshake reply sent by the running instance.
+     */
+    private static final String ACK = "OK";
+
+    /**
+     * The connect and read timeout of a hand-off attempt in milliseconds.
+     */
+    private static final int TIMEOUT = 1000;
+
+    /**
+     * The file holding the port and token of the running instance.
+     */
+    private static final Path INSTANCE_FILE = Paths.get(System.getProperty("user.home"), ".razplayer", "instance");
+
+    /**
+     * The listening socket of the running instance.
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * The secret a client must present before its arguments are accepted.
+     */
+    private final String token;
+
+    /**
+     * The receiver of handed-over arguments. Called on the listener thread.
+     */
+    private final Consumer<List<String>> handler;
+
+    private SingleInstance(ServerSocket serverSocket, String token, Consumer<List<String>> handler) {
+        this.serverSocket = serverSocket;
+        this.token = token;
+        this.handler = handler;
+    }
+
+    /**
+     * Tries to pass the arguments to a running instance.
+     *
+     * @param args the command line arguments of this launch.
+     * @return <i>true</i> if a running instance accepted them.
+     */
+    public static boolean handOff(String[] args) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(INSTANCE_FILE, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return false;
+        }
+        if (lines.size() < 2) {
+            return false;
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(lines.get(0).trim())), TIMEOUT);
+            socket.setSoTimeout(TIMEOUT);
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            out.write(lines.get(1).trim());
+            out.newLine();
+            for (String arg : args) {
+                // The running instance has its own working directory.
+                out.write(Paths.get(arg).toAbsolutePath().toString());
+                out.newLine();
+            }
+            out.flush();
+            socket.shutdownOutput();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            return ACK.equals(in.readLine());
+        } catch (IOException | RuntimeException e) {
+            // Stale file or a dead instance. Start normally.
+            return false;
+        }
+    }
+
+    /**
+     * Starts listening for hand-offs of later launches.
+     *
+     * @param handler the receiver of the absolute file paths of each hand-off.
+     * @return the listening instance, or <i>null</i> if it could not be started.
+     */
+    public static SingleInstance listen(Consumer<List<String>> handler) {
+        try {
+            ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            SingleInstance instance = new SingleInstance(serverSocket, TokenFile.newToken(), handler);
+            TokenFile.publish(INSTANCE_FILE, serverSocket.getLocalPort(), instance.token);
+
+            Thread thread = new Thread(instance::acceptLoop, "razplayer-single-instance");
+            thread.setDaemon(true);
+            thread.start();
+            return instance;
+        } catch (IOException e) {
+            Log.warn("Single-instance mode unavailable", e);
+            return null;
+        }
+    }
+
+    /**
+     * Stops listening and removes the instance file.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Already closed.
+        }
+        TokenFile.remove(INSTANCE_FILE, serverSocket.getLocalPort());
+    }
+
+    /**
+     * Accepts hand-off connections until the socket is closed.
+     */
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(TIMEOUT);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                if (!token.equals(in.readLine())) {
+                    continue;
+                }
+                List<String> paths = new ArrayList<>();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        paths.add(line);
+                    }
+                }
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                out.write(ACK);
+                out.newLine();
+                out.flush();
+                handler.accept(paths);
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    Log.warn("Hand-off connection failed", e);
+                }
+            }
+        }
+    }
+}
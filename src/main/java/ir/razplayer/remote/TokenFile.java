@@ -0,0 +1,75 @@
+package ir.razplayer.remote;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.List;
+
+/**
+ * The file a loopback endpoint publishes its port and access token in. The
+ * file is readable by its owner only, so only the user running the player
+ * can connect: a client reads the file and presents the token before
+ * anything else it sends is accepted.
+ */
+final class TokenFile {
+
+    private TokenFile() {
+    }
+
+    /**
+     * Creates a random access token.
+     *
+     * @return 32 hex digits.
+     */
+    static String newToken() {
+        byte[] secret = new byte[16];
+        new SecureRandom().nextBytes(secret);
+        StringBuilder token = new StringBuilder();
+        for (byte b : secret) {
+            token.append(String.format("%02x", b));
+        }
+        return token.toString();
+    }
+
+    /**
+     * Writes the port and token to the file, readable by the owner only.
+     *
+     * @param file  the file to replace.
+     * @param port  the listening port.
+     * @param token the access token.
+     * @throws IOException if the file cannot be written.
+     */
+    static void publish(Path file, int port, String token) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // Non-POSIX file system, keep the default permissions.
+        }
+        Files.write(tmp, List.of(Integer.toString(port), token), StandardCharsets.UTF_8);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Removes the file if it still names the port, so that a file published
+     * by a newer endpoint is kept.
+     *
+     * @param file the file.
+     * @param port the port of the closing endpoint.
+     */
+    static void remove(Path file, int port) {
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).trim().equals(Integer.toString(port))) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // Nothing left to clean up.
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ir.razplayer.subtitle;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The cues of a subtitle file, indexed for lookup by playback time. The
+ * timeline is cut at every cue start and end into segments, and the text
+ * shown during each segment is joined once when the index is built. Finding
+ * the text for a time is then a binary search over the segment starts, which
+ * takes O(log n) and allocates nothing, however many cues there are or
+ * overlap.
+ */
+public final class CueIndex {
+
+    /**
+     * The start of each segment in milliseconds, ascending.
+     */
+    private final long[] starts;
+
+    /**
+     * The text shown during each segment, empty if no cue is active.
+     */
+    private final String[] texts;
+
+    /**
+     * The number of cues indexed.
+     */
+    private final int cueCount;
+
+    /**
+     * Builds the index. Cues may be in any order and may overlap; cues that
+     * end before they start are ignored.
+     *
+     * @param cueStarts the start of each cue in milliseconds.
+     * @param cueEnds   the end of each cue in milliseconds, exclusive.
+     * @param cueTexts  the text of each cue.
+     * @param count     the number of cues in the arrays.
+     */
+    CueIndex(long[] cueStarts, long[] cueEnds, String[] cueTexts, int count) {
+        this.cueCount = count;
+
+        Integer[] byStart = new Integer[count];
+        Integer[] byEnd = new Integer[count];
+        long[] boundaries = new long[count * 2];
+        for (int i = 0; i < count; i++) {
+            byStart[i] = i;
+            byEnd[i] = i;
+            boundaries[2 * i] = cueStarts[i];
+            boundaries[2 * i + 1] = cueEnds[i];
+        }
+        // Cues starting together are shown in file order.
+        Arrays.sort(byStart, (a, b) -> cueStarts[a] != cueStarts[b] ? Long.compare(cueStarts[a], cueStarts[b]) : a - b);
+        Arrays.sort(byEnd, (a, b) -> Long.compare(cueEnds[a], cueEnds[b]));
+        Arrays.sort(boundaries);
+        int unique = 0;
+        for (int i = 0; i < boundaries.length; i++) {
+            if (unique == 0 || boundaries[i] != boundaries[unique - 1]) {
+                boundaries[unique++] = boundaries[i];
+            }
+        }
+
+        this.starts = Arrays.copyOf(boundaries, unique);
+        this.texts = new String[unique];
+        // The active cues by file order.
+        Map<Integer, String> active = new TreeMap<>();
+        int nextStart = 0;
+        int nextEnd = 0;
+        for (int segment = 0; segment < unique; segment++) {
+            long time = starts[segment];
+            while (nextEnd < count && cueEnds[byEnd[nextEnd]] <= time) {
+                active.remove(byEnd[nextEnd++]);
+            }
+            while (nextStart < count && cueStarts[byStart[nextStart]] <= time) {
+                int cue = byStart[nextStart++];
+                if (cueEnds[cue] > time) {
+                    active.put(cue, cueTexts[cue]);
+                }
+            }
+            texts[segment] = active.isEmpty() ? "" : active.size() == 1
+                    ? active.values().iterator().next()
+                    : String.join("\n", active.values());
+        }
+    }
+
+    /**
+     * Returns the text to show at a playback time. Returns the same instance
+     * for as long as the shown text does not change, so callers can compare
+     * results by identity.
+     *
+     * @param millis the playback time in milliseconds.
+     * @return the active cues' text, joined by line breaks; empty if none.
+     */
+    public String textAt(double millis) {
+        int index = Arrays.binarySearch(starts, (long) millis);
+        if (index < 0) {
+            // The segment starting before the insertion point.
+            index = -index - 2;
+        }
+        return index < 0 ? "" : texts[index];
+    }
+
+    /**
+     * Returns the number of cues.
+     *
+     * @return the cue count.
+     */
+    public int size() {
+        return cueCount;
+    }
+}
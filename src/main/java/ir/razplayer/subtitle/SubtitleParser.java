@@ -0,0 +1,270 @@
+package ir.razplayer.subtitle;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Reads SubRip (.srt) and WebVTT (.vtt) subtitles. Files are parsed line by
+ * line, so memory use is bounded by the cues rather than the file, and the
+ * result is a {@link CueIndex}. Formatting tags are removed; cue settings,
+ * identifiers, headers and comment blocks are ignored.
+ */
+public final class SubtitleParser {
+
+    /**
+     * The subtitle file extensions looked for next to media files.
+     */
+    private static final String[] EXTENSIONS = {"srt", "vtt"};
+
+    /**
+     * HTML-like tags and SSA override codes within cue text.
+     */
+    private static final Pattern TAGS = Pattern.compile("<[^>]*>|\\{\\\\[^}]*}");
+
+    /**
+     * The encoding tried when a file is not valid UTF-8: the one named by the
+     * {@code razplayer.subtitle.charset} property, or else the Windows code
+     * page of the default locale's language.
+     */
+    private static final Charset FALLBACK = fallback(System.getProperty("razplayer.subtitle.charset"),
+            Locale.getDefault());
+
+    private SubtitleParser() {
+    }
+
+    /**
+     * Finds the subtitle file of a media file: a file with the same name and
+     * a subtitle extension, or else one with a language tag in between, such
+     * as {@code movie.en.srt}.
+     *
+     * @param media the media file.
+     * @return the subtitle file, or <i>null</i> if there is none.
+     */
+    public static Path findSidecar(Path media) {
+        Path dir = media.getParent();
+        if (dir == null) {
+            return null;
+        }
+        String name = media.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        for (String extension : EXTENSIONS) {
+            Path sidecar = dir.resolve(base + "." + extension);
+            if (Files.isRegularFile(sidecar)) {
+                return sidecar;
+            }
+        }
+        String prefix = (base + ".").toLowerCase(Locale.ROOT);
+        List<Path> tagged = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, file -> {
+            String candidate = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return candidate.startsWith(prefix) && (candidate.endsWith(".srt") || candidate.endsWith(".vtt"));
+        })) {
+            for (Path file : files) {
+                tagged.add(file);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return tagged.isEmpty() ? null : Collections.min(tagged);
+    }
+
+    /**
+     * Parses a subtitle file. UTF-8 is assumed; files that are not valid
+     * UTF-8 are read in the fallback encoding, Windows-1256 for Persian and
+     * Arabic locales and Windows-1252 for most others.
+     *
+     * @param file the .srt or .vtt file.
+     * @return the cues.
+     * @throws IOException if the file cannot be read.
+     */
+    public static CueIndex load(Path file) throws IOException {
+        try {
+            return load(file, StandardCharsets.UTF_8);
+        } catch (CharacterCodingException e) {
+            return load(file, FALLBACK);
+        }
+    }
+
+    /**
+     * Picks the encoding of subtitles that are not UTF-8. Such files are
+     * usually in the ANSI code page of the language they were written for.
+     *
+     * @param name   the configured charset name, or <i>null</i>.
+     * @param locale the locale to default from.
+     * @return the named charset if it is supported, or else the code page
+     * of the locale's language.
+     */
+    static Charset fallback(String name, Locale locale) {
+        if (name != null && !name.trim().isEmpty()) {
+            try {
+                return Charset.forName(name.trim());
+            } catch (IllegalArgumentException e) {
+                // Unknown or unsupported, default from the locale.
+            }
+        }
+        switch (locale.getLanguage()) {
+            case "ar":
+            case "fa":
+            case "ur":
+                return Charset.forName("windows-1256");
+            case "he":
+            case "iw":
+                return Charset.forName("windows-1255");
+            case "ru":
+            case "uk":
+            case "be":
+            case "bg":
+            case "mk":
+            case "sr":
+                return Charset.forName("windows-1251");
+            case "cs":
+            case "hr":
+            case "hu":
+            case "pl":
+            case "ro":
+            case "sk":
+            case "sl":
+                return Charset.forName("windows-1250");
+            case "el":
+                return Charset.forName("windows-1253");
+            case "tr":
+            case "az":
+                return Charset.forName("windows-1254");
+            default:
+                return Charset.forName("windows-1252");
+        }
+    }
+
+    private static CueIndex load(Path file, Charset charset) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(Files.newInputStream(file),
+                charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT)))) {
+            return parse(in);
+        }
+    }
+
+    /**
+     * Parses SubRip or WebVTT cues from a reader. Cues whose timing line
+     * cannot be read are skipped.
+     *
+     * @param in the subtitle text.
+     * @return the cues.
+     * @throws IOException if reading fails.
+     */
+    public static CueIndex parse(BufferedReader in) throws IOException {
+        long[] starts = new long[256];
+        long[] ends = new long[256];
+        String[] texts = new String[256];
+        int count = 0;
+
+        StringBuilder text = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null) {
+            // Only the timing line starts a cue; anything else outside a cue
+            // is a counter, identifier, header or comment.
+            int arrow = line.indexOf("-->");
+            if (arrow < 0) {
+                continue;
+            }
+            long start = parseTime(line, 0, arrow);
+            int endFrom = arrow + 3;
+            while (endFrom < line.length() && line.charAt(endFrom) == ' ') {
+                endFrom++;
+            }
+            int endTo = endFrom;
+            while (endTo < line.length() && !Character.isWhitespace(line.charAt(endTo))) {
+                endTo++;
+            }
+            long end = parseTime(line, endFrom, endTo);
+
+            text.setLength(0);
+            while ((line = in.readLine()) != null && !line.trim().isEmpty()) {
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(clean(line));
+            }
+            if (start < 0 || end <= start || text.length() == 0) {
+                continue;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                texts = Arrays.copyOf(texts, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            texts[count] = text.toString();
+            count++;
+        }
+        return new CueIndex(starts, ends, texts, count);
+    }
+
+    /**
+     * Parses {@code [hh:]mm:ss[,.]mmm}.
+     *
+     * @return the time in milliseconds, or -1 if malformed.
+     */
+    private static long parseTime(String line, int from, int to) {
+        long seconds = 0;
+        long field = 0;
+        int digits = 0;
+        long millis = 0;
+        boolean fraction = false;
+        int fractionDigits = 0;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (fraction) {
+                    if (fractionDigits < 3) {
+                        millis = millis * 10 + (c - '0');
+                        fractionDigits++;
+                    }
+                } else {
+                    field = field * 10 + (c - '0');
+                    digits++;
+                }
+            } else if (c == ':' && !fraction && digits > 0) {
+                seconds = (seconds + field) * 60;
+                field = 0;
+                digits = 0;
+            } else if ((c == ',' || c == '.') && !fraction && digits > 0) {
+                fraction = true;
+            } else if (!Character.isWhitespace(c)) {
+                return -1;
+            }
+        }
+        if (digits == 0) {
+            return -1;
+        }
+        for (; fractionDigits < 3; fractionDigits++) {
+            millis *= 10;
+        }
+        return (seconds + field) * 1000 + millis;
+    }
+
+    private static String clean(String line) {
+        if (line.indexOf('<') >= 0 || line.indexOf('{') >= 0) {
+            line = TAGS.matcher(line).replaceAll("");
+        }
+        if (line.indexOf('&') >= 0) {
+            line = line.replace("&lt;", "<").replace("&gt;", ">").replace("&nbsp;", " ").replace("&amp;", "&");
+        }
+        return line;
+    }
+}
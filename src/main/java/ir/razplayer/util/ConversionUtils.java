@@ -73,8 +73,10 @@ public class ConversionUtils {
 	 */
 	public static String convertToFileExtension(URI uri) {
 
-	    String uriString = uri.toString();
+	    String uriString = uri.getPath() != null ? uri.getPath() : uri.toString();
 
+	    // Only look at the last path segment, directories may contain dots.
+	    uriString = uriString.substring(uriString.lastIndexOf('/') + 1);
 	    int extensionIndex = uriString.lastIndexOf(".");
 	    //No extension
 	    if (extensionIndex == -1)
@@ -0,0 +1,328 @@
+package ir.razplayer.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A small asynchronous logger. Callers only put a record into a bounded
+ * lock-free ring buffer; a background thread formats the records and writes
+ * them to a rolling file under {@code ~/.razplayer/logs}. When the buffer is
+ * full, records are dropped and counted rather than blocking the caller, so
+ * logging from the JavaFX application thread never waits on I/O.
+ * <p>
+ * The minimum level is set by the system property {@code razplayer.log.level}
+ * (default {@code INFO}). With {@code razplayer.log.console=true} records are
+ * also echoed to standard output by the writer thread.
+ * </p>
+ */
+public final class Log {
+
+    /**
+     * The severity of a log record.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    /**
+     * The number of records the ring buffer holds. A power of two.
+     */
+    private static final int CAPACITY = 8192;
+
+    /**
+     * The size at which the log file is rolled over in bytes.
+     */
+    private static final long MAX_FILE_SIZE = 5L << 20;
+
+    /**
+     * The number of rolled-over files kept.
+     */
+    private static final int MAX_BACKUPS = 3;
+
+    /**
+     * The time the writer sleeps when the buffer is empty.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS", Locale.ROOT).withZone(ZoneId.systemDefault());
+
+    private static final Level MIN_LEVEL = parseLevel(System.getProperty("razplayer.log.level"));
+
+    private static final boolean CONSOLE = Boolean.getBoolean("razplayer.log.console");
+
+    private static final Path FILE = Paths.get(System.getProperty("user.home"), ".razplayer", "logs", "razplayer.log");
+
+    /**
+     * The records, indexed by sequence number modulo the capacity.
+     */
+    private static final Record[] RECORDS = new Record[CAPACITY];
+
+    /**
+     * The per-slot sequence numbers. A slot may be written by the producer
+     * holding sequence <i>s</i> when its value is <i>s</i>, and read by the
+     * writer when its value is <i>s + 1</i>.
+     */
+    private static final AtomicLongArray SEQUENCES = new AtomicLongArray(CAPACITY);
+
+    /**
+     * The next sequence number to claim by producers.
+     */
+    private static final AtomicLong HEAD = new AtomicLong();
+
+    /**
+     * The number of records dropped because the buffer was full.
+     */
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    /**
+     * The next sequence number to read. Only touched by the writer thread.
+     */
+    private static long tail;
+
+    private static BufferedWriter out;
+
+    private static long fileSize;
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            SEQUENCES.set(i, i);
+        }
+        Thread writer = new Thread(Log::writeLoop, "razplayer-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "razplayer-log-flush"));
+    }
+
+    private Log() {
+    }
+
+    /**
+     * Returns whether records of the level are written. Lets callers skip
+     * building messages that would be discarded.
+     *
+     * @param level the level.
+     * @return <i>true</i> if the level is enabled.
+     */
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(MIN_LEVEL) >= 0;
+    }
+
+    /**
+     * Queues a debug record.
+     *
+     * @param message the message.
+     */
+    public static void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    /**
+     * Queues an info record.
+     *
+     * @param message the message.
+     */
+    public static void info(String message) {
+        log(Level.INFO, message, null);
+    }
+
+    /**
+     * Queues a warning record.
+     *
+     * @param message the message.
+     */
+    public static void warn(String message) {
+        log(Level.WARN, message, null);
+    }
+
+    /**
+     * Queues a warning record with a stack trace.
+     *
+     * @param message the message.
+     * @param error   the cause.
+     */
+    public static void warn(String message, Throwable error) {
+        log(Level.WARN, message, error);
+    }
+
+    /**
+     * Queues an error record with a stack trace.
+     *
+     * @param message the message.
+     * @param error   the cause.
+     */
+    public static void error(String message, Throwable error) {
+        log(Level.ERROR, message, error);
+    }
+
+    /**
+     * Queues a record for writing. Never blocks.
+     *
+     * @param level   the severity.
+     * @param message the message.
+     * @param error   an optional exception whose stack trace is appended.
+     */
+    public static void log(Level level, String message, Throwable error) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        Record record = new Record(System.currentTimeMillis(), level, Thread.currentThread().getName(), message, error);
+        while (true) {
+            long position = HEAD.get();
+            int index = (int) (position & (CAPACITY - 1));
+            long sequence = SEQUENCES.get(index);
+            if (sequence == position) {
+                if (HEAD.compareAndSet(position, position + 1)) {
+                    RECORDS[index] = record;
+                    // Publishes the record to the writer.
+                    SEQUENCES.set(index, position + 1);
+                    return;
+                }
+            } else if (sequence < position) {
+                // The writer is a full lap behind.
+                DROPPED.incrementAndGet();
+                return;
+            }
+            // Another producer claimed this position, try the next one.
+        }
+    }
+
+    private static void writeLoop() {
+        while (true) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Writes all published records.
+     *
+     * @return the number of records written.
+     */
+    private static synchronized int drain() {
+        int count = 0;
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            int index = (int) (tail & (CAPACITY - 1));
+            if (SEQUENCES.get(index) != tail + 1) {
+                break;
+            }
+            Record record = RECORDS[index];
+            RECORDS[index] = null;
+            SEQUENCES.set(index, tail + CAPACITY);
+            tail++;
+            count++;
+            format(record, text);
+        }
+        long dropped = DROPPED.getAndSet(0);
+        if (dropped > 0) {
+            format(new Record(System.currentTimeMillis(), Level.WARN, "razplayer-log",
+                    dropped + " log records dropped", null), text);
+        }
+        if (text.length() > 0) {
+            write(text.toString());
+        }
+        return count;
+    }
+
+    private static void format(Record record, StringBuilder text) {
+        text.append(TIME_FORMAT.format(Instant.ofEpochMilli(record.time)))
+                .append(' ').append(record.level)
+                .append(" [").append(record.thread).append("] ")
+                .append(record.message)
+                .append(System.lineSeparator());
+        if (record.error != null) {
+            StringWriter trace = new StringWriter();
+            record.error.printStackTrace(new PrintWriter(trace));
+            text.append(trace);
+        }
+    }
+
+    private static void write(String text) {
+        if (CONSOLE) {
+            System.out.print(text);
+        }
+        try {
+            if (out == null) {
+                Files.createDirectories(FILE.getParent());
+                fileSize = Files.exists(FILE) ? Files.size(FILE) : 0;
+                out = Files.newBufferedWriter(FILE, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            out.write(text);
+            out.flush();
+            fileSize += text.length();
+            if (fileSize > MAX_FILE_SIZE) {
+                roll();
+            }
+        } catch (IOException e) {
+            // Nowhere left to report it. Try to reopen on the next write.
+            out = null;
+        }
+    }
+
+    /**
+     * Renames razplayer.log to razplayer.log.1, shifting older backups up.
+     */
+    private static void roll() throws IOException {
+        out.close();
+        out = null;
+        for (int i = MAX_BACKUPS - 1; i >= 1; i--) {
+            Path from = FILE.resolveSibling(FILE.getFileName() + "." + i);
+            if (Files.exists(from)) {
+                Files.move(from, FILE.resolveSibling(FILE.getFileName() + "." + (i + 1)),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(FILE, FILE.resolveSibling(FILE.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Level parseLevel(String name) {
+        try {
+            return name == null ? Level.INFO : Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    /**
+     * A queued log record.
+     */
+    private static final class Record {
+
+        private final long time;
+
+        private final Level level;
+
+        private final String thread;
+
+        private final String message;
+
+        private final Throwable error;
+
+        private Record(long time, Level level, String thread, String message, Throwable error) {
+            this.time = time;
+            this.level = level;
+            this.thread = thread;
+            this.message = message;
+            this.error = error;
+        }
+    }
+}
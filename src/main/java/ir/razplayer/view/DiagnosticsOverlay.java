@@ -0,0 +1,203 @@
+package ir.razplayer.view;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.layout.VBox;
+import javafx.scene.media.MediaPlayer;
+import javafx.util.Duration;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * The performance diagnostics shown over the player window. Pulses are
+ * counted by an animation timer and the scene's pulse work is timed by pulse
+ * listeners; the labels are refreshed from those counters twice a second.
+ * Everything is attached when the overlay is shown and detached when it is
+ * hidden, so a hidden overlay costs nothing.
+ */
+final class DiagnosticsOverlay extends VBox {
+
+    /**
+     * The refresh interval of the labels in milliseconds.
+     */
+    private static final double SAMPLE_MILLIS = 500;
+
+    /**
+     * The nominal pulse interval in nanoseconds, at 60 pulses a second.
+     */
+    private static final long PULSE_NANOS = 1_000_000_000L / 60;
+
+    private final RazPlayerViewController controller;
+
+    private final Label pulseLabel = new Label();
+
+    private final Label frameLabel = new Label();
+
+    private final Label memoryLabel = new Label();
+
+    private final Label playerLabel = new Label();
+
+    private final Label bufferLabel = new Label();
+
+    private final Label seekLabel = new Label();
+
+    /**
+     * The direct buffer pool, <i>null</i> if the VM does not report one.
+     */
+    private final BufferPoolMXBean directPool = directPool();
+
+    /**
+     * The scene the pulse listeners are attached to, <i>null</i> while hidden.
+     */
+    private Scene scene;
+
+    private long lastPulse;
+
+    /**
+     * The pulses since the last sample.
+     */
+    private int pulses;
+
+    /**
+     * The frames rendered and missed since the overlay was shown.
+     */
+    private long rendered;
+
+    private long dropped;
+
+    private long pulseStarted;
+
+    /**
+     * The CSS and layout time of the pulses since the last sample, in
+     * nanoseconds, and the longest of them.
+     */
+    private long pulseWork;
+
+    private long pulseWorkMax;
+
+    private long lastSample;
+
+    private final Timeline sampler = new Timeline(new KeyFrame(Duration.millis(SAMPLE_MILLIS), event -> sample()));
+
+    private final AnimationTimer pulseCounter = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (lastPulse != 0) {
+                long interval = now - lastPulse;
+                // A pulse later than one and a half intervals missed frames.
+                if (interval > PULSE_NANOS * 3 / 2) {
+                    dropped += Math.round((double) interval / PULSE_NANOS) - 1;
+                }
+            }
+            lastPulse = now;
+            pulses++;
+            rendered++;
+        }
+    };
+
+    private final Runnable pulseStart = () -> pulseStarted = System.nanoTime();
+
+    private final Runnable pulseEnd = () -> {
+        if (pulseStarted != 0) {
+            long work = System.nanoTime() - pulseStarted;
+            pulseWork += work;
+            pulseWorkMax = Math.max(pulseWorkMax, work);
+            pulseStarted = 0;
+        }
+    };
+
+    /**
+     * Creates the overlay, hidden.
+     *
+     * @param controller the player view to report on.
+     */
+    DiagnosticsOverlay(RazPlayerViewController controller) {
+        this.controller = controller;
+        sampler.setCycleCount(Timeline.INDEFINITE);
+        setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 6; -fx-spacing: 2;");
+        for (Label label : List.of(pulseLabel, frameLabel, memoryLabel, playerLabel, bufferLabel, seekLabel)) {
+            label.setStyle("-fx-font-family: monospace; -fx-font-size: 10; -fx-text-fill: white;");
+        }
+        getChildren().addAll(pulseLabel, frameLabel, memoryLabel, playerLabel, bufferLabel, seekLabel);
+        setMouseTransparent(true);
+        setVisible(false);
+    }
+
+    /**
+     * Shows or hides the overlay, starting or stopping its sampling.
+     */
+    void toggle() {
+        if (isVisible()) {
+            sampler.stop();
+            pulseCounter.stop();
+            if (scene != null) {
+                scene.removePreLayoutPulseListener(pulseStart);
+                scene.removePostLayoutPulseListener(pulseEnd);
+                scene = null;
+            }
+            setVisible(false);
+            return;
+        }
+        lastPulse = 0;
+        pulses = 0;
+        rendered = 0;
+        dropped = 0;
+        pulseWork = 0;
+        pulseWorkMax = 0;
+        lastSample = System.nanoTime();
+        scene = getScene();
+        if (scene != null) {
+            scene.addPreLayoutPulseListener(pulseStart);
+            scene.addPostLayoutPulseListener(pulseEnd);
+        }
+        pulseCounter.start();
+        sampler.play();
+        sample();
+        setVisible(true);
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        double seconds = (now - lastSample) / 1e9;
+        lastSample = now;
+        pulseLabel.setText(String.format("pulse   %5.1f/s  avg %5.2f ms  max %5.2f ms",
+                seconds > 0 ? pulses / seconds : 0.0,
+                pulses > 0 ? pulseWork / 1e6 / pulses : 0.0, pulseWorkMax / 1e6));
+        pulses = 0;
+        pulseWork = 0;
+        pulseWorkMax = 0;
+        frameLabel.setText(String.format("frames  %d rendered  %d dropped", rendered, dropped));
+
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        memoryLabel.setText(String.format("memory  heap %d/%d MB  direct %s",
+                heap >> 20, runtime.maxMemory() >> 20,
+                directPool == null ? "n/a" : (directPool.getMemoryUsed() >> 20) + " MB"));
+
+        int live = controller.getTrackLoader() == null ? 0 : controller.getTrackLoader().getLiveCount();
+        playerLabel.setText("players " + live + " live");
+
+        MediaPlayer player = controller.getMediaPlayer();
+        double total = player == null ? 0 : player.getTotalDuration().toMillis();
+        bufferLabel.setText(total > 0 && !Double.isInfinite(total)
+                ? String.format("buffer  %5.1f%%", 100 * player.getBufferProgressTime().toMillis() / total)
+                : "buffer  n/a");
+
+        long seek = controller.getLastSeekLatency();
+        seekLabel.setText(seek < 0 ? "seek    n/a" : String.format("seek    %5.1f ms", seek / 1e6));
+    }
+
+    private static BufferPoolMXBean directPool() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,98 @@
+package ir.razplayer.view;
+
+import ir.razplayer.util.ConversionUtils;
+import javafx.util.Duration;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The display strings of playlist items, formatted once and then reused, so
+ * that scrolling and selecting format nothing. Only used on the JavaFX
+ * application thread.
+ */
+final class DisplayText {
+
+    /**
+     * The number of formatted durations kept, by whole seconds.
+     */
+    private static final int DURATION_SLOTS = 1024;
+
+    /**
+     * The seconds each duration slot holds, -1 if empty.
+     */
+    private static final int[] durationKeys = new int[DURATION_SLOTS];
+
+    /**
+     * The formatted durations.
+     */
+    private static final String[] durationTexts = new String[DURATION_SLOTS];
+
+    /**
+     * The file names by URI; entries go with their items.
+     */
+    private static final Map<URI, String> names = new WeakHashMap<>();
+
+    /**
+     * The full paths by URI; entries go with their items.
+     */
+    private static final Map<URI, String> paths = new WeakHashMap<>();
+
+    static {
+        Arrays.fill(durationKeys, -1);
+    }
+
+    private DisplayText() {
+    }
+
+    /**
+     * Formats a duration as {@code hh:mm:ss}.
+     *
+     * @param duration the duration.
+     * @return the formatted duration, empty if not known.
+     */
+    static String duration(Duration duration) {
+        if (duration == null || duration.isUnknown() || duration.isIndefinite()) {
+            return "";
+        }
+        int seconds = (int) duration.toSeconds();
+        int slot = seconds & (DURATION_SLOTS - 1);
+        if (durationKeys[slot] != seconds) {
+            durationKeys[slot] = seconds;
+            durationTexts[slot] = ConversionUtils.convertTimeInSeconds(seconds);
+        }
+        return durationTexts[slot];
+    }
+
+    /**
+     * Returns the file name of a media URI without its extension.
+     *
+     * @param uri the URI.
+     * @return the file name.
+     */
+    static String name(URI uri) {
+        return uri == null ? "" : names.computeIfAbsent(uri, ConversionUtils::convertToFileName);
+    }
+
+    /**
+     * Returns the path of a local media file, or the URI of other media.
+     *
+     * @param uri the URI.
+     * @return the path or URI.
+     */
+    static String path(URI uri) {
+        return uri == null ? "" : paths.computeIfAbsent(uri, key -> {
+            if ("file".equalsIgnoreCase(key.getScheme())) {
+                try {
+                    return Paths.get(key).toString();
+                } catch (RuntimeException e) {
+                    // Shown as a URI.
+                }
+            }
+            return key.toString();
+        });
+    }
+}
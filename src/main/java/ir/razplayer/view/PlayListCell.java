@@ -0,0 +1,39 @@
+package ir.razplayer.view;
+
+import ir.razplayer.model.MediaItem;
+import javafx.scene.control.TableCell;
+
+import java.util.function.Function;
+
+/**
+ * A playlist table cell showing a preformatted string. The text is only set
+ * when it changes, so a cell reused for a row with the same text causes no
+ * new layout of its text node.
+ *
+ * @param <T> the type of the column values.
+ */
+final class PlayListCell<T> extends TableCell<MediaItem, T> {
+
+    /**
+     * Turns a column value into its display string.
+     */
+    private final Function<T, String> format;
+
+    /**
+     * Creates a cell.
+     *
+     * @param format returns the cached display string of a value.
+     */
+    PlayListCell(Function<T, String> format) {
+        this.format = format;
+    }
+
+    @Override
+    protected void updateItem(T value, boolean empty) {
+        super.updateItem(value, empty);
+        String shown = empty || value == null ? null : format.apply(value);
+        if (shown == null ? getText() != null : !shown.equals(getText())) {
+            setText(shown);
+        }
+    }
+}
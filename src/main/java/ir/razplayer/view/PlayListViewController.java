@@ -1,17 +1,21 @@
 package ir.razplayer.view;
 
 import ir.razplayer.Main;
+import ir.razplayer.library.PlayListSorter;
 import ir.razplayer.model.MediaItem;
-import ir.razplayer.util.ConversionUtils;
+import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
 import javafx.scene.input.*;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
-import java.io.File;
+import java.net.URI;
 
 /**
  * The controller for the PlayListView. Contains playlist item selection and
@@ -27,6 +31,12 @@ public class PlayListViewController
 
 	@FXML
 	private TableColumn<MediaItem, String> titleColumn;
+
+	@FXML
+	private TableColumn<MediaItem, Duration> durationColumn;
+
+	@FXML
+	private TableColumn<MediaItem, URI> pathColumn;
 	
 	@FXML
 	private Label pathLabel;
@@ -47,6 +57,16 @@ public class PlayListViewController
 	 */
 	private Main main;
 	
+	/**
+	 * The key of the last requested sort, <i>null</i> if none.
+	 */
+	private PlayListSorter.Key sortKey;
+	
+	/**
+	 * Whether the last requested sort was descending.
+	 */
+	private boolean sortDescending;
+	
     /**
      * The default constructor.
      * Called before the <i>initialize()</i> method.
@@ -63,8 +83,23 @@ public class PlayListViewController
     @FXML
     private void initialize()
     {
-        // Initialize the playlist table.
+        // Initialize the playlist table. The cells bind the items' own properties
+        // and show cached strings, so scrolling allocates and formats nothing.
         titleColumn.setCellValueFactory(cellData -> cellData.getValue().getTitleProperty());
+        titleColumn.setCellFactory(column -> new PlayListCell<>(title -> title));
+        durationColumn.setCellValueFactory(cellData -> cellData.getValue().getDurationProperty());
+        durationColumn.setCellFactory(column -> new PlayListCell<>(DisplayText::duration));
+        pathColumn.setCellValueFactory(cellData -> cellData.getValue().getURIProperty());
+        pathColumn.setCellFactory(column -> new PlayListCell<>(DisplayText::path));
+        // The table would sort on the FX thread; the library sorts in the background.
+        titleColumn.setSortable(false);
+        durationColumn.setSortable(false);
+        pathColumn.setSortable(false);
+        playListTable.setContextMenu(new ContextMenu(
+        		sortMenuItem("Sort by Title", PlayListSorter.Key.TITLE),
+        		sortMenuItem("Sort by Path", PlayListSorter.Key.PATH),
+        		sortMenuItem("Sort by Duration", PlayListSorter.Key.DURATION),
+        		sortMenuItem("Sort by Date Added", PlayListSorter.Key.DATE_ADDED)));
 
         // Clear the media item details.
         showMediaInfo(null);
@@ -102,16 +137,45 @@ public class PlayListViewController
         if (track != null)
         {
             // Fill the labels with info from the Track object.
-        	pathLabel.setText(ConversionUtils.convertToFileName(track.getURI()));
+        	pathLabel.setText(DisplayText.name(track.getURI()));
         	titleLabel.setText(track.getTitle());
+        	durationLabel.setText(DisplayText.duration(track.getDuration()));
         }
         else
         {
         	pathLabel.setText("");
         	titleLabel.setText("");
+        	durationLabel.setText("");
         }
     }
     
+	/**
+	 * Creates a context menu item that sorts the playlist. Choosing the same
+	 * sort twice in a row reverses the order.
+	 *
+	 * @param text
+	 *            the menu item text.
+	 * @param key
+	 *            the property to sort by.
+	 * @return MenuItem
+	 */
+    private MenuItem sortMenuItem(String text, PlayListSorter.Key key)
+    {
+    	MenuItem item = new MenuItem(text);
+    	item.setOnAction(new EventHandler<ActionEvent>()
+    	{
+    		@Override
+    		public void handle(ActionEvent event)
+    		{
+    			sortDescending = key == sortKey && !sortDescending;
+    			sortKey = key;
+    			main.getLibrary().sort(key, sortDescending)
+    					.thenRun(() -> playListTable.getSelectionModel().select(main.getCurrent().get()));
+    		}
+    	});
+    	return item;
+    }
+    
 	/**
 	 * Called by the main application to give it a reference back to itself.
 	 *
@@ -198,13 +262,8 @@ public class PlayListViewController
                 {
                 	if (db.hasFiles())
                     {
-                        for (File file : db.getFiles())
-                        {
-                            MediaItem track = new MediaItem(file.toURI());
-                            track.setURI(file.toURI());
-                            track.setTitle(file.getName());
-                            main.getPlayList().add(track);
-                        }
+                        // Duplicates of playlist items are skipped.
+                        main.getLibrary().importFiles(db.getFiles());
                     }
                 }
                 else
@@ -1,11 +1,27 @@
 package ir.razplayer.view;
 
 import ir.razplayer.Main;
+import ir.razplayer.audio.SilenceSpans;
+import ir.razplayer.jfr.EndOfMediaEvent;
+import ir.razplayer.jfr.SeekEvent;
+import ir.razplayer.jfr.StallEvent;
+import ir.razplayer.jfr.TrackOpenEvent;
 import ir.razplayer.model.MediaItem;
+import ir.razplayer.model.MediaType;
+import ir.razplayer.player.EventBus;
+import ir.razplayer.player.PlayerEvent;
+import ir.razplayer.player.PlaybackStateMachine;
+import ir.razplayer.player.SoundBoard;
+import ir.razplayer.player.TrackLoader;
+import ir.razplayer.subtitle.CueIndex;
 import ir.razplayer.util.ConversionUtils;
+import ir.razplayer.util.Log;
+import javafx.animation.Animation;
 import javafx.animation.FadeTransition;
 import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
 import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.EventHandler;
@@ -20,6 +36,7 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.input.TouchEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.TilePane;
 import javafx.scene.layout.VBox;
 import javafx.scene.media.AudioSpectrumListener;
 import javafx.scene.media.Media;
@@ -31,7 +48,10 @@ import javafx.stage.FileChooser;
 import javafx.util.Duration;
 
 import java.io.File;
+import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
 
 /**
  * The Controller for the MediaPlayerView. Contains the UI functionality and
@@ -42,6 +62,8 @@ import java.util.List;
 public class RazPlayerViewController {
 
     private static final int HIDE_UI_TIMEOUT = 2500;
+    private static final int SWITCH_QUIET_TIME = 150;
+    private static final int SEEK_TOLERANCE = 500;
     private static final boolean SHOW_UI = true;
     private static final boolean HIDE_UI = false;
     private static final String[] MUSIC = {".MP3", ".WAV"};
@@ -52,6 +74,9 @@ public class RazPlayerViewController {
     @FXML
     private MediaView mediaView;
 
+    @FXML
+    private ImageView coverArt;
+
     @FXML
     private ProgressBar progBar;
 
@@ -82,6 +107,9 @@ public class RazPlayerViewController {
     @FXML
     private HBox speedSection;
 
+    @FXML
+    private HBox skipSilenceSection;
+
     @FXML
     private HBox section0_25;
 
@@ -127,8 +155,13 @@ public class RazPlayerViewController {
     @FXML
     private Label rateLabel;
 
+    private Label skipSilenceLabel;
+
+    @FXML
+    private Label subtitleLabel;
+
     /**
-     * A single MediaItem object.
+     * The currently playing MediaItem object.
      */
     private MediaItem mediaItem;
 
@@ -143,19 +176,20 @@ public class RazPlayerViewController {
     private Media media;
 
     /**
-     * The iterator for the playlist location. Set by Main.
+     * Opens tracks in the background. Created by <i>setMain()</i>.
      */
-    private int current;
+    private TrackLoader trackLoader;
 
     /**
-     * The playback started flag. Initialized to <i>false</i> locally.
+     * The iterator for the playlist location. Set by Main.
      */
-    private boolean playing;
+    private int current;
 
     /**
-     * The playback paused flag. Initialized to <i>false</i> locally.
+     * The playback state. Decides when a player has to be built; the flags
+     * below are view state only.
      */
-    private boolean paused;
+    private final PlaybackStateMachine<MediaItem> playback = new PlaybackStateMachine<>();
 
     /**
      * The media mute flag. Initialized to <i>false</i> locally.
@@ -192,11 +226,142 @@ public class RazPlayerViewController {
      */
     private double rate;
 
+    /**
+     * The bus player events are published on.
+     */
+    private EventBus events;
+
+
     /**
      * The Timeline for use as a delay timer.
      */
     private Timeline timeLine;
 
+    /**
+     * The quiet period after a track switch. Further switches requested
+     * within it are coalesced into one, to the latest index.
+     */
+    private final PauseTransition switchDelay = new PauseTransition(Duration.millis(SWITCH_QUIET_TIME));
+
+    /**
+     * The diagnostics overlay. Created when first shown.
+     */
+    private DiagnosticsOverlay diagnostics;
+
+    /**
+     * The preloaded clips of soundboard mode. Created by <i>setMain()</i>.
+     */
+    private SoundBoard soundBoard;
+
+    /**
+     * The pad buttons of soundboard mode. Created when first shown.
+     */
+    private TilePane soundBoardPads;
+
+    /**
+     * The soundboard mode flag. While set, the number keys trigger pads.
+     */
+    private boolean soundBoardMode;
+
+    /**
+     * When the pending seek was requested, in nanoseconds, and its target in
+     * milliseconds. 0 when no seek is pending.
+     */
+    private long seekStarted;
+
+    private double seekTarget;
+
+    /**
+     * The recording of the pending seek, <i>null</i> when none is pending.
+     */
+    private SeekEvent seekEvent;
+
+    /**
+     * The recording of the current stall, <i>null</i> unless stalled.
+     */
+    private StallEvent stall;
+
+    /**
+     * The time the last seek took to reach its target, in nanoseconds, or -1.
+     */
+    private long seekLatency = -1;
+
+    /**
+     * The coalesced switch flag. Set when a switch is waiting for the quiet
+     * period to end. Initialized to <i>false</i> locally.
+     */
+    private boolean switchPending;
+
+    /**
+     * The background flag. Set while the window is minimized or hidden, when
+     * no UI-bound listener is attached. Initialized to <i>false</i> locally.
+     */
+    private boolean background;
+
+    /**
+     * The listener updating the progress bar and clock.
+     */
+    private final ChangeListener<Duration> progressListener = progressChangedListener();
+
+    /**
+     * The listener publishing the position on the event bus.
+     */
+    private final ChangeListener<Duration> positionListener = positionChangedListener();
+
+    /**
+     * Records stalls of the current player.
+     */
+    private final ChangeListener<MediaPlayer.Status> stallListener = stallChangedListener();
+
+    /**
+     * The listener showing the subtitle cues at the current position.
+     */
+    private final ChangeListener<Duration> subtitleListener = subtitleChangedListener();
+
+    /**
+     * The subtitle cues of the current item. <i>null</i> if it has none.
+     */
+    private CueIndex cues;
+
+    /**
+     * The loudness normalising volume factor of the current item, applied on
+     * top of the volume slider.
+     */
+    private double trackVolume = 1;
+
+    /**
+     * The skip-silence flag. Set while long silences in music are skipped.
+     * Initialized to <i>false</i> locally.
+     */
+    private boolean skipSilence;
+
+    /**
+     * The silent spans of the current item found so far. <i>null</i> until
+     * the scan reports.
+     */
+    private SilenceSpans silence;
+
+    /**
+     * The silence scan of the current item. <i>null</i> if none is running.
+     */
+    private Future<?> silenceScan;
+
+    /**
+     * The end of the span last skipped to, so that each span is sought once.
+     */
+    private long skippedTo = -1;
+
+    /**
+     * The listener skipping the silent spans. Stays attached in the background.
+     */
+    private final ChangeListener<Duration> silenceListener = silenceChangedListener();
+
+    /**
+     * The listener drawing the spectroscope of the current music item.
+     * <i>null</i> for video.
+     */
+    private AudioSpectrumListener spectrumListener;
+
     /**
      * The Address source of images.
      */
@@ -260,8 +425,6 @@ public class RazPlayerViewController {
     @FXML
     public void initialize() {
 
-        this.playing = false;
-        this.paused = false;
         this.muted = false;
         this.showUI = true;
         this.showSetting = false;
@@ -302,6 +465,9 @@ public class RazPlayerViewController {
         // set visibility of speed controls
         speedControls.setVisible(HIDE_UI);
 
+        // hidden cover art takes no room from the video
+        coverArt.managedProperty().bind(coverArt.visibleProperty());
+
         Image arrowImage = new Image(arrowBtnShape);
         ImageView arrowImg = new ImageView(arrowImage);
         arrowImg.setFitWidth(9);
@@ -345,6 +511,17 @@ public class RazPlayerViewController {
         playListSection.setOnMouseClicked(playListSectionMouseListener());
         playListSection.setOnTouchPressed(playListSectionTouchListener());
 
+        Label silenceLabel = new Label("Skip Silence");
+        silenceLabel.setStyle("-fx-font-size: 9; -fx-padding: 0 10 0 18");
+        skipSilenceSection.getChildren().add(silenceLabel);
+
+        this.skipSilenceLabel = new Label("Off");
+        skipSilenceLabel.setStyle("-fx-font-size: 10;");
+        skipSilenceSection.getChildren().add(skipSilenceLabel);
+
+        skipSilenceSection.setOnMouseClicked(skipSilenceSectionMouseListener());
+        skipSilenceSection.setOnTouchPressed(skipSilenceSectionTouchListener());
+
         Label label0_25 = new Label("0.25");
         label0_25.setStyle("-fx-font-size: 9");
         section0_25.getChildren().add(label0_25);
@@ -396,35 +573,145 @@ public class RazPlayerViewController {
         // set volume slider
         volSlider.setValue(0.5);
         volSlider.valueProperty().addListener(volumeSliderChangedListener());
+
+        // run the last switch requested during the quiet period
+        switchDelay.setOnFinished(event -> {
+            if (switchPending) {
+                switchPending = false;
+                switchTrack();
+            }
+        });
     }
 
     /**
-     * Handles the <i>Play/Pause</i> button click. Uses the flags <i>playing</i>
-     * and <i>paused</i> to initiate, pause or resume media item playback. Sets
-     * the <i>paused</i> flag by flipping it.
+     * Handles the <i>Play/Pause</i> button click. Initiates playback of the
+     * list when stopped, and otherwise pauses or resumes it.
      */
     @FXML
     public void playRequestHandler() {
-        //If not playing anything, play the list.
-        if (!playing) {
+        if (!playback.isStarted()) {
             playAll();
+        } else if (playback.isPaused()) {
+            play();
+        } else {
+            pause();
         }
-        //Otherwise, check the paused flag.
-        else {
-            //If not paused, pause.
-            if (!paused) {
-                mediaPlayer.pause();
-                playBtn.setStyle("-fx-graphic: url(" + playBtnShape + "); -fx-padding: 2 4 2 4;");
-            }
-            //Otherwise, resume.
-            else {
-                mediaPlayer.play();
-                playBtn.setStyle("-fx-graphic: url(" + pauseBtnShape + "); -fx-padding: 2 4 2 4;");
-            }
-            this.paused = !paused;
+    }
+
+    /**
+     * Starts or resumes playback. Does nothing if already playing.
+     */
+    public void play() {
+        if (!playback.isStarted()) {
+            playAll();
+            return;
+        }
+        //While a track is opening there is no player yet; it starts in
+        //whatever state is set by then.
+        if (playback.resume() == PlaybackStateMachine.Action.PLAY) {
+            mediaPlayer.play();
+        }
+        updatePlayButton();
+        publishState();
+    }
+
+    /**
+     * Pauses playback. Does nothing if not playing.
+     */
+    public void pause() {
+        if (playback.pause() == PlaybackStateMachine.Action.PAUSE) {
+            mediaPlayer.pause();
+        }
+        updatePlayButton();
+        publishState();
+    }
+
+    /**
+     * Shows the <i>Play</i> button while paused or stopped, and the
+     * <i>Pause</i> button otherwise.
+     */
+    private void updatePlayButton() {
+        String shape = !playback.isStarted() || playback.isPaused() ? playBtnShape : pauseBtnShape;
+        playBtn.setStyle("-fx-graphic: url(" + shape + "); -fx-padding: 2 4 2 4;");
+    }
+
+    /**
+     * Seeks the current media to the given position.
+     *
+     * @param seconds the position in seconds.
+     */
+    public void seek(double seconds) {
+        if (mediaPlayer != null) {
+            seekTo(Duration.seconds(seconds), SeekEvent.REMOTE);
         }
     }
 
+    /**
+     * Seeks the current player, publishes the seek and starts timing it. The
+     * player must not be <i>null</i>.
+     *
+     * @param time   the new position.
+     * @param origin what requested the seek, one of the {@link SeekEvent}
+     *               origins.
+     */
+    private void seekTo(Duration time, String origin) {
+        double from = mediaPlayer.getCurrentTime().toSeconds();
+        seekEvent = new SeekEvent();
+        seekEvent.begin();
+        seekEvent.origin = origin;
+        seekEvent.from = (long) (from * 1000);
+        seekEvent.to = (long) time.toMillis();
+        seekStarted = System.nanoTime();
+        seekTarget = time.toMillis();
+        mediaPlayer.seek(time);
+        events.publish(new PlayerEvent.Seeked(from, time.toSeconds()));
+    }
+
+    /**
+     * Returns the player of the current media.
+     *
+     * @return the MediaPlayer, or <i>null</i> before anything was played.
+     */
+    public MediaPlayer getMediaPlayer() {
+        return mediaPlayer;
+    }
+
+    /**
+     * Publishes the current playback state on the event bus.
+     */
+    private void publishState() {
+        events.publish(new PlayerEvent.StateChanged(!playback.isStarted() ? PlayerEvent.State.STOPPED
+                : playback.isPaused() ? PlayerEvent.State.PAUSED : PlayerEvent.State.PLAYING));
+    }
+
+    /**
+     * Returns the playback state, with the number of players it opened.
+     *
+     * @return the state machine of this view.
+     */
+    public PlaybackStateMachine<MediaItem> getPlayback() {
+        return playback;
+    }
+
+    /**
+     * Returns how long the last seek took until the player reported the
+     * new position.
+     *
+     * @return the latency in nanoseconds, or -1 if there was no seek.
+     */
+    public long getLastSeekLatency() {
+        return seekLatency;
+    }
+
+    /**
+     * Returns the track loader, with the number of players it constructed.
+     *
+     * @return the loader, <i>null</i> before <i>setMain()</i>.
+     */
+    public TrackLoader getTrackLoader() {
+        return trackLoader;
+    }
+
     /**
      * Handles the speed of media with give number of speed as double
      * rate of media value.
@@ -439,26 +726,35 @@ public class RazPlayerViewController {
 
     /**
      * Handles the <i>Add</i> button click. Uses <i>FileChooser</i> to populate
-     * the playlist. Starts playback if <i>playing</i> flag is set to
-     * <i>false</i>.
+     * the playlist. Starts playback if stopped.
      */
     @FXML
     public void openRequestHandler() {
         FileChooser fileChooser = new FileChooser();
         List<File> files = fileChooser.showOpenMultipleDialog(main.getPrimaryStage());
         if (files != null) {
-            for (File f : files) {
-                mediaItem = new MediaItem(f.toURI());
-                mediaItem.setTitle(ConversionUtils.convertToFileName((f.toURI())));
-                main.getPlayList().add(mediaItem);
+            enqueue(files);
+        }
+    }
 
-                System.out.println("Added " + f.getName() + " to playlist");
-            }
-            if (!playing) {
-                playAll();
+    /**
+     * Appends the files to the playlist, skipping duplicates. Starts playback
+     * once they are added if stopped.
+     *
+     * @param files the media files to add.
+     */
+    public void enqueue(List<File> files) {
+        if (!files.isEmpty()) {
+            main.getLibrary().importFiles(files).thenAccept(items -> {
+                for (MediaItem item : items) {
+                    Log.info("Added " + item.getTitle() + " to playlist");
+                }
+                if (!playback.isStarted()) {
+                    playAll();
 
-                System.out.println("Playing all items in playlist starting with index #" + current);
-            }
+                    Log.info("Playing all items in playlist starting with index #" + current);
+                }
+            });
         }
     }
 
@@ -468,10 +764,7 @@ public class RazPlayerViewController {
      */
     @FXML
     public void backRequestHandler() {
-        if (mediaPlayer != null /*&& */) {
-            double currentDuration = mediaPlayer.getCurrentTime().toMillis() - 5000.0;
-            mediaPlayer.seek(Duration.millis(currentDuration));
-        }
+        skip(-5000.0, SeekEvent.BUTTON);
     }
 
     /**
@@ -480,9 +773,19 @@ public class RazPlayerViewController {
      */
     @FXML
     public void nextRequestHandler() {
+        skip(5000.0, SeekEvent.BUTTON);
+    }
+
+    /**
+     * Seeks the current media back or forward from its position.
+     *
+     * @param millis the offset in milliseconds.
+     * @param origin what requested the seek.
+     */
+    private void skip(double millis, String origin) {
         if (mediaPlayer != null) {
-            double currentDuration = mediaPlayer.getCurrentTime().toMillis() + 5000.0;
-            mediaPlayer.seek(Duration.millis(currentDuration));
+            double currentDuration = mediaPlayer.getCurrentTime().toMillis() + millis;
+            seekTo(Duration.millis(currentDuration), origin);
         }
     }
 
@@ -525,6 +828,20 @@ public class RazPlayerViewController {
         main.showPlayListView();
     }
 
+    /**
+     * Handles the skipSilenceSection click. Each click reverses the current
+     * skip-silence status. Only music is scanned for silences.
+     */
+    public void skipSilenceHandler() {
+        skipSilence = !skipSilence;
+        skipSilenceLabel.setText(skipSilence ? "On" : "Off");
+        if (skipSilence && mediaPlayer != null && music) {
+            startSilenceScan();
+        } else if (!skipSilence) {
+            stopSilenceScan();
+        }
+    }
+
     /**
      * Handles the <i>Fullscreen</i> button click. Each click reverses the
      * current fullscreen status of the primary stage.
@@ -561,12 +878,9 @@ public class RazPlayerViewController {
     }
 
     /**
-     * Initializes the MediaPlayer and plays every track in the playlist one
-     * after the other, starting from a preset current track. Sets the
-     * <i>playing</i> flag to denote that the initial playback has commenced
-     * <p>
-     * The playing of the next item is achieved via a recursive call. .
-     * </p>
+     * Plays every track in the playlist one after the other, starting from
+     * Main's <i>current</i>. A new player is only opened if the state
+     * machine selects a different item than the one being played.
      */
     private void playAll() {
         //Get the playlist from Main.
@@ -574,48 +888,238 @@ public class RazPlayerViewController {
 
         if (playList.size() != 0) {
             this.current = main.getCurrent().get();
-            this.playing = true;
-            playBtn.setStyle("-fx-graphic: url(" + pauseBtnShape + "); -fx-padding: 2 4 2 4;");
-            media = new Media(playList.get(current).getURI().toString());
-            mediaPlayer = new MediaPlayer(media);
-            mediaPlayer.setVolume(volSlider.getValue());
-            mediaPlayer.seek(Duration.ZERO); //////////////////////////////////////////////////////
-            mediaView.setMediaPlayer(mediaPlayer);
-            mediaView.setFitWidth(main.getPrimaryStage().getScene().getWidth());
-            setRateMedia(rate);           ////////////////////////////////////////////////////////
-
-            for (String s : MUSIC) {
-                if (s.equalsIgnoreCase(ConversionUtils.convertToFileExtension(playList
-                        .get(current).getURI()))) {
-                    this.music = true;
-                    initSpectroscope();
-                    break;
-                } else {
-                    this.music = false;
+            MediaItem item = playList.get(current);
+            if (playback.select(item) == PlaybackStateMachine.Action.OPEN) {
+                openTrack(item, null);
+            }
+        }
+    }
+
+    /**
+     * Disposes the current player and opens an item in a new one. The track
+     * is opened in the background and starts once its player is ready.
+     * Opening again before then cancels the pending track.
+     *
+     * @param item       the item the state machine selected.
+     * @param transition the recording of the track end that led here,
+     *                   committed once the item plays, or <i>null</i>.
+     */
+    private void openTrack(MediaItem item, EndOfMediaEvent transition) {
+        TrackOpenEvent open = new TrackOpenEvent();
+        open.begin();
+        open.uri = item.getURI().toString();
+        this.mediaItem = item;
+        updatePlayButton();
+        releasePlayer();
+
+        trackVolume = 1;
+        trackLoader.supply(() -> main.getLibrary().getTrackVolume(item.getURI())).whenComplete((volume, error) -> {
+            if (error != null) {
+                Log.warn("Could not look up the volume of " + item.getURI(), error);
+            } else if (item == mediaItem) {
+                trackVolume = volume;
+                if (mediaPlayer != null) {
+                    mediaPlayer.setVolume(volSlider.getValue() * trackVolume);
                 }
             }
-            if (!music) {
-                toggleUI(HIDE_UI);
+        });
+        cues = null;
+        subtitleLabel.setText("");
+        trackLoader.loadSubtitles(item.getURI()).thenAccept(loaded -> {
+            if (item == mediaItem) {
+                cues = loaded;
+                showSubtitle(mediaPlayer == null ? Duration.ZERO : mediaPlayer.getCurrentTime());
             }
+        });
+        trackLoader.load(item.getURI()).whenComplete((player, error) -> {
+            open.end();
+            open.outcome = error == null ? TrackOpenEvent.OPENED
+                    : error instanceof CancellationException ? TrackOpenEvent.CANCELLED : TrackOpenEvent.FAILED;
+            open.commit();
+            if (error == null) {
+                startPlayer(player);
+                if (transition != null) {
+                    transition.commit();
+                }
+            } else if (!(error instanceof CancellationException)) {
+                Log.warn("Could not open " + item.getURI(), error);
+                playback.failed();
+                updatePlayButton();
+                events.publish(new PlayerEvent.Error(item.getURI(), error));
+                publishState();
+            }
+        });
+    }
+
+    /**
+     * Stops and disposes the current player, detaching its listeners.
+     */
+    private void releasePlayer() {
+        if (mediaPlayer != null) {
+            mediaPlayer.currentTimeProperty().removeListener(progressListener);
+            mediaPlayer.currentTimeProperty().removeListener(positionListener);
+            mediaPlayer.currentTimeProperty().removeListener(subtitleListener);
+            mediaPlayer.setAudioSpectrumListener(null);
+            mediaPlayer.setOnEndOfMedia(null);
+            mediaPlayer.setOnError(null);
+            mediaPlayer.statusProperty().removeListener(stallListener);
+            stopSilenceScan();
+            mediaView.setMediaPlayer(null);
+            mediaPlayer.dispose();
+            mediaPlayer = null;
+            media = null;
+            seekStarted = 0;
+            seekEvent = null;
+            stall = null;
+        }
+    }
 
+    /**
+     * Starts playback of the current item with its freshly opened player.
+     *
+     * @param player the ready player of <i>mediaItem</i>.
+     */
+    private void startPlayer(MediaPlayer player) {
+        List<MediaItem> playList = main.getPlayList();
+        mediaPlayer = player;
+        media = player.getMedia();
+        mediaPlayer.setVolume(volSlider.getValue() * trackVolume);
+        mediaPlayer.seek(Duration.ZERO); //////////////////////////////////////////////////////
+        mediaView.setMediaPlayer(mediaPlayer);
+        mediaView.setFitWidth(main.getPrimaryStage().getScene().getWidth());
+        setRateMedia(rate);           ////////////////////////////////////////////////////////
+
+        this.music = isMusic(mediaItem);
+        if (music) {
+            initSpectroscope();
+            showCoverArt(mediaItem);
+        } else {
+            spectrumListener = null;
+            coverArt.setVisible(false);
+            coverArt.setImage(null);
+            toggleUI(HIDE_UI);
+        }
+
+        mediaItem.setDuration(media.getDuration());
+        if (playback.opened() == PlaybackStateMachine.Action.PLAY) {
             mediaPlayer.play();
+        }
+        events.publish(new PlayerEvent.TrackChanged(current, mediaItem.getURI()));
+        publishState();
 
-            mediaPlayer.currentTimeProperty().addListener(progressChangedListener());
+        if (!background) {
+            mediaPlayer.currentTimeProperty().addListener(progressListener);
+            mediaPlayer.currentTimeProperty().addListener(subtitleListener);
+        }
+        mediaPlayer.currentTimeProperty().addListener(positionListener);
+        URI uri = mediaItem.getURI();
+        mediaPlayer.setOnError(() -> events.publish(new PlayerEvent.Error(uri, player.getError())));
+        mediaPlayer.statusProperty().addListener(stallListener);
+        if (skipSilence && music) {
+            startSilenceScan();
+        }
 
-            mediaPlayer.setOnEndOfMedia(new Runnable() {
-                @Override
-                public void run() {
+        mediaPlayer.setOnEndOfMedia(new Runnable() {
+            @Override
+            public void run() {
+                if (mediaPlayer != player) {
+                    //Queued before the player was released.
+                    return;
+                }
+                //Move on, wrapping around at the end of the list. The item
+                //is opened before Main's current moves, so the change
+                //listener finds it playing and does not open it again.
+                EndOfMediaEvent transition = new EndOfMediaEvent();
+                transition.begin();
+                current = (current + 1) % playList.size();
+                MediaItem next = playList.get(current);
+                transition.ended = mediaItem.getURI().toString();
+                transition.next = next.getURI().toString();
+                if (playback.ended(next) == PlaybackStateMachine.Action.REWIND) {
+                    //A single item loops in the player it has.
+                    skippedTo = -1;
+                    mediaPlayer.seek(Duration.ZERO);
+                    mediaPlayer.play();
+                    events.publish(new PlayerEvent.TrackChanged(current, mediaItem.getURI()));
+                    transition.rewound = true;
+                    transition.commit();
+                } else {
                     mediaPlayer.stop();
-                    current++;
-                    if (current == playList.size()) {
-                        current = 0;
-                        playRequestHandler();
-                    }
-                    main.getCurrent().set(current);
-                    playAll();
+                    openTrack(next, transition);
                 }
-            });
+                main.getCurrent().set(current);
+            }
+        });
+    }
+
+    /**
+     * Shows the embedded cover art of a music item in place of the video
+     * once its thumbnail is available. Tracks of one album share the same
+     * image, so the view only changes when the art does.
+     *
+     * @param item the music item.
+     */
+    private void showCoverArt(MediaItem item) {
+        main.getLibrary().getCoverArt(item.getURI()).thenAccept(image -> Platform.runLater(() -> {
+            if (item == mediaItem && music) {
+                if (coverArt.getImage() != image) {
+                    coverArt.setImage(image);
+                }
+                coverArt.setVisible(image != null);
+            }
+        }));
+    }
+
+    /**
+     * Starts scanning the current item for silences and skipping them as
+     * they are found. The scan runs far ahead of playback.
+     */
+    private void startSilenceScan() {
+        stopSilenceScan();
+        MediaItem item = mediaItem;
+        silenceScan = main.getLibrary().scanSilence(item.getURI(), spans -> Platform.runLater(() -> {
+            if (item == mediaItem && skipSilence) {
+                silence = spans;
+            }
+        }));
+        if (silenceScan != null) {
+            mediaPlayer.currentTimeProperty().addListener(silenceListener);
+        }
+    }
+
+    /**
+     * Cancels the silence scan of the current item and stops skipping.
+     */
+    private void stopSilenceScan() {
+        if (silenceScan != null) {
+            silenceScan.cancel(true);
+            silenceScan = null;
+        }
+        if (mediaPlayer != null) {
+            mediaPlayer.currentTimeProperty().removeListener(silenceListener);
         }
+        silence = null;
+        skippedTo = -1;
+    }
+
+    /**
+     * Decides whether a media item is audio only. Uses the media type detected
+     * on import, falling back to the file extension for items without one.
+     *
+     * @param item the media item.
+     * @return <i>true</i> if the item has no video.
+     */
+    private boolean isMusic(MediaItem item) {
+        if (item.getMediaType() != null && item.getMediaType() != MediaType.UNKNOWN) {
+            return item.getMediaType().isAudio();
+        }
+        String extension = ConversionUtils.convertToFileExtension(item.getURI());
+        for (String s : MUSIC) {
+            if (s.equalsIgnoreCase(extension)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -634,7 +1138,7 @@ public class RazPlayerViewController {
             bars[i].setLayoutX(i + 3);
             spectrumBox.getChildren().add(bars[i]);
         }
-        mediaPlayer.setAudioSpectrumListener(new AudioSpectrumListener() {
+        spectrumListener = new AudioSpectrumListener() {
 
             @Override
             public void spectrumDataUpdate(double timestamp, double duration, float[] magnitudes, float[] phases) {
@@ -645,7 +1149,44 @@ public class RazPlayerViewController {
                 }
             }
 
-        });
+        };
+        //No listener means no spectrum analysis at all while in the background.
+        if (!background) {
+            mediaPlayer.setAudioSpectrumListener(spectrumListener);
+        }
+    }
+
+    /**
+     * Switches between foreground and background mode. In the background
+     * the progress, spectrum and fade listeners are detached; on return they
+     * are attached again and the UI is brought up to date in one step.
+     *
+     * @param background <i>true</i> if the window is no longer visible.
+     */
+    private void setBackground(boolean background) {
+        if (this.background == background) {
+            return;
+        }
+        this.background = background;
+        if (background) {
+            if (timeLine != null) {
+                timeLine.stop();
+            }
+            if (mediaPlayer != null) {
+                mediaPlayer.currentTimeProperty().removeListener(progressListener);
+                mediaPlayer.currentTimeProperty().removeListener(subtitleListener);
+                mediaPlayer.setAudioSpectrumListener(null);
+            }
+        } else if (mediaPlayer != null) {
+            mediaPlayer.currentTimeProperty().addListener(progressListener);
+            mediaPlayer.currentTimeProperty().addListener(subtitleListener);
+            mediaPlayer.setAudioSpectrumListener(spectrumListener);
+            progressListener.changed(mediaPlayer.currentTimeProperty(), null, mediaPlayer.getCurrentTime());
+            showSubtitle(mediaPlayer.getCurrentTime());
+            if (showUI) {
+                toggleUI(HIDE_UI);
+            }
+        }
     }
 
     /**
@@ -655,7 +1196,7 @@ public class RazPlayerViewController {
      * @param show the boolean. True fades in controls, false fades out.
      */
     private void toggleUI(boolean show) {
-        if (!music && !showSetting && !showSpeed) {
+        if (!music && !showSetting && !showSpeed && !background) {
             if (show) {
                 showUI = SHOW_UI;
                 FadeTransition fadeTransition = new FadeTransition(Duration.millis(200), userControls);
@@ -686,6 +1227,9 @@ public class RazPlayerViewController {
      */
     public void setMain(Main main) {
         this.main = main;
+        this.trackLoader = new TrackLoader(main::getMediaSource);
+        this.events = main.getEvents();
+        this.soundBoard = new SoundBoard(main::getMediaSource);
 
         //Calling a listener for scene size change
         this.main.getPrimaryStage().getScene().widthProperty().addListener(sceneSizeChangedListener());
@@ -695,12 +1239,36 @@ public class RazPlayerViewController {
 
         //Listens for mouse movement
         this.main.getPrimaryStage().getScene().setOnMouseMoved(sceneMouseMovedListener());
+
+        //Detaches UI updates while the window is minimized or hidden.
+        ChangeListener<Boolean> visibilityListener = (observable, oldValue, newValue) -> setBackground(
+                this.main.getPrimaryStage().isIconified() || !this.main.getPrimaryStage().isShowing());
+        this.main.getPrimaryStage().iconifiedProperty().addListener(visibilityListener);
+        this.main.getPrimaryStage().showingProperty().addListener(visibilityListener);
+    }
+
+    /**
+     * Invoked by the main app on exit. Disposes the player and stops the
+     * track loader and soundboard threads, disposing a player still being
+     * opened and the soundboard clips. Must be called on the JavaFX
+     * application thread.
+     */
+    public void dispose() {
+        releasePlayer();
+        if (trackLoader != null) {
+            trackLoader.close();
+        }
+        if (soundBoard != null) {
+            soundBoard.close();
+        }
     }
 
     /**
      * Listens to changes in Main's <i>current</i>. On change, stops playback of
      * the currently playing item and initiates playback starting with the new
-     * index of <i>current</i>.
+     * index of <i>current</i>. A change right after a switch only takes
+     * effect once changes stop for <i>SWITCH_QUIET_TIME</i>, so stepping
+     * through the playlist opens the final track only.
      *
      * @return {@code ChangeListener<Number>}
      */
@@ -710,15 +1278,49 @@ public class RazPlayerViewController {
             public void changed(
                     ObservableValue<? extends Number> observableValue,
                     Number oldSceneWidth, Number newSceneWidth) {
-                if (mediaPlayer != null) {
-                    mediaPlayer.stop();
+                if (isCurrentPlaying() || (!playback.isStarted() && main.getLibrary().isRemapping())) {
+                    //The playlist changed around the playing or selected
+                    //item, or the selection came back to it. Keep playing
+                    //it, or stay stopped.
+                    current = main.getCurrent().get();
+                    switchPending = false;
+                    return;
+                }
+                if (switchDelay.getStatus() == Animation.Status.RUNNING) {
+                    switchPending = true;
+                } else {
+                    switchTrack();
                 }
-                current = main.getCurrent().get();
-                playAll();
+                switchDelay.playFromStart();
             }
         };
     }
 
+    /**
+     * Returns whether Main's <i>current</i> points at the item being played.
+     *
+     * @return <i>true</i> if no switch is needed.
+     */
+    private boolean isCurrentPlaying() {
+        int index = main.getCurrent().get();
+        return playback.isStarted() && index >= 0 && index < main.getPlayList().size()
+                && main.getPlayList().get(index) == playback.getItem();
+    }
+
+    /**
+     * Stops the playing item and starts playback at Main's <i>current</i>.
+     */
+    private void switchTrack() {
+        if (isCurrentPlaying()) {
+            return;
+        }
+        if (mediaPlayer != null) {
+            mediaPlayer.stop();
+        }
+        current = main.getCurrent().get();
+        playAll();
+    }
+
     /**
      * Listens to changes in Scene size. On change, assigns new values to
      * MediaView's FitWidth property, thus resizing the viewport.
@@ -752,7 +1354,7 @@ public class RazPlayerViewController {
                 if (mediaPlayer != null) {
                     mediaPlayer.setMute(false);
                     muted = false;
-                    mediaPlayer.setVolume(newValue.doubleValue());
+                    mediaPlayer.setVolume(newValue.doubleValue() * trackVolume);
                 }
                 if (newValue.doubleValue() > 0.6) {
                     volBtn.setStyle("-fx-graphic: url(" + volBtnShape + "); -fx-padding: 2 4 2 4;");
@@ -788,6 +1390,110 @@ public class RazPlayerViewController {
         return progressChangeListener;
     }
 
+    /**
+     * Listens to changes in media playback progress, including seeks. On
+     * change, shows the subtitle cues active at the new position.
+     *
+     * @return {@code ChangeListener<Duration>}
+     */
+    private ChangeListener<Duration> subtitleChangedListener() {
+        return new ChangeListener<Duration>() {
+            @Override
+            public void changed(
+                    ObservableValue<? extends Duration> observableValue,
+                    Duration oldValue, Duration newValue) {
+                showSubtitle(newValue);
+            }
+        };
+    }
+
+    /**
+     * Listens to changes in media playback progress. On entering a silent
+     * span, seeks once to its end.
+     *
+     * @return {@code ChangeListener<Duration>}
+     */
+    private ChangeListener<Duration> silenceChangedListener() {
+        return new ChangeListener<Duration>() {
+            @Override
+            public void changed(
+                    ObservableValue<? extends Duration> observableValue,
+                    Duration oldValue, Duration newValue) {
+                long target = silence == null ? -1 : silence.skipTarget(newValue.toMillis());
+                //Positions reported before the seek lands must not seek again.
+                if (target >= 0 && target != skippedTo) {
+                    skippedTo = target;
+                    seekTo(Duration.millis(target), SeekEvent.SILENCE);
+                }
+            }
+        };
+    }
+
+    /**
+     * Shows the subtitle text for a position. The label is only touched when
+     * the text changes, which the cue index reports by identity.
+     *
+     * @param time the playback position.
+     */
+    private void showSubtitle(Duration time) {
+        String text = cues == null ? "" : cues.textAt(time.toMillis());
+        if (text != subtitleLabel.getText()) {
+            subtitleLabel.setText(text);
+        }
+    }
+
+    /**
+     * Listens to changes in media playback progress. On change, publishes the
+     * position to the control endpoint and times a pending seek once the
+     * position reaches its target. Stays attached in the background.
+     *
+     * @return {@code ChangeListener<Duration>}
+     */
+    private ChangeListener<Duration> positionChangedListener() {
+        return new ChangeListener<Duration>() {
+            @Override
+            public void changed(
+                    ObservableValue<? extends Duration> observableValue,
+                    Duration oldValue, Duration newValue) {
+                if (seekStarted != 0 && Math.abs(newValue.toMillis() - seekTarget) < SEEK_TOLERANCE) {
+                    seekLatency = System.nanoTime() - seekStarted;
+                    seekStarted = 0;
+                    seekEvent.commit();
+                    seekEvent = null;
+                }
+                if (events.hasSubscribers(PlayerEvent.PositionTick.class)) {
+                    events.publish(new PlayerEvent.PositionTick(newValue.toSeconds(),
+                            mediaPlayer.getTotalDuration().toSeconds()));
+                }
+            }
+        };
+    }
+
+    /**
+     * Listens to changes in the player status. Records the time from a stall
+     * until the player leaves the stalled status.
+     *
+     * @return {@code ChangeListener<MediaPlayer.Status>}
+     */
+    private ChangeListener<MediaPlayer.Status> stallChangedListener() {
+        return new ChangeListener<MediaPlayer.Status>() {
+            @Override
+            public void changed(
+                    ObservableValue<? extends MediaPlayer.Status> observableValue,
+                    MediaPlayer.Status oldValue, MediaPlayer.Status newValue) {
+                if (newValue == MediaPlayer.Status.STALLED) {
+                    stall = new StallEvent();
+                    stall.begin();
+                    stall.uri = mediaItem.getURI().toString();
+                    stall.position = (long) mediaPlayer.getCurrentTime().toMillis();
+                } else if (stall != null) {
+                    stall.commit();
+                    stall = null;
+                }
+            }
+        };
+    }
+
     /**
      * Listens for left mouse button click action on the speed section. Reacts
      * by calling settingRequestHandler.
@@ -860,6 +1566,40 @@ public class RazPlayerViewController {
         };
     }
 
+    /**
+     * Listens for left mouse button click action on the skip silence section.
+     * Reacts by calling skipSilenceHandler.
+     *
+     * @return {@code EventHandler<MouseEvent>}
+     */
+    private EventHandler<MouseEvent> skipSilenceSectionMouseListener() {
+        return new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent event) {
+                if (event.getEventType() == MouseEvent.MOUSE_CLICKED) {
+                    skipSilenceHandler();
+                }
+            }
+        };
+    }
+
+    /**
+     * Listens for touch action on the skip silence section. Reacts by calling
+     * skipSilenceHandler.
+     *
+     * @return {@code EventHandler<TouchEvent>}
+     */
+    private EventHandler<TouchEvent> skipSilenceSectionTouchListener() {
+        return new EventHandler<TouchEvent>() {
+            @Override
+            public void handle(TouchEvent event) {
+                if (event.getEventType() == TouchEvent.TOUCH_PRESSED) {
+                    skipSilenceHandler();
+                }
+            }
+        };
+    }
+
     /**
      * Listens for left mouse button click action on the number of speed section. Reacts
      * by calling settingRequestHandler.
@@ -912,25 +1652,116 @@ public class RazPlayerViewController {
             @Override
             public void handle(KeyEvent event) {
                 KeyCode keyCode = event.getCode();
-                if (keyCode == KeyCode.O){
+                int pad = soundBoardMode ? padIndex(keyCode) : -1;
+                if (pad >= 0) {
+                    soundBoard.trigger(pad, volSlider.getValue());
+                    event.consume();
+                } else if (keyCode == KeyCode.O){
                     openRequestHandler();
                 } else if (keyCode == KeyCode.K || keyCode == KeyCode.SPACE) {
                     playRequestHandler();
                 } else if (keyCode == KeyCode.J || keyCode == KeyCode.LEFT || keyCode == KeyCode.KP_LEFT){
-                    backRequestHandler();
+                    skip(-5000.0, SeekEvent.KEYBOARD);
                 } else if (keyCode == KeyCode.L || keyCode == KeyCode.RIGHT || keyCode == KeyCode.KP_RIGHT){
-                    nextRequestHandler();
+                    skip(5000.0, SeekEvent.KEYBOARD);
                 } else if (keyCode == KeyCode.M){
                     muteRequestHandler();
                 } else if (keyCode == KeyCode.S){
                     settingRequestHandler();
                 } else if (keyCode == KeyCode.F){
                     fullScreenRequestHandler();
+                } else if (keyCode == KeyCode.D){
+                    diagnosticsRequestHandler();
+                } else if (keyCode == KeyCode.B){
+                    soundBoardRequestHandler();
                 }
             }
         };
     }
 
+    /**
+     * Shows or hides the diagnostics overlay in the top left corner of the
+     * player window.
+     */
+    public void diagnosticsRequestHandler() {
+        if (diagnostics == null) {
+            diagnostics = new DiagnosticsOverlay(this);
+            AnchorPane.setTopAnchor(diagnostics, 8.0);
+            AnchorPane.setLeftAnchor(diagnostics, 8.0);
+            playerWindow.getChildren().add(diagnostics);
+        }
+        diagnostics.toggle();
+    }
+
+    /**
+     * Turns soundboard mode on or off. On, playback pauses and the first
+     * short items of the playlist are preloaded onto pads, played by the
+     * number keys or the pad buttons; triggers overlap rather than restart.
+     * Off, the pads are silenced and hidden.
+     */
+    public void soundBoardRequestHandler() {
+        soundBoardMode = !soundBoardMode;
+        if (!soundBoardMode) {
+            soundBoard.stopAll();
+            soundBoardPads.setVisible(false);
+            return;
+        }
+        pause();
+        if (soundBoardPads == null) {
+            soundBoardPads = new TilePane(4, 4);
+            soundBoardPads.setPrefColumns(5);
+            soundBoardPads.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 6;");
+            for (int i = 0; i < SoundBoard.PADS; i++) {
+                int pad = i;
+                Button button = new Button();
+                button.setPrefSize(80, 40);
+                button.setStyle("-fx-font-size: 9;");
+                // Pressing, not clicking, plays: a click waits for the release.
+                button.setOnMousePressed(event -> soundBoard.trigger(pad, volSlider.getValue()));
+                button.setOnTouchPressed(event -> soundBoard.trigger(pad, volSlider.getValue()));
+                soundBoardPads.getChildren().add(button);
+            }
+            AnchorPane.setTopAnchor(soundBoardPads, 8.0);
+            AnchorPane.setRightAnchor(soundBoardPads, 8.0);
+            playerWindow.getChildren().add(soundBoardPads);
+        }
+        soundBoardPads.setVisible(true);
+        soundBoard.load(main.getPlayList()).thenAccept(count -> {
+            for (int i = 0; i < SoundBoard.PADS; i++) {
+                Button button = (Button) soundBoardPads.getChildren().get(i);
+                MediaItem item = soundBoard.getItem(i);
+                button.setText((i + 1) % 10 + " " + (item == null ? "" : item.getTitle()));
+                button.setDisable(item == null);
+            }
+            Log.info("Soundboard loaded " + count + " pads");
+        });
+    }
+
+    /**
+     * Returns the soundboard of this view.
+     *
+     * @return the soundboard, <i>null</i> before <i>setMain()</i>.
+     */
+    public SoundBoard getSoundBoard() {
+        return soundBoard;
+    }
+
+    /**
+     * Returns the pad a number key triggers: 1 to 9 for the first nine, 0
+     * for the tenth.
+     *
+     * @param keyCode the key.
+     * @return the pad index, or -1 for other keys.
+     */
+    private static int padIndex(KeyCode keyCode) {
+        if (keyCode.isDigitKey()) {
+            String name = keyCode.getName();
+            int digit = name.charAt(name.length() - 1) - '0';
+            return digit == 0 ? 9 : digit - 1;
+        }
+        return -1;
+    }
+
     /**
      * Listens for left mouse button click or drag action on the progress bar. Reacts
      * by updating the media position index.
@@ -945,13 +1776,15 @@ public class RazPlayerViewController {
                     event.consume();
                 } else if (event.getEventType() == MouseEvent.MOUSE_DRAGGED
                         || event.getEventType() == MouseEvent.MOUSE_CLICKED) {
-                    mediaPlayer.seek(mediaPlayer.getTotalDuration().multiply(
-                            event.getX() / progBar.getWidth()));
-
-                    //Console printout for easier testing.
-                    System.out.println("Setting media progress to "
-                            + (int) ((event.getX()+5) / progBar.getWidth() * 100)
-                            + " %");
+                    seekTo(mediaPlayer.getTotalDuration().multiply(
+                            event.getX() / progBar.getWidth()), SeekEvent.PROGRESS_BAR);
+
+                    //Debug log for easier testing.
+                    if (Log.isEnabled(Log.Level.DEBUG)) {
+                        Log.debug("Setting media progress to "
+                                + (int) ((event.getX()+5) / progBar.getWidth() * 100)
+                                + " %");
+                    }
                 }
             }
         };
@@ -971,13 +1804,15 @@ public class RazPlayerViewController {
                     event.consume();
                 } else if (event.getEventType() == TouchEvent.TOUCH_MOVED
                         || event.getEventType() == TouchEvent.TOUCH_PRESSED) {
-                    mediaPlayer.seek(mediaPlayer.getTotalDuration().multiply(
-                            event.getTouchPoint().getX() / progBar.getWidth()));
-
-                    //Console printout for easier testing.
-                    System.out.println("Setting media progress to "
-                            + (int) ((event.getTouchPoint().getX()+5) / progBar.getWidth() * 100)
-                            + " %");
+                    seekTo(mediaPlayer.getTotalDuration().multiply(
+                            event.getTouchPoint().getX() / progBar.getWidth()), SeekEvent.PROGRESS_BAR);
+
+                    //Debug log for easier testing.
+                    if (Log.isEnabled(Log.Level.DEBUG)) {
+                        Log.debug("Setting media progress to "
+                                + (int) ((event.getTouchPoint().getX()+5) / progBar.getWidth() * 100)
+                                + " %");
+                    }
                 }
             }
         };
@@ -0,0 +1,156 @@
+package ir.razplayer.view;
+
+import ir.razplayer.model.MediaItem;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.fxml.FXML;
+import javafx.geometry.Bounds;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.layout.TilePane;
+import javafx.util.Duration;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The controller for the VideoWallView. Plays several playlists at once in
+ * tiled MediaViews. One shared timeline refreshes the progress of all tiles,
+ * tiles ask for their first players one after the other, and tiles scrolled
+ * out of view stop rendering.
+ */
+public class VideoWallController {
+
+    /**
+     * The interval of the shared progress tick.
+     */
+    private static final Duration TICK = Duration.millis(250);
+
+    /**
+     * The delay between the first load requests of two tiles, to spread the
+     * opening I/O. Players are built on the tiles' loader threads.
+     */
+    private static final Duration STAGGER = Duration.millis(400);
+
+    /**
+     * The smallest tile width in pixels. More columns scroll instead.
+     */
+    private static final double MIN_TILE_WIDTH = 240;
+
+    @FXML
+    private ScrollPane wallScroll;
+
+    @FXML
+    private TilePane wallPane;
+
+    /**
+     * The tiles in playlist order.
+     */
+    private final List<WallTile> tiles = new ArrayList<>();
+
+    /**
+     * The shared scheduler refreshing the UI of all tiles.
+     */
+    private Timeline ticker;
+
+    /**
+     * The timeline asking the tiles to load one after the other.
+     */
+    private Timeline starter;
+
+    /**
+     * The number of tile columns.
+     */
+    private int columns = 1;
+
+    /**
+     * Initializes the controller class. Is called automatically after the fxml
+     * file has been loaded.
+     */
+    @FXML
+    private void initialize() {
+        ticker = new Timeline(new KeyFrame(TICK, event -> tick()));
+        ticker.setCycleCount(Animation.INDEFINITE);
+
+        wallScroll.viewportBoundsProperty().addListener((observable, oldValue, newValue) -> layoutTiles());
+        wallScroll.vvalueProperty().addListener((observable, oldValue, newValue) -> updateVisibility());
+    }
+
+    /**
+     * Builds one tile per playlist and starts them staggered.
+     *
+     * @param playLists the playlists, one per tile.
+     * @param source    resolves a media URI to a {@code Media} source.
+     */
+    public void setPlayLists(List<List<MediaItem>> playLists, Function<URI, String> source) {
+        dispose();
+        wallPane.getChildren().clear();
+        columns = Math.max(1, (int) Math.ceil(Math.sqrt(playLists.size())));
+        wallPane.setPrefColumns(columns);
+
+        starter = new Timeline();
+        for (List<MediaItem> playList : playLists) {
+            WallTile tile = new WallTile(playList, source);
+            starter.getKeyFrames().add(new KeyFrame(STAGGER.multiply(tiles.size()), event -> tile.start()));
+            tiles.add(tile);
+            wallPane.getChildren().add(tile);
+        }
+        layoutTiles();
+        starter.play();
+        ticker.play();
+    }
+
+    /**
+     * Stops all players and the shared scheduler.
+     */
+    public void dispose() {
+        if (starter != null) {
+            starter.stop();
+        }
+        ticker.stop();
+        for (WallTile tile : tiles) {
+            tile.dispose();
+        }
+        tiles.clear();
+    }
+
+    /**
+     * Sizes the tiles so that the columns fill the viewport width.
+     */
+    private void layoutTiles() {
+        double width = Math.max(MIN_TILE_WIDTH, wallScroll.getViewportBounds().getWidth() / columns);
+        double height = width * 9 / 16;
+        wallPane.setPrefTileWidth(width);
+        wallPane.setPrefTileHeight(height);
+        for (WallTile tile : tiles) {
+            tile.setTileSize(width, height);
+        }
+        updateVisibility();
+    }
+
+    /**
+     * Turns off rendering for tiles outside the viewport.
+     */
+    private void updateVisibility() {
+        Bounds viewport = wallScroll.getViewportBounds();
+        double contentHeight = wallPane.getLayoutBounds().getHeight();
+        double top = Math.max(0, contentHeight - viewport.getHeight()) * wallScroll.getVvalue();
+        double bottom = top + viewport.getHeight();
+        for (WallTile tile : tiles) {
+            Bounds bounds = tile.getBoundsInParent();
+            tile.setOnScreen(bounds.getMaxY() > top && bounds.getMinY() < bottom);
+        }
+    }
+
+    /**
+     * Refreshes the visibility and progress of all tiles.
+     */
+    private void tick() {
+        updateVisibility();
+        for (WallTile tile : tiles) {
+            tile.tick();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package ir.razplayer.view;
+
+import ir.razplayer.model.MediaItem;
+import ir.razplayer.player.TrackLoader;
+import ir.razplayer.util.Log;
+import javafx.application.Platform;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.StackPane;
+import javafx.scene.media.MediaPlayer;
+import javafx.scene.media.MediaView;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+
+/**
+ * One tile of the video wall. Plays its own playlist in a loop. Players are
+ * opened by the tile's own {@link TrackLoader}, off the JavaFX application
+ * thread. Its progress bar is not bound to the player; it is refreshed by
+ * the wall's shared tick.
+ */
+final class WallTile extends StackPane {
+
+    /**
+     * The playlist of this tile.
+     */
+    private final List<MediaItem> playList;
+
+    /**
+     * Opens the players of this tile.
+     */
+    private final TrackLoader loader;
+
+    private final MediaView mediaView = new MediaView();
+
+    private final ProgressBar progBar = new ProgressBar(0);
+
+    private final Label titleLabel = new Label();
+
+    /**
+     * The player of the current item. <i>null</i> before the tile is started.
+     */
+    private MediaPlayer mediaPlayer;
+
+    /**
+     * Whether the tile's sound is off. Kept apart from the player, which is
+     * replaced on every item.
+     */
+    private boolean muted = true;
+
+    /**
+     * The playlist index of the current item.
+     */
+    private int current;
+
+    /**
+     * The items that failed in a row since one last played. The tile gives
+     * up once every item has failed.
+     */
+    private int failures;
+
+    /**
+     * Set once the wall is closed, so a pending move to the next item does
+     * not open another player.
+     */
+    private boolean disposed;
+
+    /**
+     * The visibility flag. Off-screen tiles do not render or refresh.
+     */
+    private boolean onScreen = true;
+
+    /**
+     * Creates a tile. Playback starts with {@link #start()}.
+     *
+     * @param playList the items to play in a loop.
+     * @param source   resolves a media URI to a {@code Media} source.
+     */
+    WallTile(List<MediaItem> playList, Function<URI, String> source) {
+        this.playList = playList;
+        this.loader = new TrackLoader(source);
+
+        // Scaling quality matters little at tile size and costs per frame.
+        mediaView.setSmooth(false);
+        mediaView.setPreserveRatio(true);
+        progBar.setMaxWidth(Double.MAX_VALUE);
+        progBar.setPrefHeight(4);
+        StackPane.setAlignment(progBar, Pos.BOTTOM_CENTER);
+        StackPane.setAlignment(titleLabel, Pos.TOP_LEFT);
+        getStyleClass().add("background");
+        getChildren().addAll(mediaView, titleLabel, progBar);
+
+        // All tiles start muted, a click toggles the sound of one.
+        setOnMouseClicked(event -> {
+            muted = !muted;
+            if (mediaPlayer != null) {
+                mediaPlayer.setMute(muted);
+            }
+        });
+    }
+
+    /**
+     * Starts opening the first item. Returns at once; the item plays when
+     * its player is ready.
+     */
+    void start() {
+        if (!playList.isEmpty()) {
+            open(0);
+        }
+    }
+
+    /**
+     * Sets the tile size.
+     *
+     * @param width  the width in pixels.
+     * @param height the height in pixels.
+     */
+    void setTileSize(double width, double height) {
+        setPrefSize(width, height);
+        setMinSize(width, height);
+        setMaxSize(width, height);
+        mediaView.setFitWidth(width);
+        mediaView.setFitHeight(height);
+    }
+
+    /**
+     * Shows or hides the video. A hidden MediaView keeps playing but is not
+     * rendered.
+     *
+     * @param onScreen <i>true</i> if the tile is inside the viewport.
+     */
+    void setOnScreen(boolean onScreen) {
+        if (this.onScreen != onScreen) {
+            this.onScreen = onScreen;
+            mediaView.setVisible(onScreen);
+        }
+    }
+
+    /**
+     * Refreshes the progress bar. Called by the wall's shared scheduler.
+     */
+    void tick() {
+        if (onScreen && mediaPlayer != null) {
+            double total = mediaPlayer.getTotalDuration().toMillis();
+            if (total > 0) {
+                progBar.setProgress(mediaPlayer.getCurrentTime().toMillis() / total);
+            }
+        }
+    }
+
+    /**
+     * Stops playback, releases the player and cancels a pending open.
+     */
+    void dispose() {
+        disposed = true;
+        loader.close();
+        release();
+    }
+
+    private void release() {
+        if (mediaPlayer != null) {
+            mediaPlayer.dispose();
+            mediaPlayer = null;
+        }
+    }
+
+    private void open(int index) {
+        if (disposed) {
+            return;
+        }
+        release();
+        current = index;
+        MediaItem item = playList.get(index);
+        titleLabel.setText(item.getTitle());
+        loader.load(item.getURI()).whenComplete((player, error) -> {
+            if (error == null) {
+                play(player, item);
+            } else if (!(error instanceof CancellationException)) {
+                Log.warn("Wall tile cannot open " + item.getURI(), error);
+                failed();
+            }
+        });
+    }
+
+    private void play(MediaPlayer player, MediaItem item) {
+        mediaPlayer = player;
+        mediaPlayer.setMute(muted);
+        mediaPlayer.setOnPlaying(() -> failures = 0);
+        mediaPlayer.setOnEndOfMedia(this::next);
+        mediaPlayer.setOnError(() -> {
+            Log.warn("Wall tile failed on " + item.getURI(), player.getError());
+            failed();
+        });
+        mediaView.setMediaPlayer(mediaPlayer);
+        mediaPlayer.play();
+    }
+
+    private void next() {
+        open((current + 1) % playList.size());
+    }
+
+    /**
+     * Moves on to the next item after a failure, unless every item has
+     * failed. The next item is opened on a later pulse, so a run of
+     * unopenable items does not recurse.
+     */
+    private void failed() {
+        failures++;
+        if (failures < playList.size()) {
+            Platform.runLater(this::next);
+        } else {
+            Log.warn("Wall tile stopped, none of its " + playList.size() + " items can be played");
+        }
+    }
+}
@@ -10,6 +10,10 @@ module ir.razplayer {
     requires org.kordamp.bootstrapfx.core;
     requires eu.hansolo.tilesfx;
     requires javafx.media;
+    requires java.net.http;
+    requires jdk.httpserver;
+    requires java.management;
+    requires jdk.jfr;
 
     opens ir.razplayer to javafx.fxml;
     exports ir.razplayer;
@@ -0,0 +1,421 @@
+package ir.razplayer.bench;
+
+import ir.razplayer.Main;
+import ir.razplayer.player.SoundBoard;
+import ir.razplayer.view.RazPlayerViewController;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.event.Event;
+import javafx.scene.Node;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.media.MediaPlayer;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Measures user-facing latencies of the real application: open to first
+ * frame, pause, play, seek, next track and opening the playlist view. Runs
+ * {@link Main} with its FXML views and drives the controller the way the
+ * UI handlers do, then prints percentiles per scenario as JSON.
+ * <p>
+ * Soundboard mode is measured from a number key press on the player window
+ * until the media engine plays the clip, and for retriggers of a sounding
+ * pad until a second instance plays alongside the first; the output latency
+ * of the audio device is not visible from Java and comes on top.
+ * </p>
+ * <p>
+ * Headless runs use Monocle ({@code -Dbench.headless=true}). The
+ * {@code bench} Maven profile runs it that way on the test class path with
+ * {@code mvn -Pbench -DskipTests verify} and writes
+ * {@code target/bench-results.json}. The iteration count is set with
+ * {@code -Dbench.iterations} and the result file with {@code -Dbench.out}.
+ * Without media file arguments, short WAV files are generated. Media needs
+ * an audio output even when headless. On Linux without a sound card an ALSA
+ * {@code null} default device lets it run, but it takes samples as fast as
+ * they come, so tracks play ahead of the wall clock and can end during a
+ * step; feed it through a {@code file} plugin into a pipe that is read at
+ * the audio byte rate to keep playback in real time. A stream stopped
+ * through such a pipe still writes out what it had buffered before it is
+ * disposed, where a sound card drops it, so soundboard triggers are measured
+ * after the stopped instances are gone.
+ * </p>
+ */
+public final class LatencyBenchmark {
+
+    /**
+     * The longest wait for a single step.
+     */
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * The running application, set once started.
+     */
+    private static final CompletableFuture<App> APP = new CompletableFuture<>();
+
+    /**
+     * The clip players JavaFX keeps while clips play, their lock, and the
+     * native player and its state getter of each. {@code AudioClip.isPlaying()}
+     * turns true within {@code play()}, before the scheduler thread has
+     * started anything, so clips are observed through these instead.
+     */
+    private static final List<?> CLIP_PLAYERS;
+
+    private static final Lock CLIP_PLAYERS_LOCK;
+
+    private static final Field CLIP_MEDIA_PLAYER;
+
+    private static final Method GET_STATE;
+
+    static {
+        try {
+            Class<?> type = Class.forName("com.sun.media.jfxmediaimpl.NativeMediaAudioClipPlayer");
+            Field players = type.getDeclaredField("activePlayers");
+            Field lock = type.getDeclaredField("playerListLock");
+            CLIP_MEDIA_PLAYER = type.getDeclaredField("mediaPlayer");
+            players.setAccessible(true);
+            lock.setAccessible(true);
+            CLIP_MEDIA_PLAYER.setAccessible(true);
+            CLIP_PLAYERS = (List<?>) players.get(null);
+            CLIP_PLAYERS_LOCK = (Lock) lock.get(null);
+            GET_STATE = Class.forName("com.sun.media.jfxmedia.MediaPlayer").getMethod("getState");
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private LatencyBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args media files to use instead of generated ones.
+     */
+    public static void main(String[] args) {
+        try {
+            benchmark(args);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void benchmark(String[] args) throws Exception {
+        if (Boolean.parseBoolean(System.getProperty("bench.headless", "false"))) {
+            useMonocle();
+        }
+        int iterations = Integer.getInteger("bench.iterations", 20);
+
+        List<File> files = new ArrayList<>();
+        for (String arg : args) {
+            files.add(new File(arg).getAbsoluteFile());
+        }
+        if (files.isEmpty()) {
+            Path dir = Files.createTempDirectory("razplayer-bench");
+            for (int i = 0; i < iterations + 2; i++) {
+                files.add(writeTone(dir.resolve("tone" + i + ".wav"), 220 + 20 * i, 4).toFile());
+            }
+        }
+
+        Thread launcher = new Thread(() -> Application.launch(App.class, "--new-instance"), "bench-launcher");
+        launcher.setDaemon(true);
+        launcher.start();
+        App app = APP.get(30, TimeUnit.SECONDS);
+
+        Map<String, List<Double>> results = new LinkedHashMap<>();
+        app.run(files, iterations, results);
+
+        String json = toJson(results);
+        System.out.println(json);
+        String out = System.getProperty("bench.out");
+        if (out != null) {
+            Files.write(Paths.get(out), json.getBytes(StandardCharsets.UTF_8));
+        }
+        Platform.exit();
+    }
+
+    /**
+     * Selects the headless Monocle platform with software rendering. Must be
+     * called before JavaFX starts.
+     */
+    static void useMonocle() {
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+    }
+
+    /**
+     * The application under test: the real {@link Main}, scripted once its
+     * stage is up. Kept apart from the launcher class, because the java
+     * launcher refuses an {@link Application} main class when JavaFX is on
+     * the class path.
+     */
+    public static final class App extends Main {
+
+        @Override
+        public void start(Stage primaryStage) {
+            super.start(primaryStage);
+            APP.complete(this);
+        }
+
+        private void run(List<File> files, int iterations, Map<String, List<Double>> results) throws Exception {
+            RazPlayerViewController controller = getRazPlayerViewController();
+
+            // Warm up with the first file; the first open also pays class loading.
+            File first = files.get(0);
+            record(results, "cold_open_first_frame", measure(
+                    () -> controller.enqueue(Collections.singletonList(first)),
+                    () -> isRendering(controller.getMediaPlayer(), null)));
+
+            for (int i = 0; i < iterations; i++) {
+                // Open a new file and switch to it, as the playlist view does.
+                // Files are only imported once, so each iteration needs its own.
+                File file = files.get(1 + i % (files.size() - 1));
+                MediaPlayer before = fx(controller::getMediaPlayer);
+                record(results, "open_first_frame", measure(
+                        () -> getLibrary().importFiles(Collections.singletonList(file)).thenAccept(items -> {
+                            if (!items.isEmpty()) {
+                                setCurrent(getPlayList().indexOf(items.get(0)));
+                            }
+                        }),
+                        () -> isRendering(controller.getMediaPlayer(), before)));
+
+                record(results, "pause", measure(controller::pause,
+                        () -> controller.getMediaPlayer().getStatus() == MediaPlayer.Status.PAUSED));
+                record(results, "play", measure(controller::play,
+                        () -> controller.getMediaPlayer().getStatus() == MediaPlayer.Status.PLAYING));
+
+                double total = fx(() -> controller.getMediaPlayer().getTotalDuration().toSeconds());
+                double target = total * (0.2 + 0.6 * ((i * 7919) % 100) / 100.0);
+                record(results, "seek", measure(() -> controller.seek(target),
+                        () -> Math.abs(controller.getMediaPlayer().getCurrentTime().toSeconds() - target) < 0.25));
+
+                MediaPlayer current = fx(controller::getMediaPlayer);
+                record(results, "next_track", measure(
+                        () -> setCurrent((getCurrent().get() + 1) % getPlayList().size()),
+                        () -> isRendering(controller.getMediaPlayer(), current)));
+
+                record(results, "playlist_open", measurePlayListOpen());
+            }
+
+            // The generated tones are short enough to become pads.
+            SoundBoard soundBoard = controller.getSoundBoard();
+            int loads = fx(soundBoard::getLoadCount);
+            record(results, "soundboard_preload", measure(controller::soundBoardRequestHandler,
+                    () -> soundBoard.getLoadCount() > loads));
+            int pads = fx(() -> {
+                int count = 0;
+                while (count < SoundBoard.PADS && soundBoard.getItem(count) != null) {
+                    count++;
+                }
+                return count;
+            });
+            Node window = fx(() -> getPrimaryStage().getScene().lookup("#playerWindow"));
+            for (int i = 0; i < iterations && pads > 0; i++) {
+                int pad = i % pads;
+                KeyCode key = KeyCode.getKeyCode(String.valueOf((pad + 1) % 10));
+                fx(() -> {
+                    soundBoard.stopAll();
+                    // The engine disposes the stopped instances on the thread
+                    // that starts new ones, and a stop waits for that thread,
+                    // so the second stop returns once they are gone.
+                    soundBoard.stopAll();
+                    return null;
+                });
+                measure(() -> { }, () -> playingClips() == 0);
+                // The first press after loading is kept apart to show it costs no more than the rest.
+                record(results, i == 0 ? "soundboard_first_trigger" : "soundboard_trigger",
+                        measure(() -> press(window, key), () -> playingClips() == 1));
+                // Fails with a timeout unless the new instance plays over the one still sounding.
+                record(results, "soundboard_retrigger", measure(() -> press(window, key), () -> playingClips() == 2));
+            }
+            fx(() -> {
+                controller.soundBoardRequestHandler();
+                return null;
+            });
+        }
+
+        /**
+         * Times the modal playlist view from request until it is showing, then closes it.
+         */
+        private double measurePlayListOpen() throws Exception {
+            CompletableFuture<Double> shown = new CompletableFuture<>();
+            Platform.runLater(() -> {
+                long start = System.nanoTime();
+                ListChangeListener<Window> listener = new ListChangeListener<Window>() {
+                    @Override
+                    public void onChanged(Change<? extends Window> change) {
+                        while (change.next()) {
+                            for (Window window : change.getAddedSubList()) {
+                                if (window instanceof Stage && window != getPrimaryStage()) {
+                                    Window.getWindows().removeListener(this);
+                                    shown.complete((System.nanoTime() - start) / 1e6);
+                                    // Let the nested event loop of showAndWait() return.
+                                    Platform.runLater(((Stage) window)::close);
+                                }
+                            }
+                        }
+                    }
+                };
+                Window.getWindows().addListener(listener);
+                showPlayListView();
+            });
+            return shown.get(TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Presses a key on a node the way the keyboard does.
+     */
+    private static void press(Node node, KeyCode key) {
+        Event.fireEvent(node, new KeyEvent(KeyEvent.KEY_PRESSED, "", "", key, false, false, false, false));
+    }
+
+    /**
+     * Returns how many audio clip instances the media engine is playing.
+     */
+    private static int playingClips() {
+        CLIP_PLAYERS_LOCK.lock();
+        try {
+            int playing = 0;
+            for (Object player : CLIP_PLAYERS) {
+                Object mediaPlayer = CLIP_MEDIA_PLAYER.get(player);
+                if (mediaPlayer != null && "PLAYING".equals(String.valueOf(GET_STATE.invoke(mediaPlayer)))) {
+                    playing++;
+                }
+            }
+            return playing;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            CLIP_PLAYERS_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Returns whether a player other than <i>previous</i> is playing and has
+     * advanced past its first frame.
+     */
+    static boolean isRendering(MediaPlayer player, MediaPlayer previous) {
+        return player != null && player != previous
+                && player.getStatus() == MediaPlayer.Status.PLAYING
+                && player.getCurrentTime().greaterThan(Duration.ZERO);
+    }
+
+    /**
+     * Runs the action on the FX thread and polls the condition there until it
+     * holds.
+     *
+     * @return the elapsed time in milliseconds.
+     */
+    static double measure(Runnable action, BooleanSupplier done) throws Exception {
+        CompletableFuture<Double> result = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            long start = System.nanoTime();
+            action.run();
+            poll(start, done, result);
+        });
+        return result.get(TIMEOUT_NANOS * 2, TimeUnit.NANOSECONDS);
+    }
+
+    private static void poll(long start, BooleanSupplier done, CompletableFuture<Double> result) {
+        long now = System.nanoTime();
+        boolean finished;
+        try {
+            finished = done.getAsBoolean();
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        if (finished) {
+            result.complete((now - start) / 1e6);
+        } else if (now - start > TIMEOUT_NANOS) {
+            result.completeExceptionally(new IllegalStateException("Step timed out"));
+        } else {
+            Platform.runLater(() -> poll(start, done, result));
+        }
+    }
+
+    static <T> T fx(Callable<T> callable) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                result.complete(callable.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.get(TIMEOUT_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    private static void record(Map<String, List<Double>> results, String scenario, double millis) {
+        results.computeIfAbsent(scenario, k -> new ArrayList<>()).add(millis);
+    }
+
+    private static String toJson(Map<String, List<Double>> results) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, List<Double>> entry : results.entrySet()) {
+            double[] samples = entry.getValue().stream().mapToDouble(Double::doubleValue).sorted().toArray();
+            double mean = Arrays.stream(samples).average().orElse(0);
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.ROOT,
+                    "\n  \"%s\": {\"n\": %d, \"mean_ms\": %.3f, \"p50_ms\": %.3f, \"p90_ms\": %.3f, \"p99_ms\": %.3f, \"max_ms\": %.3f}",
+                    entry.getKey(), samples.length, mean, percentile(samples, 50), percentile(samples, 90),
+                    percentile(samples, 99), samples[samples.length - 1]));
+        }
+        return json.append("\n}").toString();
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Writes a mono 16-bit PCM WAV file with a sine tone.
+     */
+    static Path writeTone(Path file, double frequency, int seconds) throws IOException {
+        int rate = 44100;
+        int samples = rate * seconds;
+        ByteBuffer wav = ByteBuffer.allocate(44 + samples * 2).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes()).putInt(36 + samples * 2).put("WAVE".getBytes());
+        wav.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(rate).putInt(rate * 2).putShort((short) 2).putShort((short) 16);
+        wav.put("data".getBytes()).putInt(samples * 2);
+        Random noise = new Random((long) frequency);
+        for (int i = 0; i < samples; i++) {
+            double value = Math.sin(2 * Math.PI * frequency * i / rate) * 0.3 + noise.nextGaussian() * 0.001;
+            wav.putShort((short) (value * Short.MAX_VALUE));
+        }
+        return Files.write(file, wav.array());
+    }
+}
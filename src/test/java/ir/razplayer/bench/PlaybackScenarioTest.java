@@ -0,0 +1,218 @@
+package ir.razplayer.bench;
+
+import ir.razplayer.Main;
+import ir.razplayer.library.PlayListSorter;
+import ir.razplayer.model.MediaItem;
+import ir.razplayer.player.TrackLoader;
+import ir.razplayer.view.RazPlayerViewController;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.media.MediaPlayer;
+import javafx.stage.Stage;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plays a generated playlist in the real application under Monocle and
+ * checks how many players the {@link TrackLoader} had to construct for each
+ * scenario: a new player per track actually switched to, none for anything
+ * else. The scenarios run in order on one application, since JavaFX starts
+ * once per process.
+ * <p>
+ * Tagged {@code headless} and run with {@code mvn -Pbench test}, which
+ * brings Monocle. Like {@link LatencyBenchmark}, media needs an audio output
+ * even when headless.
+ * </p>
+ */
+@Tag("headless")
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class PlaybackScenarioTest {
+
+    /**
+     * The number of tracks in the playlist.
+     */
+    private static final int TRACKS = 4;
+
+    /**
+     * The length of a track in seconds, long enough that no track ends
+     * during a scenario unless it seeks to the end.
+     */
+    private static final int SECONDS = 8;
+
+    /**
+     * The running application, set once started.
+     */
+    private static final CompletableFuture<App> APP = new CompletableFuture<>();
+
+    @TempDir
+    static Path dir;
+
+    private static final List<File> FILES = new ArrayList<>();
+
+    private static App app;
+
+    private static RazPlayerViewController controller;
+
+    private static TrackLoader loader;
+
+    @BeforeAll
+    static void launch() throws Exception {
+        for (int i = 0; i < TRACKS; i++) {
+            FILES.add(LatencyBenchmark.writeTone(dir.resolve("tone" + i + ".wav"), 330 + 40 * i, SECONDS).toFile());
+        }
+        LatencyBenchmark.useMonocle();
+        Thread launcher = new Thread(() -> Application.launch(App.class, "--new-instance"), "test-launcher");
+        launcher.setDaemon(true);
+        launcher.start();
+        app = APP.get(30, TimeUnit.SECONDS);
+        controller = app.getRazPlayerViewController();
+        loader = controller.getTrackLoader();
+    }
+
+    @AfterAll
+    static void exit() {
+        Platform.exit();
+    }
+
+    @Test
+    @Order(1)
+    void sortingWhileStoppedOpensNothing() throws Exception {
+        List<MediaItem> items = LatencyBenchmark.fx(() -> app.getLibrary().importFiles(FILES))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(TRACKS, items.size());
+        MediaItem selected = LatencyBenchmark.fx(() -> app.getPlayList().get(app.getCurrent().get()));
+
+        LatencyBenchmark.fx(() -> app.getLibrary().sort(PlayListSorter.Key.PATH, true)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(TRACKS - 1, (int) LatencyBenchmark.fx(() -> app.getCurrent().get()));
+        assertSame(selected, LatencyBenchmark.fx(() -> app.getPlayList().get(app.getCurrent().get())));
+        assertFalse(LatencyBenchmark.fx(() -> controller.getPlayback().isStarted()));
+        assertNull(LatencyBenchmark.fx(controller::getMediaPlayer));
+        assertEquals(0, loader.getConstructedCount());
+    }
+
+    @Test
+    @Order(2)
+    void playOpensTheSelectedTrackOnce() throws Exception {
+        MediaItem selected = LatencyBenchmark.fx(() -> app.getPlayList().get(app.getCurrent().get()));
+        LatencyBenchmark.measure(controller::play, () -> isPlaying(selected, null));
+        assertEquals(1, loader.getConstructedCount());
+    }
+
+    @Test
+    @Order(3)
+    void reselectingThePlayingTrackKeepsItsPlayer() throws Exception {
+        MediaPlayer player = LatencyBenchmark.fx(controller::getMediaPlayer);
+        int constructed = loader.getConstructedCount();
+
+        // Picked again in the playlist view, then moved by a sort.
+        LatencyBenchmark.fx(() -> {
+            app.setCurrent(app.getCurrent().get());
+            return null;
+        });
+        LatencyBenchmark.fx(() -> app.getLibrary().sort(PlayListSorter.Key.PATH, false)).get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, (int) LatencyBenchmark.fx(() -> app.getCurrent().get()));
+        assertSame(player, LatencyBenchmark.fx(controller::getMediaPlayer));
+        assertEquals(MediaPlayer.Status.PLAYING, LatencyBenchmark.fx(player::getStatus));
+        assertEquals(constructed, loader.getConstructedCount());
+    }
+
+    @Test
+    @Order(4)
+    void togglesKeepThePlayer() throws Exception {
+        MediaPlayer player = LatencyBenchmark.fx(controller::getMediaPlayer);
+        int constructed = loader.getConstructedCount();
+
+        LatencyBenchmark.measure(() -> {
+            controller.muteRequestHandler();
+            controller.muteRequestHandler();
+            controller.settingRequestHandler();
+            controller.speedHandler();
+            controller.settingRequestHandler();
+            controller.pause();
+            controller.play();
+        }, () -> player.getStatus() == MediaPlayer.Status.PLAYING);
+
+        assertSame(player, LatencyBenchmark.fx(controller::getMediaPlayer));
+        assertFalse(LatencyBenchmark.fx(player::isMute));
+        assertEquals(constructed, loader.getConstructedCount());
+    }
+
+    @Test
+    @Order(5)
+    void rapidSwitchesOpenTheFirstAndTheLastTrack() throws Exception {
+        int constructed = loader.getConstructedCount();
+        int start = LatencyBenchmark.fx(() -> app.getCurrent().get());
+        MediaItem last = LatencyBenchmark.fx(() -> app.getPlayList().get((start + 3) % TRACKS));
+
+        // Within the quiet period: the first switch is taken at once and
+        // the rest are coalesced into one to the last index.
+        LatencyBenchmark.measure(() -> {
+            for (int i = 1; i <= 3; i++) {
+                app.setCurrent((start + i) % TRACKS);
+            }
+        }, () -> isPlaying(last, null));
+
+        int opened = loader.getConstructedCount() - constructed;
+        assertTrue(opened >= 1 && opened <= 2, opened + " players for 3 switches");
+        LatencyBenchmark.measure(() -> { }, () -> loader.getLiveCount() == 1);
+    }
+
+    @Test
+    @Order(6)
+    void endOfMediaWrapsToTheFirstTrack() throws Exception {
+        MediaItem lastItem = LatencyBenchmark.fx(() -> app.getPlayList().get(TRACKS - 1));
+        LatencyBenchmark.measure(() -> app.setCurrent(TRACKS - 1), () -> isPlaying(lastItem, null));
+        MediaPlayer player = LatencyBenchmark.fx(controller::getMediaPlayer);
+        int constructed = loader.getConstructedCount();
+        MediaItem first = LatencyBenchmark.fx(() -> app.getPlayList().get(0));
+
+        LatencyBenchmark.measure(() -> controller.seek(SECONDS - 0.5), () -> isPlaying(first, player));
+
+        assertEquals(0, (int) LatencyBenchmark.fx(() -> app.getCurrent().get()));
+        assertEquals(constructed + 1, loader.getConstructedCount());
+    }
+
+    /**
+     * Returns whether the item is the one selected and its player, other
+     * than <i>previous</i>, is playing past its first frame. Must be called
+     * on the JavaFX application thread.
+     */
+    private static boolean isPlaying(MediaItem item, MediaPlayer previous) {
+        return controller.getPlayback().getItem() == item
+                && LatencyBenchmark.isRendering(controller.getMediaPlayer(), previous);
+    }
+
+    /**
+     * The application under test: the real {@link Main}, handed to the
+     * tests once its stage is up.
+     */
+    public static final class App extends Main {
+
+        @Override
+        public void start(Stage primaryStage) {
+            super.start(primaryStage);
+            APP.complete(this);
+        }
+    }
+}
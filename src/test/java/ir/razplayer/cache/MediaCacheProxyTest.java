@@ -0,0 +1,309 @@
+package ir.razplayer.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the proxy against a stand-in origin on the loopback interface that
+ * serves byte ranges and records every request it receives. The small
+ * resources fit in one chunk, so no prefetch runs behind the requests
+ * counted; the long one spans several chunks for the read-ahead.
+ */
+class MediaCacheProxyTest {
+
+    private static final int SIZE = 600 * 1024;
+
+    private static final int CHUNK = 1 << 20;
+
+    /**
+     * The length of the long resource: five full chunks and a partial one.
+     */
+    private static final int LONG_SIZE = 5 * CHUNK + 1000;
+
+    @TempDir
+    Path cacheDir;
+
+    private HttpServer origin;
+
+    private final Map<String, byte[]> content = new HashMap<>();
+
+    /**
+     * The path and range of every request the origin received.
+     */
+    private final List<String> originRequests = new CopyOnWriteArrayList<>();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    /**
+     * A range the origin holds back until <i>release</i> is counted down.
+     */
+    private volatile String heldRange;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final ExecutorService originThreads = Executors.newCachedThreadPool();
+
+    private MediaCacheProxy proxy;
+
+    @BeforeEach
+    void startOrigin() throws IOException {
+        origin = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        origin.createContext("/", this::serve);
+        // Prefetches are served while a held range waits.
+        origin.setExecutor(originThreads);
+        origin.start();
+        for (String name : List.of("a.mp3", "b.mp3", "c.mp3")) {
+            byte[] bytes = new byte[SIZE];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) (i * 31 + name.charAt(0));
+            }
+            content.put("/" + name, bytes);
+        }
+        byte[] bytes = new byte[LONG_SIZE];
+        new Random(7).nextBytes(bytes);
+        content.put("/long.mp3", bytes);
+    }
+
+    @AfterEach
+    void stop() {
+        release.countDown();
+        if (proxy != null) {
+            proxy.close();
+        }
+        origin.stop(0);
+        originThreads.shutdownNow();
+    }
+
+    @Test
+    void servesRanges() throws Exception {
+        proxy = new MediaCacheProxy(cacheDir, 64L << 20);
+        String url = proxy.proxy(originUri("a.mp3"));
+        byte[] bytes = content.get("/a.mp3");
+
+        HttpResponse<byte[]> middle = get(url, "bytes=100-199");
+        assertEquals(206, middle.statusCode());
+        assertEquals("bytes 100-199/" + SIZE, middle.headers().firstValue("Content-Range").orElse(""));
+        assertArrayEquals(Arrays.copyOfRange(bytes, 100, 200), middle.body());
+
+        HttpResponse<byte[]> open = get(url, "bytes=" + (SIZE - 10) + "-");
+        assertEquals(206, open.statusCode());
+        assertArrayEquals(Arrays.copyOfRange(bytes, SIZE - 10, SIZE), open.body());
+
+        HttpResponse<byte[]> suffix = get(url, "bytes=-5");
+        assertEquals(206, suffix.statusCode());
+        assertArrayEquals(Arrays.copyOfRange(bytes, SIZE - 5, SIZE), suffix.body());
+
+        HttpResponse<byte[]> whole = get(url, null);
+        assertEquals(200, whole.statusCode());
+        assertArrayEquals(bytes, whole.body());
+
+        HttpResponse<byte[]> beyond = get(url, "bytes=" + SIZE + "-");
+        assertEquals(416, beyond.statusCode());
+        assertEquals("bytes */" + SIZE, beyond.headers().firstValue("Content-Range").orElse(""));
+
+        assertEquals(400, get(url, "bytes=100").statusCode());
+        assertEquals(400, get(url, "bytes=x-5").statusCode());
+    }
+
+    @Test
+    void servesCachedChunksWithoutRefetching() throws Exception {
+        proxy = new MediaCacheProxy(cacheDir, 64L << 20);
+        String url = proxy.proxy(originUri("a.mp3"));
+        get(url, "bytes=0-99");
+        // One probe of the length and one chunk fetch.
+        assertEquals(2, originRequests.size());
+
+        HttpResponse<byte[]> again = get(url, "bytes=1000-1999");
+        assertArrayEquals(Arrays.copyOfRange(content.get("/a.mp3"), 1000, 2000), again.body());
+        assertEquals(2, originRequests.size());
+
+        // The length and chunks are read back from disk by a new proxy.
+        proxy.close();
+        proxy = new MediaCacheProxy(cacheDir, 64L << 20);
+        url = proxy.proxy(originUri("a.mp3"));
+        assertArrayEquals(content.get("/a.mp3"), get(url, null).body());
+        assertEquals(2, originRequests.size());
+    }
+
+    @Test
+    void prefetchesAheadOfOpenEndedRanges() throws Exception {
+        proxy = new MediaCacheProxy(cacheDir, 64L << 20);
+        String url = proxy.proxy(originUri("long.mp3"));
+        byte[] bytes = content.get("/long.mp3");
+        // Hold back the first chunk, so only the read-ahead can fetch the others.
+        heldRange = "bytes=0-" + (CHUNK - 1);
+
+        CompletableFuture<HttpResponse<byte[]>> response = client.sendAsync(
+                HttpRequest.newBuilder(URI.create(url)).header("Range", "bytes=0-").build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (cachedChunks().size() < 4 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(List.of("1", "2", "3", "4"), cachedChunks());
+        assertFalse(response.isDone());
+
+        release.countDown();
+        HttpResponse<byte[]> whole = response.get(10, TimeUnit.SECONDS);
+        assertEquals(206, whole.statusCode());
+        assertEquals("bytes 0-" + (LONG_SIZE - 1) + "/" + LONG_SIZE,
+                whole.headers().firstValue("Content-Range").orElse(""));
+        assertArrayEquals(bytes, whole.body());
+        // Every chunk came from the origin once, the last one partial.
+        assertEquals(6, chunkFetches("/long.mp3"));
+        assertTrue(originRequests.contains("/long.mp3 bytes=" + 5 * CHUNK + "-" + (LONG_SIZE - 1)));
+    }
+
+    @Test
+    void servesRangesAcrossChunkBoundaries() throws Exception {
+        proxy = new MediaCacheProxy(cacheDir, 64L << 20);
+        String url = proxy.proxy(originUri("long.mp3"));
+        byte[] bytes = content.get("/long.mp3");
+
+        int start = CHUNK - 10;
+        int end = 3 * CHUNK + 9;
+        HttpResponse<byte[]> span = get(url, "bytes=" + start + "-" + end);
+        assertEquals(206, span.statusCode());
+        assertArrayEquals(Arrays.copyOfRange(bytes, start, end + 1), span.body());
+
+        HttpResponse<byte[]> tail = get(url, "bytes=-1500");
+        assertArrayEquals(Arrays.copyOfRange(bytes, LONG_SIZE - 1500, LONG_SIZE), tail.body());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedChunks() throws Exception {
+        // Room for one chunk of each resource but not two.
+        proxy = new MediaCacheProxy(cacheDir, SIZE + SIZE / 2);
+        String a = proxy.proxy(originUri("a.mp3"));
+        String b = proxy.proxy(originUri("b.mp3"));
+        get(a, null);
+        get(b, null);
+        assertEquals(1, chunkFiles().size());
+        assertTrue(chunkFetches("/a.mp3") == 1 && chunkFetches("/b.mp3") == 1);
+
+        // b is still cached, a was evicted and is fetched again.
+        assertArrayEquals(content.get("/b.mp3"), get(b, null).body());
+        assertEquals(1, chunkFetches("/b.mp3"));
+        assertArrayEquals(content.get("/a.mp3"), get(a, null).body());
+        assertEquals(2, chunkFetches("/a.mp3"));
+        assertEquals(1, chunkFiles().size());
+    }
+
+    @Test
+    void redirectsWhenOriginIgnoresRanges() throws Exception {
+        origin.removeContext("/");
+        origin.createContext("/", exchange -> {
+            byte[] body = content.get(exchange.getRequestURI().getPath());
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        proxy = new MediaCacheProxy(cacheDir, 64L << 20);
+        HttpResponse<byte[]> response = get(proxy.proxy(originUri("c.mp3")), "bytes=0-9");
+        assertEquals(307, response.statusCode());
+        assertEquals(originUri("c.mp3").toString(), response.headers().firstValue("Location").orElse(""));
+    }
+
+    private URI originUri(String name) {
+        return URI.create("http://" + origin.getAddress().getHostString() + ":" + origin.getAddress().getPort()
+                + "/" + name);
+    }
+
+    private HttpResponse<byte[]> get(String url, String range) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url));
+        if (range != null) {
+            request.header("Range", range);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Returns how many chunk-sized ranges of a resource the origin served,
+     * not counting one-byte length probes.
+     */
+    private long chunkFetches(String path) {
+        return originRequests.stream()
+                .filter(request -> request.startsWith(path + " ") && !request.endsWith("=0-0"))
+                .count();
+    }
+
+    /**
+     * Returns the chunk indexes of the long resource on disk, in order.
+     */
+    private List<String> cachedChunks() throws IOException {
+        return chunkFiles().stream()
+                .map(file -> file.getFileName().toString())
+                .sorted(Comparator.comparingInt(Integer::parseInt))
+                .collect(Collectors.toList());
+    }
+
+    private List<Path> chunkFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            return files.filter(file -> file.getFileName().toString().chars().allMatch(Character::isDigit)
+                    && Files.isRegularFile(file)).collect(Collectors.toList());
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        originRequests.add(path + " " + range);
+        byte[] body = content.get(path);
+        if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        if (range.equals(heldRange)) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        String[] bounds = range.substring(6).split("-");
+        int start = Integer.parseInt(bounds[0]);
+        int end = Math.min(body.length - 1, Integer.parseInt(bounds[1]));
+        exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+        exchange.sendResponseHeaders(206, end - start + 1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body, start, end - start + 1);
+        }
+    }
+}
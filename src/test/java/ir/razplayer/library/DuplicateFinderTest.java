@@ -0,0 +1,49 @@
+package ir.razplayer.library;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Checks new files against known ones, the way an import does.
+ */
+class DuplicateFinderTest {
+
+    @TempDir
+    Path dir;
+
+    private final DuplicateFinder finder = new DuplicateFinder();
+
+    @Test
+    void matchesNewFilesAgainstKnownFingerprints() throws IOException {
+        byte[] content = bytes(300_000, 1);
+        Path known = Files.write(dir.resolve("known.wav"), content);
+        assertNotEquals(0, finder.hash(known));
+        // Known files are matched from the cache, so they need not be readable.
+        Files.delete(known);
+
+        Path copy = Files.write(dir.resolve("copy.wav"), content);
+        Path other = Files.write(dir.resolve("other.wav"), bytes(300_000, 2));
+        Path copyOfOther = Files.write(dir.resolve("other copy.wav"), bytes(300_000, 2));
+        Path missing = dir.resolve("missing.wav");
+
+        List<Path> duplicates = finder.findDuplicates(List.of(copy, other, copyOfOther, missing), List.of(known));
+        assertEquals(List.of(copy, copyOfOther), duplicates);
+        // The new files are fingerprinted for later imports.
+        assertNotEquals(0, finder.cachedHash(other));
+    }
+
+    private static byte[] bytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,74 @@
+package ir.razplayer.library;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reads durations of generated files: constant bit rate MP3 frames, and
+ * files of other formats whose bytes happen to contain MPEG frame syncs.
+ */
+class DurationReaderTest {
+
+    /**
+     * An MPEG-1 layer III frame header: 128 kbit/s, 44.1 kHz, no padding.
+     */
+    private static final int HEADER = 0xFFFB9000;
+
+    /**
+     * The length of a frame with that header.
+     */
+    private static final int FRAME = 144 * 128000 / 44100;
+
+    @TempDir
+    Path dir;
+
+    private final DurationReader reader = new DurationReader();
+
+    @Test
+    void readsConstantBitRateMp3() throws IOException {
+        int frames = 100;
+        ByteBuffer mp3 = ByteBuffer.allocate(frames * FRAME);
+        for (int i = 0; i < frames; i++) {
+            mp3.putInt(i * FRAME, HEADER);
+        }
+        Path file = Files.write(dir.resolve("tone.mp3"), mp3.array());
+        assertEquals(frames * FRAME * 8 / 128.0, reader.read(file), 1e-6);
+    }
+
+    @Test
+    void otherFormatsHaveNoDuration() throws IOException {
+        byte[] ogg = noise(200_000, 1);
+        System.arraycopy("OggS".getBytes(StandardCharsets.US_ASCII), 0, ogg, 0, 4);
+        ByteBuffer.wrap(ogg).putInt(4096, HEADER);
+        assertTrue(reader.read(Files.write(dir.resolve("noise.ogg"), ogg)).isNaN());
+    }
+
+    @Test
+    void lonelyFrameSyncIsNotAnMp3() throws IOException {
+        // Detected as MP3 by its first bytes, but no frame follows the first.
+        byte[] noise = noise(200_000, 2);
+        ByteBuffer.wrap(noise).putInt(0, HEADER).putInt(FRAME, 0);
+        for (int i = 4; i + 1 < noise.length; i++) {
+            if ((noise[i] & 0xFF) == 0xFF) {
+                noise[i + 1] = 0;
+            }
+        }
+        assertTrue(reader.read(Files.write(dir.resolve("noise.mp3"), noise)).isNaN());
+    }
+
+    private static byte[] noise(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,56 @@
+package ir.razplayer.player;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks what a new subscriber is given from before it subscribed.
+ */
+class EventBusTest {
+
+    private final EventBus bus = new EventBus();
+
+    @AfterEach
+    void close() {
+        bus.close();
+    }
+
+    @Test
+    void replaysOnlyRetainedEvents() throws InterruptedException {
+        URI uri = URI.create("file:///a.mp3");
+        bus.publish(new PlayerEvent.TrackChanged(0, uri));
+        bus.publish(new PlayerEvent.StateChanged(PlayerEvent.State.PLAYING));
+        bus.publish(new PlayerEvent.Seeked(1, 2));
+        bus.publish(new PlayerEvent.Error(uri, new IllegalStateException()));
+        bus.publish(new PlayerEvent.PositionTick(2, 10));
+
+        List<PlayerEvent> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        bus.subscribe(PlayerEvent.class, EventBus.Delivery.BACKGROUND, false, event -> {
+            received.add(event);
+            if (event instanceof PlayerEvent.TrackChanged && ((PlayerEvent.TrackChanged) event).getIndex() == 1) {
+                done.countDown();
+            }
+        });
+        // One-off events published from now on still arrive. Delivery is in
+        // order, so the last track change comes after everything else.
+        bus.publish(new PlayerEvent.Seeked(2, 3));
+        bus.publish(new PlayerEvent.TrackChanged(1, uri));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(5, received.size());
+        for (PlayerEvent event : received.subList(0, 3)) {
+            assertTrue(event instanceof PlayerEvent.Retained, event.getClass().getSimpleName());
+        }
+        assertTrue(received.get(3) instanceof PlayerEvent.Seeked);
+    }
+}
@@ -0,0 +1,133 @@
+package ir.razplayer.player;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the state machine through the inputs the player view gives it and
+ * checks the actions and the number of players that had to be built.
+ */
+class PlaybackStateMachineTest {
+
+    private static final List<String> PLAYLIST = List.of("a", "b", "c");
+
+    private final PlaybackStateMachine<String> playback = new PlaybackStateMachine<>();
+
+    @Test
+    void startsStopped() {
+        assertEquals(PlaybackStateMachine.State.STOPPED, playback.getState());
+        assertNull(playback.getItem());
+        assertFalse(playback.isStarted());
+        assertEquals(0, playback.getOpenCount());
+    }
+
+    @Test
+    void selectOpensAndPlays() {
+        assertEquals(PlaybackStateMachine.Action.OPEN, playback.select("a"));
+        assertEquals(PlaybackStateMachine.State.OPENING, playback.getState());
+        assertTrue(playback.isStarted());
+        assertSame("a", playback.getItem());
+        assertEquals(1, playback.getOpenCount());
+
+        assertEquals(PlaybackStateMachine.Action.PLAY, playback.opened());
+        assertEquals(PlaybackStateMachine.State.PLAYING, playback.getState());
+
+        assertEquals(PlaybackStateMachine.Action.OPEN, playback.select("b"));
+        assertSame("b", playback.getItem());
+        assertEquals(2, playback.getOpenCount());
+    }
+
+    @Test
+    void pauseWhileOpeningStartsPaused() {
+        playback.select("a");
+        assertEquals(PlaybackStateMachine.Action.NONE, playback.pause());
+        assertTrue(playback.isPaused());
+        assertEquals(PlaybackStateMachine.State.OPENING, playback.getState());
+
+        assertEquals(PlaybackStateMachine.Action.NONE, playback.opened());
+        assertEquals(PlaybackStateMachine.State.PAUSED, playback.getState());
+
+        assertEquals(PlaybackStateMachine.Action.PLAY, playback.resume());
+        assertEquals(PlaybackStateMachine.State.PLAYING, playback.getState());
+        assertEquals(PlaybackStateMachine.Action.PAUSE, playback.pause());
+        assertEquals(PlaybackStateMachine.Action.PLAY, playback.resume());
+        assertEquals(1, playback.getOpenCount());
+    }
+
+    @Test
+    void resumeWhileOpeningCancelsThePause() {
+        playback.select("a");
+        playback.pause();
+        assertEquals(PlaybackStateMachine.Action.NONE, playback.resume());
+        assertFalse(playback.isPaused());
+        assertEquals(PlaybackStateMachine.Action.PLAY, playback.opened());
+        assertEquals(1, playback.getOpenCount());
+    }
+
+    @Test
+    void reselectingTheCurrentItemReusesItsPlayer() {
+        playback.select("a");
+        assertEquals(PlaybackStateMachine.Action.NONE, playback.select("a"));
+        assertEquals(PlaybackStateMachine.State.OPENING, playback.getState());
+
+        playback.opened();
+        assertEquals(PlaybackStateMachine.Action.NONE, playback.select("a"));
+        playback.pause();
+        assertEquals(PlaybackStateMachine.Action.NONE, playback.select("a"));
+        assertEquals(PlaybackStateMachine.State.PAUSED, playback.getState());
+        assertEquals(1, playback.getOpenCount());
+    }
+
+    @Test
+    void singleItemLoopRewinds() {
+        playback.select("a");
+        playback.opened();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(PlaybackStateMachine.Action.REWIND, playback.ended("a"));
+            assertEquals(PlaybackStateMachine.State.PLAYING, playback.getState());
+        }
+        playback.pause();
+        assertEquals(PlaybackStateMachine.Action.REWIND, playback.ended("a"));
+        assertEquals(PlaybackStateMachine.State.PLAYING, playback.getState());
+        assertEquals(1, playback.getOpenCount());
+    }
+
+    @Test
+    void endOfListWrapsToTheFirstItem() {
+        playback.select(PLAYLIST.get(0));
+        playback.opened();
+        for (int i = 1; i <= PLAYLIST.size(); i++) {
+            String next = PLAYLIST.get(i % PLAYLIST.size());
+            assertEquals(PlaybackStateMachine.Action.OPEN, playback.ended(next));
+            assertSame(next, playback.getItem());
+            assertEquals(PlaybackStateMachine.Action.PLAY, playback.opened());
+        }
+        assertSame("a", playback.getItem());
+        assertEquals(PLAYLIST.size() + 1, playback.getOpenCount());
+    }
+
+    @Test
+    void failedOpenCanBeReselected() {
+        playback.select("a");
+        playback.pause();
+        playback.failed();
+        assertEquals(PlaybackStateMachine.State.STOPPED, playback.getState());
+        assertFalse(playback.isStarted());
+        assertFalse(playback.isPaused());
+        // A late ready report of the failed player is ignored.
+        assertEquals(PlaybackStateMachine.Action.NONE, playback.opened());
+        assertEquals(PlaybackStateMachine.State.STOPPED, playback.getState());
+
+        assertEquals(PlaybackStateMachine.Action.OPEN, playback.select("a"));
+        assertEquals(PlaybackStateMachine.Action.PLAY, playback.opened());
+        assertEquals(PlaybackStateMachine.State.PLAYING, playback.getState());
+        assertEquals(2, playback.getOpenCount());
+    }
+}